@@ -0,0 +1,79 @@
+package com.example.kafkadup.bench;
+
+import com.example.kafkadup.config.ProxyRegistry;
+import com.example.kafkadup.serde.OrderEvent;
+import com.example.kafkadup.serde.OrderEventSerializer;
+import com.example.kafkadup.serde.PooledStringSerializer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Produce -> ack latency against an in-JVM KRaft broker ({@link EmbeddedKafkaKraftBroker}),
+ * either directly or through {@link ProxyRegistry}, which rewrites the advertised broker address
+ * so that produce requests go through the proxy too. Uses the same serializers and ack settings
+ * as the application producer.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EndToEndLatencyBenchmark {
+    private static final String TOPIC = "bench.order.created";
+
+    @Param({"direct", "proxy"})
+    public String path;
+
+    private EmbeddedKafkaKraftBroker broker;
+    private ProxyRegistry proxies;
+    private DefaultKafkaProducerFactory<String, OrderEvent> producerFactory;
+    private KafkaTemplate<String, OrderEvent> template;
+    private long seq;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        broker = new EmbeddedKafkaKraftBroker(1, 1, TOPIC);
+        broker.afterPropertiesSet();
+        String bootstrap = broker.getBrokersAsString().split(",")[0];
+        if ("proxy".equals(path)) {
+            proxies = new ProxyRegistry("127.0.0.1", 0, 1, false);
+            proxies.start(bootstrap);
+            bootstrap = proxies.bootstrapServers();
+        }
+
+        Map<String, Object> props = new HashMap<>();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrap);
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, PooledStringSerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, OrderEventSerializer.class);
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, false);
+        props.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 1);
+        producerFactory = new DefaultKafkaProducerFactory<>(props);
+        template = new KafkaTemplate<>(producerFactory);
+        template.send(TOPIC, "warmup", new OrderEvent("warmup", System.currentTimeMillis())).get();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        producerFactory.destroy();
+        if (proxies != null) {
+            proxies.stop();
+        }
+        broker.destroy();
+    }
+
+    @Benchmark
+    public SendResult<String, OrderEvent> produceAndAwaitAck() throws Exception {
+        String key = "bench-" + (++seq);
+        return template.send(TOPIC, key, new OrderEvent(key, System.currentTimeMillis())).get();
+    }
+}
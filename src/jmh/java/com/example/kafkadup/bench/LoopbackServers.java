@@ -0,0 +1,59 @@
+package com.example.kafkadup.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Minimal blocking loopback servers used as proxy upstreams in benchmarks.
+ */
+final class LoopbackServers {
+    private LoopbackServers() {
+    }
+
+    /** Writes back every byte it receives. */
+    static ServerSocket echo() throws IOException {
+        return start("bench-echo", true);
+    }
+
+    /** Reads and discards everything. */
+    static ServerSocket sink() throws IOException {
+        return start("bench-sink", false);
+    }
+
+    private static ServerSocket start(String name, boolean echo) throws IOException {
+        ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(() -> {
+            while (!server.isClosed()) {
+                try {
+                    Socket s = server.accept();
+                    s.setTcpNoDelay(true);
+                    Thread worker = new Thread(() -> serve(s, echo), name + "-conn");
+                    worker.setDaemon(true);
+                    worker.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }, name);
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return server;
+    }
+
+    private static void serve(Socket s, boolean echo) {
+        byte[] buf = new byte[64 * 1024];
+        try (s; InputStream in = s.getInputStream(); OutputStream out = s.getOutputStream()) {
+            int r;
+            while ((r = in.read(buf)) != -1) {
+                if (echo) {
+                    out.write(buf, 0, r);
+                }
+            }
+        } catch (IOException ignored) {
+        }
+    }
+}
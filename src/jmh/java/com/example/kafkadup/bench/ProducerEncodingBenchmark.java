@@ -0,0 +1,81 @@
+package com.example.kafkadup.bench;
+
+import com.example.kafkadup.serde.OrderEvent;
+import com.example.kafkadup.serde.OrderEventSerializer;
+import com.example.kafkadup.serde.PooledStringSerializer;
+import com.example.kafkadup.service.EndToEndLatencyTracker;
+import com.example.kafkadup.service.ProducerService;
+import com.example.kafkadup.service.SendJournal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning one order into key/value bytes, and of a whole
+ * {@link ProducerService#sendOneWithKey} call against an in-memory {@link MockProducer}
+ * (no network). Run with {@code -prof gc} to see bytes allocated per operation.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProducerEncodingBenchmark {
+
+    private final OrderEventSerializer valueSerializer = new OrderEventSerializer();
+    private final PooledStringSerializer keySerializer = new PooledStringSerializer();
+    private final StringSerializer stringSerializer = new StringSerializer();
+    private final String key = "ord-mvdibco5-123456";
+    private final long ts = System.currentTimeMillis();
+
+    private MockProducer<String, OrderEvent> mockProducer;
+    private ProducerService producerService;
+    private int sent;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mockProducer = new MockProducer<>(true, new PooledStringSerializer(), new OrderEventSerializer()) {
+            @Override
+            public void close(Duration timeout) {
+                // KafkaTemplate closes the producer after every send; keep this one open
+            }
+        };
+        ProducerFactory<String, OrderEvent> factory = () -> mockProducer;
+        producerService = new ProducerService(new KafkaTemplate<>(factory), null, new SimpleMeterRegistry(), false,
+                // no consumer here, so acks are not kept for matching
+                new EndToEndLatencyTracker(1000, 1, 0, false),
+                // nothing joins the sends with duplicates here, so they are not tracked either
+                120_000, 0, new SendJournal(false, null, 0, 0));
+        ReflectionTestUtils.setField(producerService, "topic", "bench");
+    }
+
+    /** Baseline: what the code did before (String concatenation + StringSerializer). */
+    @Benchmark
+    public int encodeWithStrings() {
+        String payload = "order-id=" + key + "|ts=" + ts;
+        return stringSerializer.serialize("bench", key).length + stringSerializer.serialize("bench", payload).length;
+    }
+
+    @Benchmark
+    public int encodePooled() {
+        return keySerializer.serialize("bench", key).length
+                + valueSerializer.serialize("bench", new OrderEvent(key, ts)).length;
+    }
+
+    @Benchmark
+    public String sendOneWithKey() {
+        if (++sent % 10_000 == 0) {
+            mockProducer.clear(); // MockProducer keeps a history of every record
+        }
+        return producerService.sendOneWithKey(null);
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.kafkadup.bench;
+
+import com.example.kafkadup.service.SendJournal;
+import com.example.kafkadup.service.SendJournalReader;
+import com.example.kafkadup.service.SendJournalSummary;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SendJournal} append cost (use -prof gc: it should not allocate) and the time
+ * {@link SendJournalReader} takes for a journal of one million sends and their acks.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SendJournalBenchmark {
+    private static final int SCAN_SENDS = 1_000_000;
+
+    private Path appendDir;
+    private Path scanDir;
+    private SendJournal journal;
+    private long seq;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        appendDir = Files.createTempDirectory("journal-append");
+        // small segments that age out, so the run neither fills the disk nor skips rolling
+        journal = new SendJournal(true, appendDir.toString(), 100_000, 4);
+
+        scanDir = Files.createTempDirectory("journal-scan");
+        SendJournal scanned = new SendJournal(true, scanDir.toString(), 1_000_000, 0);
+        long ts = System.currentTimeMillis() * 1_000_000;
+        for (int i = 0; i < SCAN_SENDS; i++) {
+            scanned.sent(i * 0x9E3779B97F4A7C15L, i, ts);
+            scanned.acked(i * 0x9E3779B97F4A7C15L, i, ts, i % 6, i / 6);
+        }
+        scanned.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        journal.close();
+        FileSystemUtils.deleteRecursively(appendDir);
+        FileSystemUtils.deleteRecursively(scanDir);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void append() {
+        long n = seq++;
+        journal.acked(n * 0x9E3779B97F4A7C15L, (int) n, n, (int) (n & 7), n);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public SendJournalSummary scan() throws IOException {
+        return SendJournalReader.read(scanDir);
+    }
+}
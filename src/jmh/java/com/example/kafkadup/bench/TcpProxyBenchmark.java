@@ -0,0 +1,119 @@
+package com.example.kafkadup.bench;
+
+import com.example.kafkadup.config.TcpProxy;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TcpProxy forwarding cost against loopback servers, compared with talking to them directly.
+ * <ul>
+ *   <li>{@code roundTrip}: request/response latency through an echo server (added latency)</li>
+ *   <li>{@code forward}: one-way bulk throughput into a discarding server</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+public class TcpProxyBenchmark {
+
+    @Param({"direct", "proxy"})
+    public String path;
+
+    @Param({"128", "16384"})
+    public int messageSize;
+
+    private ServerSocket echo;
+    private ServerSocket sink;
+    private TcpProxy echoProxy;
+    private TcpProxy sinkProxy;
+
+    @Setup(Level.Trial)
+    public void startServers() throws IOException {
+        echo = LoopbackServers.echo();
+        sink = LoopbackServers.sink();
+        if ("proxy".equals(path)) {
+            echoProxy = new TcpProxy(0, "127.0.0.1", echo.getLocalPort());
+            echoProxy.start();
+            sinkProxy = new TcpProxy(0, "127.0.0.1", sink.getLocalPort());
+            sinkProxy.start();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServers() throws IOException {
+        if (echoProxy != null) echoProxy.stop();
+        if (sinkProxy != null) sinkProxy.stop();
+        echo.close();
+        sink.close();
+    }
+
+    int echoPort() {
+        return (echoProxy != null) ? echoProxy.getListenPort() : echo.getLocalPort();
+    }
+
+    int sinkPort() {
+        return (sinkProxy != null) ? sinkProxy.getListenPort() : sink.getLocalPort();
+    }
+
+    /** One client connection per benchmark thread. */
+    @State(Scope.Thread)
+    public static class Client {
+        Socket echoSocket;
+        Socket sinkSocket;
+        InputStream echoIn;
+        OutputStream echoOut;
+        OutputStream sinkOut;
+        byte[] message;
+        byte[] reply;
+
+        @Setup(Level.Trial)
+        public void connect(TcpProxyBenchmark bench) throws IOException {
+            echoSocket = new Socket(InetAddress.getLoopbackAddress(), bench.echoPort());
+            echoSocket.setTcpNoDelay(true);
+            sinkSocket = new Socket(InetAddress.getLoopbackAddress(), bench.sinkPort());
+            sinkSocket.setTcpNoDelay(true);
+            echoIn = echoSocket.getInputStream();
+            echoOut = echoSocket.getOutputStream();
+            sinkOut = sinkSocket.getOutputStream();
+            message = new byte[bench.messageSize];
+            reply = new byte[bench.messageSize];
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            echoSocket.close();
+            sinkSocket.close();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int roundTrip(Client c) throws IOException {
+        c.echoOut.write(c.message);
+        int read = 0;
+        while (read < c.reply.length) {
+            int r = c.echoIn.read(c.reply, read, c.reply.length - read);
+            if (r < 0) {
+                throw new IOException("echo connection closed");
+            }
+            read += r;
+        }
+        return read;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void forward(Client c) throws IOException {
+        c.sinkOut.write(c.message);
+    }
+}
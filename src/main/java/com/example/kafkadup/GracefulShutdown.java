@@ -0,0 +1,77 @@
+package com.example.kafkadup;
+
+import java.time.Duration;
+
+import com.example.kafkadup.config.ProxyRegistry;
+import com.example.kafkadup.service.ProducerService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+/**
+ * Ordered shutdown of the send path, before the web server stops and before bean destruction
+ * closes the producer, the proxies and the broker:
+ * <ol>
+ *   <li>close the send gate, so new sends (HTTP, batch, load) are rejected with 503;</li>
+ *   <li>flush the producer and wait for its sends in flight, then close it;</li>
+ *   <li>stop the proxies accepting and wait until they have forwarded every response still owed.</li>
+ * </ol>
+ * The Kafka listener containers stop first (their phase is higher), so the consumer's fetches do
+ * not keep the proxies busy. Each wait has its own deadline under {@code app.shutdown}, so a
+ * blocked broker delays a restart by at most their sum.
+ */
+@Component
+class GracefulShutdown implements SmartLifecycle {
+    /** Below the listener containers ({@code MAX_VALUE - 100}), above web server graceful shutdown ({@code - 1024}). */
+    private static final int PHASE = Integer.MAX_VALUE - 512;
+
+    private final Logger log = LoggerFactory.getLogger(GracefulShutdown.class);
+    private final ProducerService producer;
+    private final ProxyRegistry proxies;
+    private final Duration producerTimeout;
+    private final Duration proxyTimeout;
+    private volatile boolean running;
+
+    GracefulShutdown(ProducerService producer, ProxyRegistry proxies,
+                     @Value("${app.shutdown.producer-timeout-ms:10000}") long producerTimeoutMs,
+                     @Value("${app.shutdown.proxy-timeout-ms:3000}") long proxyTimeoutMs) {
+        this.producer = producer;
+        this.proxies = proxies;
+        this.producerTimeout = Duration.ofMillis(producerTimeoutMs);
+        this.proxyTimeout = Duration.ofMillis(proxyTimeoutMs);
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        long start = System.nanoTime();
+        try {
+            boolean producerDrained = producer.drain(producerTimeout);
+            long producerMs = (System.nanoTime() - start) / 1_000_000;
+            boolean proxiesDrained = proxies.drain(proxyTimeout);
+            log.info("[SHUTDOWN] Producer {} in {} ms, proxies {} in {} ms",
+                    producerDrained ? "drained" : "timed out", producerMs,
+                    proxiesDrained ? "drained" : "timed out", (System.nanoTime() - start) / 1_000_000 - producerMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("[SHUTDOWN] Interrupted while draining; closing right away");
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.kafkadup;
+
+import java.util.List;
+
+import com.example.kafkadup.config.LinkFaults;
+import com.example.kafkadup.config.ProducerProfile;
+import com.example.kafkadup.config.TcpProxy;
+import com.example.kafkadup.service.LoadGenerator;
+import com.example.kafkadup.service.LoadRunRequest;
+import com.example.kafkadup.service.LoadRunResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@code java -jar app.jar load --app.load.start-rate=1000 ...}: one {@link LoadGenerator} run
+ * with the settings under {@code app.load}, its result printed as JSON; then the app exits
+ * (see {@link Application#main}).
+ */
+@Component
+@ConditionalOnProperty(name = "app.load.cli", havingValue = "true")
+class LoadCommand implements ApplicationRunner {
+    private final LoadGenerator loadGenerator;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.load.start-rate:1000}")
+    private int startRate;
+
+    @Value("${app.load.step-rate:1000}")
+    private int stepRate;
+
+    @Value("${app.load.max-rate:20000}")
+    private int maxRate;
+
+    @Value("${app.load.step-ms:10000}")
+    private long stepMs;
+
+    @Value("${app.load.payload-size:0}")
+    private int payloadSize;
+
+    @Value("${app.load.max-p99-ms:0}")
+    private long maxP99Ms;
+
+    @Value("${app.load.profile:}")
+    private String profile;
+
+    @Value("${app.load.faults.direction:both}")
+    private String direction;
+
+    @Value("${app.load.faults.latency-ms:0}")
+    private long latencyMs;
+
+    @Value("${app.load.faults.jitter-ms:0}")
+    private long jitterMs;
+
+    @Value("${app.load.faults.bandwidth:0}")
+    private long bytesPerSecond;
+
+    @Value("${app.load.faults.drop-rate:0}")
+    private double dropRate;
+
+    LoadCommand(LoadGenerator loadGenerator, ObjectMapper objectMapper) {
+        this.loadGenerator = loadGenerator;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        LinkFaults faults = new LinkFaults(latencyMs, jitterMs, bytesPerSecond, 0, dropRate);
+        List<TcpProxy.Direction> directions = TcpProxy.Direction.parse(direction);
+        if (directions == null) {
+            throw new IllegalArgumentException("app.load.faults.direction: unknown direction " + direction
+                    + " (expected to-broker, to-client or both)");
+        }
+        LoadRunRequest request = new LoadRunRequest(startRate, stepRate, maxRate, stepMs, payloadSize, maxP99Ms,
+                profile.isBlank() ? null : ProducerProfile.parse(profile),
+                faults.equals(LinkFaults.NONE) ? null : faults, directions);
+        LoadRunResult result = loadGenerator.run(request);
+        System.out.println(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(result));
+    }
+}
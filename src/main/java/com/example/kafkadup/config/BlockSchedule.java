@@ -0,0 +1,27 @@
+package com.example.kafkadup.config;
+
+/**
+ * A repeating ACK block, e.g. "block for 3 s every 20 s": the proxy blocks broker->client
+ * traffic {@code initialDelayMs} after the schedule is set and then every {@code everyMs},
+ * each time for {@code forMs}.
+ *
+ * @param everyMs period between block starts; 0 blocks only once
+ */
+public record BlockSchedule(
+        long initialDelayMs,
+        long everyMs,
+        long forMs,
+        TcpProxy.BlockMode mode) {
+
+    public BlockSchedule {
+        if (initialDelayMs < 0 || everyMs < 0 || forMs <= 0) {
+            throw new IllegalArgumentException("initialDelayMs and everyMs must be >= 0, forMs > 0");
+        }
+        if (everyMs > 0 && forMs >= everyMs) {
+            throw new IllegalArgumentException("forMs must be shorter than everyMs");
+        }
+        if (mode == null) {
+            mode = TcpProxy.BlockMode.PAUSE;
+        }
+    }
+}
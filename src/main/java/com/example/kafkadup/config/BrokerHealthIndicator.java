@@ -0,0 +1,35 @@
+package com.example.kafkadup.config;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * "broker" health contributor: UP once the brokers have started and their proxies are listening.
+ * Part of the readiness group, so {@code /actuator/health/readiness} only turns UP when
+ * requests can actually reach Kafka.
+ */
+@Component
+public class BrokerHealthIndicator implements HealthIndicator {
+
+    private final BrokerStartup broker;
+    private final ProxyRegistry proxies;
+
+    public BrokerHealthIndicator(BrokerStartup broker, ProxyRegistry proxies) {
+        this.broker = broker;
+        this.proxies = proxies;
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder health = broker.isReady() && !proxies.bootstrapServers().isEmpty()
+                ? Health.up()
+                : (broker.isFailed() ? Health.down() : Health.outOfService());
+        return health
+                .withDetail("broker", broker.description())
+                .withDetail("bootstrapServers", String.valueOf(broker.bootstrapServers()))
+                .withDetail("proxyBootstrapServers", proxies.bootstrapServers())
+                .withDetail("proxyConnections", proxies.getActiveConnectionCount())
+                .build();
+    }
+}
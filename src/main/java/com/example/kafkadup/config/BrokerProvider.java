@@ -0,0 +1,22 @@
+package com.example.kafkadup.config;
+
+/**
+ * Where the Kafka broker the proxy forwards to comes from. Selected by {@code app.broker.type}:
+ * {@code embedded} (in-JVM KRaft, the default), {@code external} or {@code testcontainers}.
+ */
+public interface BrokerProvider extends AutoCloseable {
+
+    /**
+     * Start or locate the broker and block until it accepts connections.
+     *
+     * @return bootstrap servers as {@code host:port[,host:port...]}
+     */
+    String start() throws Exception;
+
+    /** Short description for logs, e.g. "embedded KRaft broker". */
+    String description();
+
+    /** Stop the broker if this provider started it. */
+    @Override
+    void close();
+}
@@ -0,0 +1,119 @@
+package com.example.kafkadup.config;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.env.Environment;
+
+/**
+ * Starts the {@link BrokerProvider} on a background thread while the Spring context is still
+ * being built, so broker and application boot in parallel. Only the beans that actually need
+ * the broker ({@link ProxyConfig#proxyRegistry}) wait for it.
+ * <p>
+ * Registered through {@code META-INF/spring.factories}; the bean is named {@code brokerStartup}
+ * and stops the broker when the context closes.
+ */
+public class BrokerStartup implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(BrokerStartup.class);
+
+    private final BrokerProvider provider;
+    private final CompletableFuture<String> bootstrapServers = new CompletableFuture<>();
+    private final Thread starter;
+
+    private BrokerStartup(BrokerProvider provider) {
+        this.provider = provider;
+        this.starter = new Thread(this::run, "broker-startup");
+        this.starter.setDaemon(true);
+    }
+
+    public static BrokerStartup begin(BrokerProvider provider) {
+        BrokerStartup startup = new BrokerStartup(provider);
+        startup.starter.start();
+        return startup;
+    }
+
+    /** The provider selected by {@code app.broker.*}. */
+    public static BrokerProvider providerFor(Environment env) {
+        String type = env.getProperty("app.broker.type", "embedded").trim().toLowerCase(Locale.ROOT);
+        return switch (type) {
+            case "embedded" -> new EmbeddedBrokerProvider(
+                    env.getProperty("app.broker.count", Integer.class, 1),
+                    env.getProperty("app.topic-partitions", Integer.class, 3),
+                    env.getProperty("app.topic", "order.created"));
+            case "external" -> new ExternalBrokerProvider(env.getProperty("app.broker.bootstrap-servers"));
+            case "testcontainers" -> new TestcontainersBrokerProvider(
+                    env.getProperty("app.broker.image", "confluentinc/cp-kafka:7.4.0"));
+            default -> throw new IllegalArgumentException(
+                    "unknown app.broker.type: " + type + " (expected embedded, external or testcontainers)");
+        };
+    }
+
+    private void run() {
+        long start = System.nanoTime();
+        log.info("Starting {}", provider.description());
+        try {
+            String servers = provider.start();
+            log.info("{} ready at {} after {} ms", provider.description(), servers,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            bootstrapServers.complete(servers);
+        } catch (Throwable t) {
+            log.error("{} failed to start", provider.description(), t);
+            bootstrapServers.completeExceptionally(t);
+        }
+    }
+
+    /** Block until the broker is up. */
+    public String awaitBootstrapServers(Duration timeout) throws InterruptedException, TimeoutException {
+        try {
+            return bootstrapServers.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(provider.description() + " failed to start", e.getCause());
+        }
+    }
+
+    public boolean isReady() {
+        return bootstrapServers.isDone() && !bootstrapServers.isCompletedExceptionally();
+    }
+
+    public boolean isFailed() {
+        return bootstrapServers.isCompletedExceptionally();
+    }
+
+    /** Bootstrap servers, or null while starting or after a failure. */
+    public String bootstrapServers() {
+        return isReady() ? bootstrapServers.join() : null;
+    }
+
+    public String description() {
+        return provider.description();
+    }
+
+    @Override
+    public void close() {
+        try {
+            // a half-started broker cannot be stopped cleanly; give it a moment to finish
+            starter.join(10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        provider.close();
+        log.info("{} stopped", provider.description());
+    }
+
+    /** Kicks off the broker before the context refreshes. */
+    public static class Initializer implements ApplicationContextInitializer<GenericApplicationContext> {
+        @Override
+        public void initialize(GenericApplicationContext context) {
+            BrokerStartup startup = begin(providerFor(context.getEnvironment()));
+            context.registerBean("brokerStartup", BrokerStartup.class, () -> startup);
+        }
+    }
+}
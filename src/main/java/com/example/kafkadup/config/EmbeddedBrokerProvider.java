@@ -0,0 +1,47 @@
+package com.example.kafkadup.config;
+
+import java.util.Map;
+
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+
+/**
+ * In-JVM KRaft broker(s) from spring-kafka-test. No container runtime needed; starts in a few seconds.
+ */
+public class EmbeddedBrokerProvider implements BrokerProvider {
+
+    private final int brokers;
+    private final int partitions;
+    private final String topic;
+    private EmbeddedKafkaKraftBroker broker;
+
+    public EmbeddedBrokerProvider(int brokers, int partitions, String topic) {
+        this.brokers = Math.max(1, brokers);
+        this.partitions = Math.max(1, partitions);
+        this.topic = topic;
+    }
+
+    @Override
+    public String start() {
+        broker = new EmbeddedKafkaKraftBroker(brokers, partitions, topic);
+        // internal topics default to replication factor 3; a single broker must be able to host them
+        int replication = Math.min(brokers, 3);
+        broker.brokerProperties(Map.of(
+                "offsets.topic.replication.factor", Integer.toString(replication),
+                "transaction.state.log.replication.factor", Integer.toString(replication),
+                "transaction.state.log.min.isr", "1"));
+        broker.afterPropertiesSet();
+        return broker.getBrokersAsString();
+    }
+
+    @Override
+    public String description() {
+        return "embedded KRaft broker x" + brokers;
+    }
+
+    @Override
+    public void close() {
+        if (broker != null) {
+            broker.destroy();
+        }
+    }
+}
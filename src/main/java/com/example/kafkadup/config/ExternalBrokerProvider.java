@@ -0,0 +1,31 @@
+package com.example.kafkadup.config;
+
+/**
+ * A broker that is already running, e.g. {@code app.broker.bootstrap-servers=localhost:9092}.
+ */
+public class ExternalBrokerProvider implements BrokerProvider {
+
+    private final String bootstrapServers;
+
+    public ExternalBrokerProvider(String bootstrapServers) {
+        if (bootstrapServers == null || bootstrapServers.isBlank()) {
+            throw new IllegalArgumentException("app.broker.bootstrap-servers is required for app.broker.type=external");
+        }
+        this.bootstrapServers = bootstrapServers;
+    }
+
+    @Override
+    public String start() {
+        return bootstrapServers;
+    }
+
+    @Override
+    public String description() {
+        return "external broker " + bootstrapServers;
+    }
+
+    @Override
+    public void close() {
+        // not ours to stop
+    }
+}
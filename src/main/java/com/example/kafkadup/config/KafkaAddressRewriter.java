@@ -0,0 +1,149 @@
+package com.example.kafkadup.config;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+import org.apache.kafka.common.message.DescribeClusterResponseData;
+import org.apache.kafka.common.message.FindCoordinatorResponseData;
+import org.apache.kafka.common.message.MetadataResponseData;
+import org.apache.kafka.common.message.ResponseHeaderData;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.protocol.ApiMessage;
+import org.apache.kafka.common.protocol.ByteBufferAccessor;
+import org.apache.kafka.common.requests.RequestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Replaces the broker addresses in Metadata, FindCoordinator and DescribeCluster responses with
+ * the addresses of their proxies, so clients never learn (and never connect to) the real ones.
+ * <p>
+ * Which request a response answers comes from the connection's {@link KafkaProtocolDecoder}.
+ * Whether to capture a response is decided before its correlation id is in, so every response
+ * is captured while a request to rewrite is in flight; the others are forwarded as they were.
+ * Responses are parsed and written back with the kafka-clients message classes at the version
+ * the client asked for; anything that fails to parse is forwarded unchanged. If a broker has no
+ * proxy to advertise (yet), {@link #rewrite} throws, which closes the connection.
+ */
+class KafkaAddressRewriter implements KafkaFrameScanner.FrameRewriter {
+    private static final Logger log = LoggerFactory.getLogger(KafkaAddressRewriter.class);
+    private static final int SIZE_PREFIX = 4;
+
+    private final KafkaProtocolDecoder decoder;
+    private final TcpProxy.AddressMapper mapper;
+    private RuntimeException failure; // of the response being rewritten
+
+    KafkaAddressRewriter(KafkaProtocolDecoder decoder, TcpProxy.AddressMapper mapper) {
+        this.decoder = decoder;
+        this.mapper = mapper;
+    }
+
+    static boolean rewrites(short apiKey) {
+        return apiKey == ApiKeys.METADATA.id
+                || apiKey == ApiKeys.FIND_COORDINATOR.id
+                || apiKey == ApiKeys.DESCRIBE_CLUSTER.id;
+    }
+
+    @Override
+    public boolean capture() {
+        // not just the oldest request: one that gets no response (acks=0 produce) stays ahead of the rest
+        for (int n = 0; n < decoder.inFlight(); n++) {
+            if (rewrites(decoder.inFlightApiKey(n))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public ByteBuffer rewrite(ByteBuffer frame) {
+        // the decoder saw this frame's correlation id while it was being captured
+        short apiKey = decoder.matchedApiKey();
+        short version = decoder.matchedApiVersion();
+        if (!rewrites(apiKey)) {
+            return frame;
+        }
+        ApiKeys api = ApiKeys.forId(apiKey);
+        short headerVersion = api.responseHeaderVersion(version);
+        ResponseHeaderData header;
+        ApiMessage body;
+        try {
+            ByteBufferAccessor in = new ByteBufferAccessor(frame.duplicate().position(SIZE_PREFIX));
+            header = new ResponseHeaderData(in, headerVersion);
+            body = switch (api) {
+                case METADATA -> new MetadataResponseData(in, version);
+                case FIND_COORDINATOR -> new FindCoordinatorResponseData(in, version);
+                case DESCRIBE_CLUSTER -> new DescribeClusterResponseData(in, version);
+                default -> throw new IllegalStateException("unexpected api " + api);
+            };
+        } catch (RuntimeException e) {
+            log.warn("Could not parse a response to api {} v{}; forwarding it unchanged", apiKey, version, e);
+            return frame;
+        }
+        failure = null;
+        switch (body) {
+            case MetadataResponseData d -> rewrite(d);
+            case FindCoordinatorResponseData d -> rewrite(d);
+            case DescribeClusterResponseData d -> rewrite(d);
+            default -> throw new IllegalStateException("unexpected response " + body);
+        }
+        if (failure != null) {
+            // the real address must not reach the client; it reconnects and asks again
+            log.warn("Closing the connection instead of forwarding real broker addresses to the client: {}",
+                    failure.getMessage());
+            throw failure;
+        }
+        ByteBuffer payload = RequestUtils.serialize(header, headerVersion, body, version);
+        ByteBuffer out = ByteBuffer.allocate(SIZE_PREFIX + payload.remaining());
+        out.putInt(payload.remaining()).put(payload);
+        return out.flip();
+    }
+
+    /** Every broker named gets its proxy started, even after one has failed; the first failure is kept. */
+    private InetSocketAddress advertise(int nodeId, String host, int port) {
+        try {
+            return mapper.advertise(nodeId, host, port);
+        } catch (RuntimeException e) {
+            if (failure == null) {
+                failure = e;
+            }
+            return null;
+        }
+    }
+
+    private void rewrite(MetadataResponseData data) {
+        for (MetadataResponseData.MetadataResponseBroker b : data.brokers()) {
+            InetSocketAddress to = advertise(b.nodeId(), b.host(), b.port());
+            if (to != null) {
+                b.setHost(to.getHostString()).setPort(to.getPort());
+            }
+        }
+    }
+
+    private void rewrite(FindCoordinatorResponseData data) {
+        // up to v3 the coordinator is in the top-level fields, from v4 one entry per requested key
+        if (data.nodeId() >= 0 && !data.host().isEmpty()) {
+            InetSocketAddress to = advertise(data.nodeId(), data.host(), data.port());
+            if (to != null) {
+                data.setHost(to.getHostString()).setPort(to.getPort());
+            }
+        }
+        for (FindCoordinatorResponseData.Coordinator c : data.coordinators()) {
+            if (c.nodeId() >= 0 && !c.host().isEmpty()) {
+                InetSocketAddress to = advertise(c.nodeId(), c.host(), c.port());
+                if (to != null) {
+                    c.setHost(to.getHostString()).setPort(to.getPort());
+                }
+            }
+        }
+    }
+
+    private void rewrite(DescribeClusterResponseData data) {
+        for (DescribeClusterResponseData.DescribeClusterBroker b : data.brokers()) {
+            InetSocketAddress to = advertise(b.brokerId(), b.host(), b.port());
+            if (to != null) {
+                b.setHost(to.getHostString()).setPort(to.getPort());
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.kafkadup.config;
+
+/**
+ * Latency summary for one Kafka API as seen by {@link TcpProxy}: the time between a request
+ * frame passing client->broker and the matching response frame arriving from the broker.
+ * All times are in microseconds.
+ *
+ * @param unanswered requests whose response never reached the client (connection closed, response dropped
+ *                   by the proxy, or acks=0 produce)
+ */
+public record KafkaApiLatency(
+        int apiKey,
+        String api,
+        long count,
+        long unanswered,
+        double meanMicros,
+        long p50Micros,
+        long p99Micros,
+        long p999Micros,
+        long maxMicros) {
+}
@@ -0,0 +1,82 @@
+package com.example.kafkadup.config;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.kafka.common.protocol.ApiKeys;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-API request/response latency for one {@link TcpProxy}.
+ * Event loops record into HdrHistogram {@link Recorder}s, which are wait-free for writers;
+ * readers fold the interval histograms into a cumulative one when a snapshot is taken.
+ */
+class KafkaApiStats {
+    private static final int MAX_API_KEY = 128;
+
+    private final AtomicReferenceArray<Entry> entries = new AtomicReferenceArray<>(MAX_API_KEY);
+
+    void record(short apiKey, long latencyNanos) {
+        Entry e = entry(apiKey);
+        if (e != null) {
+            e.recorder.recordValue(Math.max(0, latencyNanos));
+        }
+    }
+
+    void unanswered(short apiKey) {
+        Entry e = entry(apiKey);
+        if (e != null) {
+            e.unanswered.increment();
+        }
+    }
+
+    synchronized List<KafkaApiLatency> snapshot(boolean reset) {
+        List<KafkaApiLatency> result = new ArrayList<>();
+        for (int key = 0; key < MAX_API_KEY; key++) {
+            Entry e = entries.get(key);
+            if (e == null) {
+                continue;
+            }
+            e.interval = e.recorder.getIntervalHistogram(e.interval);
+            e.total.add(e.interval);
+            Histogram h = e.total;
+            long unanswered = reset ? e.unanswered.sumThenReset() : e.unanswered.sum();
+            result.add(new KafkaApiLatency(key, apiName(key), h.getTotalCount(), unanswered,
+                    h.getMean() / 1000.0,
+                    h.getValueAtPercentile(50.0) / 1000,
+                    h.getValueAtPercentile(99.0) / 1000,
+                    h.getValueAtPercentile(99.9) / 1000,
+                    h.getMaxValue() / 1000));
+            if (reset) {
+                h.reset();
+            }
+        }
+        return result;
+    }
+
+    private Entry entry(short apiKey) {
+        if (apiKey < 0 || apiKey >= MAX_API_KEY) {
+            return null;
+        }
+        Entry e = entries.get(apiKey);
+        if (e == null) {
+            entries.compareAndSet(apiKey, null, new Entry());
+            e = entries.get(apiKey);
+        }
+        return e;
+    }
+
+    private static String apiName(int key) {
+        return ApiKeys.hasId(key) ? ApiKeys.forId(key).name : "API_" + key;
+    }
+
+    private static final class Entry {
+        final Recorder recorder = new Recorder(3);
+        final Histogram total = new Histogram(3);
+        final LongAdder unanswered = new LongAdder();
+        Histogram interval;
+    }
+}
@@ -1,41 +1,164 @@
 package com.example.kafkadup.config;
 
+import com.example.kafkadup.serde.OrderEvent;
+import com.example.kafkadup.serde.OrderEventSerializer;
+import com.example.kafkadup.serde.PooledStringSerializer;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.*;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.*;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.core.*;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Configuration
 public class KafkaConfig {
 
-    @Value("${spring.kafka.bootstrap-servers:localhost:9092}")
-    private String bootstrapServers;
+    private final MeterRegistry meterRegistry;
+    // every client bootstraps through the proxies and metadata points it back at them,
+    // so blocking a broker's proxy affects producer and consumer alike
+    private final String bootstrapServers;
+    // numbers the transactional id prefixes of producer factories made for runs
+    private final AtomicLong runFactories = new AtomicLong();
+
+    public KafkaConfig(MeterRegistry meterRegistry, ProxyRegistry proxies) {
+        this.meterRegistry = meterRegistry;
+        this.bootstrapServers = proxies.bootstrapServers();
+    }
+
+    @Value("${app.topic:order.created}")
+    private String topic;
+
+    @Value("${app.producer.profile:non-idempotent}")
+    private String producerProfile;
+
+    // empty = Kafka's defaults for compression, linger, batch size and buffer memory
+    @Value("${app.producer.tuning.active:}")
+    private String producerTuning;
+
+    @Value("${app.producer.tuning.buffer-memory:33554432}")
+    private long producerBufferMemory;
+
+    // the documented producer timeout from spring.kafka.producer.properties; short, so a blocked ACK leads to a retry
+    @Value("${spring.kafka.producer.properties.request.timeout.ms:30000}")
+    private int requestTimeoutMs;
+
+    @Value("${app.topic-partitions:3}")
+    private int topicPartitions;
+
+    // 0 = one consumer thread per partition
+    @Value("${app.consumer.concurrency:0}")
+    private int consumerConcurrency;
+
+    @Value("${app.consumer.batch:false}")
+    private boolean batchListener;
+
+    @Value("${app.consumer.max-poll-records:2000}")
+    private int maxPollRecords;
+
+    @Value("${app.consumer.fetch-min-bytes:65536}")
+    private int fetchMinBytes;
+
+    @Value("${app.consumer.fetch-max-wait-ms:50}")
+    private int fetchMaxWaitMs;
+
+    /** Replaces Boot's admin, which would bootstrap from spring.kafka.bootstrap-servers. */
+    @Bean
+    public KafkaAdmin kafkaAdmin() {
+        return new KafkaAdmin(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers));
+    }
 
     @Bean
-    public ProducerFactory<String, String> producerFactory() {
+    public NewTopic orderTopic() {
+        return TopicBuilder.name(topic).partitions(topicPartitions).replicas(1).build();
+    }
+
+    /** Its tuning can be changed at runtime with {@code updateConfigs()} and {@code reset()}. */
+    @Bean
+    public DefaultKafkaProducerFactory<String, OrderEvent> producerFactory() {
+        return newProducerFactory(producerProfile(), producerTuning(), ProducerProfile.TRANSACTION_ID_PREFIX);
+    }
+
+    public ProducerProfile producerProfile() {
+        return ProducerProfile.parse(producerProfile);
+    }
+
+    /** The tuning from {@code app.producer.tuning.active}, null for Kafka's defaults. */
+    public ProducerTuning producerTuning() {
+        return producerTuning.isBlank() ? null : ProducerTuning.parse(producerTuning, producerBufferMemory);
+    }
+
+    public long producerBufferMemory() {
+        return producerBufferMemory;
+    }
+
+    /**
+     * A producer factory for the given profile, otherwise configured like the application's own.
+     * Callers other than {@link #producerFactory()} own the result and must {@code destroy()} it.
+     */
+    public DefaultKafkaProducerFactory<String, OrderEvent> newProducerFactory(ProducerProfile profile) {
+        DefaultKafkaProducerFactory<String, OrderEvent> factory = newProducerFactory(profile, null);
+        // the application producer's current tuning, which may have been changed at runtime
+        Map<String, Object> current = producerFactory().getConfigurationProperties();
+        Map<String, Object> tuning = new HashMap<>();
+        for (String key : ProducerTuning.CONFIG_KEYS) {
+            if (current.containsKey(key)) {
+                tuning.put(key, current.get(key));
+            }
+        }
+        factory.updateConfigs(tuning);
+        return factory;
+    }
+
+    /**
+     * Same as {@link #newProducerFactory(ProducerProfile)} with the given tuning; null for Kafka's defaults.
+     * Transactional ids get a prefix of their own per factory: a run's producer sharing one with
+     * the application's would fence it on {@code initTransactions()}.
+     */
+    public DefaultKafkaProducerFactory<String, OrderEvent> newProducerFactory(ProducerProfile profile,
+                                                                              ProducerTuning tuning) {
+        return newProducerFactory(profile, tuning,
+                ProducerProfile.TRANSACTION_ID_PREFIX + "run" + runFactories.incrementAndGet() + "-");
+    }
+
+    private DefaultKafkaProducerFactory<String, OrderEvent> newProducerFactory(ProducerProfile profile,
+                                                                               ProducerTuning tuning,
+                                                                               String transactionIdPrefix) {
         Map<String, Object> props = new HashMap<>();
         props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
-        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        // same bytes on the wire as StringSerializer, but encoded into pooled arrays
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, PooledStringSerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, OrderEventSerializer.class);
 
-        // Make duplicates likely for repro: disable idempotence
         props.put(ProducerConfig.ACKS_CONFIG, "all");
         props.put(ProducerConfig.RETRIES_CONFIG, 20);
-        props.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 1);
+        props.put(ProducerConfig.REQUEST_TIMEOUT_MS_CONFIG, requestTimeoutMs);
         props.put(ProducerConfig.DELIVERY_TIMEOUT_MS_CONFIG, 300000);
-        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, false);
+        // idempotence and max.in.flight; NON_IDEMPOTENT (the default) is what makes duplicates likely
+        profile.apply(props);
+        if (tuning != null) {
+            tuning.apply(props);
+        }
 
-        return new DefaultKafkaProducerFactory<>(props);
+        var factory = new DefaultKafkaProducerFactory<String, OrderEvent>(props);
+        if (profile == ProducerProfile.TRANSACTIONAL) {
+            factory.setTransactionIdPrefix(transactionIdPrefix);
+        }
+        // binds the client's own metrics (kafka.producer.record.retry.total, record.error.total, ...)
+        factory.addListener(new MicrometerProducerListener<>(meterRegistry));
+        return factory;
     }
 
     @Bean
-    public KafkaTemplate<String, String> kafkaTemplate() {
+    public KafkaTemplate<String, OrderEvent> kafkaTemplate() {
         return new KafkaTemplate<>(producerFactory());
     }
 
@@ -47,13 +170,45 @@ public class KafkaConfig {
         cprops.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
         cprops.put(ConsumerConfig.GROUP_ID_CONFIG, "dup-repro-group");
         cprops.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
-        return new DefaultKafkaConsumerFactory<>(cprops);
+        // records of aborted transactions are not duplicates; without transactions this changes nothing
+        cprops.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        if (batchListener) {
+            // fewer, fuller polls: each poll hands the listener up to maxPollRecords records
+            cprops.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
+            cprops.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, fetchMinBytes);
+            cprops.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, fetchMaxWaitMs);
+        }
+        var factory = new DefaultKafkaConsumerFactory<String, String>(cprops);
+        factory.addListener(new MicrometerConsumerListener<>(meterRegistry));
+        return factory;
     }
 
+    /**
+     * Record-at-a-time listeners (the default).
+     */
     @Bean
     public ConcurrentKafkaListenerContainerFactory<String, String> kafkaListenerContainerFactory() {
         var f = new ConcurrentKafkaListenerContainerFactory<String, String>();
         f.setConsumerFactory(consumerFactory());
+        f.setConcurrency(listenerConcurrency());
         return f;
     }
+
+    /**
+     * Batch listeners, used when {@code app.consumer.batch=true}. Offsets of a batch are
+     * committed after the listener returns for the whole batch.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, String> batchListenerContainerFactory() {
+        var f = new ConcurrentKafkaListenerContainerFactory<String, String>();
+        f.setConsumerFactory(consumerFactory());
+        f.setConcurrency(listenerConcurrency());
+        f.setBatchListener(true);
+        return f;
+    }
+
+    private int listenerConcurrency() {
+        // more consumers than partitions would just sit idle
+        return (consumerConcurrency > 0) ? consumerConcurrency : Math.max(1, topicPartitions);
+    }
 }
@@ -0,0 +1,265 @@
+package com.example.kafkadup.config;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Tracks Kafka frame boundaries in one direction of a proxied stream.
+ * Every Kafka request and response is a 4-byte big-endian size followed by that many bytes,
+ * so only the size prefix has to be looked at; frame bodies are skipped in bulk.
+ * <p>
+ * When asked to (or at random, see {@link #dropRate}), the scanner removes whole frames from the
+ * buffer, which keeps the stream well-formed for the peer (as opposed to cutting bytes at arbitrary positions).
+ * <p>
+ * With a {@link HeaderListener} set, the first few bytes of each frame body (the fixed part
+ * of the request or response header) are collected into a {@code long} and handed over once
+ * complete. Nothing else is copied.
+ * <p>
+ * With a {@link FrameRewriter} set, frames it asks for are captured whole, replaced by the
+ * rewriter's version and put back where they were, moving later bytes up if the new frame is
+ * longer. The caller must leave room for that (see {@link #captureRemaining()}); a rewritten
+ * frame that does not fit at the end of the buffer is kept as {@link #overflow()}.
+ */
+class KafkaFrameScanner {
+    private static final int SIZE_PREFIX = 4;
+    /** Smallest real frame: a response header is just the 4-byte correlation id. */
+    private static final int MIN_FRAME_SIZE = 4;
+
+    interface HeaderListener {
+        /**
+         * @param size    frame size as found in the size prefix
+         * @param header  the first {@code headerBytes} bytes of the frame body, big-endian
+         * @param dropped true if the frame is being removed from the stream
+         */
+        void onHeader(int size, long header, boolean dropped);
+    }
+
+    interface FrameRewriter {
+        /** Called as a frame starts: should it be captured and passed to {@link #rewrite}? */
+        boolean capture();
+
+        /**
+         * @param frame a whole captured frame, size prefix included
+         * @return the frame to forward instead, size prefix included (may be {@code frame} itself)
+         */
+        ByteBuffer rewrite(ByteBuffer frame);
+    }
+
+    private final int headerBytes;
+    private final HeaderListener listener;
+
+    private int sizeBytesSeen;
+    private int sizeAccum;
+    private int frameSize;
+    private int remaining;   // body bytes left in the current frame
+    private int headerSeen;
+    private long headerAccum;
+    private boolean dropping;
+    private boolean broken;  // stream is not Kafka framing; stop interpreting it
+    private volatile long droppedFrames; // read by metrics from other threads
+    private double dropRate;
+    private final FrameRewriter rewriter;
+    private boolean capturing;
+    private ByteBuffer captured;  // the frame being captured, in write mode
+    private ByteBuffer overflow;  // rewritten bytes still to be forwarded, in read mode
+    private int insertedTail;     // where insert() moved the unscanned rest of the buffer
+    private int insertedEnd;
+
+    KafkaFrameScanner() {
+        this(0, null);
+    }
+
+    KafkaFrameScanner(int headerBytes, HeaderListener listener) {
+        this(headerBytes, listener, null);
+    }
+
+    KafkaFrameScanner(int headerBytes, HeaderListener listener, FrameRewriter rewriter) {
+        if (headerBytes < 0 || headerBytes > Long.BYTES) {
+            throw new IllegalArgumentException("headerBytes must be 0.." + Long.BYTES);
+        }
+        this.headerBytes = (listener != null) ? headerBytes : 0;
+        this.listener = listener;
+        this.rewriter = rewriter;
+    }
+
+    /**
+     * Scan the bytes {@code [from, to)} of {@code buf}. Frames that start while
+     * {@code dropNewFrames} is true are removed; surviving bytes are moved down in place.
+     *
+     * @return the new end of valid data
+     */
+    int scan(ByteBuffer buf, int from, int to, boolean dropNewFrames) {
+        if (broken) {
+            return to;
+        }
+        int w = from;
+        int i = from;
+        while (i < to) {
+            if (remaining == 0) {
+                byte b = buf.get(i++);
+                if (sizeBytesSeen == 0) {
+                    // the decision for a frame is made on its first byte and kept until its end
+                    dropping = dropNewFrames || (dropRate > 0 && ThreadLocalRandom.current().nextDouble() < dropRate);
+                    capturing = !dropping && rewriter != null && rewriter.capture();
+                    if (capturing) {
+                        captured = ByteBuffer.allocate(SIZE_PREFIX);
+                    }
+                }
+                sizeAccum = (sizeAccum << 8) | (b & 0xff);
+                if (capturing) {
+                    captured.put(b);
+                } else if (!dropping) {
+                    buf.put(w++, b);
+                }
+                if (++sizeBytesSeen == SIZE_PREFIX) {
+                    if (sizeAccum < MIN_FRAME_SIZE) {
+                        broken = true;
+                        if (capturing) {
+                            // give back the size bytes taken so far, unchanged
+                            capturing = false;
+                            w = insert(buf, captured.flip(), w, i, to);
+                            if (overflow != null) {
+                                return w;
+                            }
+                            i = insertedTail;
+                            to = insertedEnd;
+                        }
+                        return copyRest(buf, w, i, to);
+                    }
+                    if (capturing) {
+                        captured = ByteBuffer.allocate(SIZE_PREFIX + sizeAccum).put(captured.flip());
+                    }
+                    frameSize = sizeAccum;
+                    remaining = sizeAccum;
+                    sizeBytesSeen = 0;
+                    sizeAccum = 0;
+                    headerSeen = 0;
+                    headerAccum = 0;
+                }
+            } else if (headerSeen < headerBytes) {
+                // still collecting the fixed header: byte at a time, at most headerBytes of them
+                byte b = buf.get(i++);
+                headerAccum = (headerAccum << 8) | (b & 0xff);
+                if (capturing) {
+                    captured.put(b);
+                } else if (!dropping) {
+                    buf.put(w++, b);
+                }
+                if (++headerSeen == headerBytes) {
+                    listener.onHeader(frameSize, headerAccum, dropping);
+                }
+                if (--remaining == 0) {
+                    frameDone();
+                }
+            } else {
+                int n = Math.min(remaining, to - i);
+                if (capturing) {
+                    captured.put(captured.position(), buf, i, n);
+                    captured.position(captured.position() + n);
+                } else if (!dropping) {
+                    if (w != i) {
+                        buf.put(w, buf, i, n);
+                    }
+                    w += n;
+                }
+                i += n;
+                remaining -= n;
+                if (remaining == 0) {
+                    frameDone();
+                }
+            }
+            if (capturing && remaining == 0 && sizeBytesSeen == 0) {
+                capturing = false;
+                ByteBuffer frame = captured.flip();
+                captured = null;
+                w = insert(buf, rewriter.rewrite(frame), w, i, to);
+                if (overflow != null) {
+                    return w;
+                }
+                i = insertedTail;
+                to = insertedEnd;
+            }
+        }
+        return w;
+    }
+
+    /**
+     * Put {@code frame} at {@code w}, ahead of the unscanned bytes {@code [i, to)}, which are moved
+     * up if needed. If the frame does not fit and nothing follows it, it becomes the overflow.
+     *
+     * @return the new write position
+     */
+    private int insert(ByteBuffer buf, ByteBuffer frame, int w, int i, int to) {
+        int len = frame.remaining();
+        int tail = to - i;
+        int shift = Math.max(0, w + len - i);
+        if (to + shift > buf.capacity()) {
+            if (tail > 0) {
+                throw new IllegalStateException("no room for a rewritten frame of " + len + " bytes");
+            }
+            overflow = frame;
+            return w;
+        }
+        if (shift > 0 && tail > 0) {
+            byte[] rest = new byte[tail];
+            buf.get(i, rest);
+            buf.put(i + shift, rest);
+        }
+        buf.put(w, frame, frame.position(), len);
+        insertedTail = i + shift;
+        insertedEnd = to + shift;
+        return w + len;
+    }
+
+    /**
+     * How many more bytes the caller may read before scanning again: the rest of a frame being
+     * captured, so that it ends exactly at the end of the read; otherwise unlimited.
+     */
+    int captureRemaining() {
+        if (!capturing) {
+            return Integer.MAX_VALUE;
+        }
+        return (sizeBytesSeen > 0) ? SIZE_PREFIX - sizeBytesSeen : remaining;
+    }
+
+    boolean rewrites() {
+        return rewriter != null;
+    }
+
+    /**
+     * A rewritten frame that did not fit into the buffer; the caller must forward it (and read
+     * nothing more) before scanning again. Null if there is none.
+     */
+    ByteBuffer overflow() {
+        ByteBuffer o = overflow;
+        if (o != null && !o.hasRemaining()) {
+            overflow = null;
+            return null;
+        }
+        return o;
+    }
+
+    /** Probability of dropping each new frame, in addition to {@code dropNewFrames}. */
+    void dropRate(double rate) {
+        this.dropRate = rate;
+    }
+
+    long droppedFrames() {
+        return droppedFrames;
+    }
+
+    private void frameDone() {
+        if (dropping) {
+            droppedFrames++;
+            dropping = false;
+        }
+    }
+
+    private static int copyRest(ByteBuffer buf, int w, int i, int to) {
+        int n = to - i;
+        if (n > 0 && w != i) {
+            buf.put(w, buf, i, n);
+        }
+        return w + n;
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.kafkadup.config;
+
+/**
+ * Matches responses to requests on one proxied connection by correlation id.
+ * <p>
+ * Kafka answers requests on a connection in the order they were sent, so in-flight requests
+ * are kept in a small ring of primitive arrays; a response normally matches the oldest entry.
+ * Requests skipped over (e.g. produce with acks=0) count as unanswered. Runs on the
+ * connection's event loop only.
+ * <p>
+ * Without stats the decoder only tracks requests, for {@link KafkaAddressRewriter}. A request
+ * or response the proxy dropped counts as unanswered at once; a dropped request is not tracked,
+ * as the broker never sees it.
+ */
+class KafkaProtocolDecoder {
+    /** api_key(2) + api_version(2) + correlation_id(4) */
+    static final int REQUEST_HEADER_BYTES = 8;
+    /** correlation_id(4) */
+    static final int RESPONSE_HEADER_BYTES = 4;
+
+    interface UnansweredListener {
+        void unanswered(short apiKey, int correlationId, long sentNanos, UnansweredProduce.Reason reason);
+    }
+
+    private final KafkaApiStats stats;
+    private final UnansweredListener unanswered;
+    private int[] correlationIds = new int[16];
+    private short[] apiKeys = new short[16];
+    private short[] apiVersions = new short[16];
+    private long[] sentNanos = new long[16];
+    private int head;
+    private int size;
+    private short matchedApiKey = -1;
+    private short matchedApiVersion = -1;
+
+    final KafkaFrameScanner.HeaderListener requests = (frameSize, header, dropped) -> onRequest(header, dropped);
+    final KafkaFrameScanner.HeaderListener responses = (frameSize, header, dropped) -> onResponse((int) header, dropped);
+
+    /** @param stats where to record latencies, or null */
+    KafkaProtocolDecoder(KafkaApiStats stats) {
+        this(stats, null);
+    }
+
+    /** @param unanswered told about every request that goes unanswered, or null */
+    KafkaProtocolDecoder(KafkaApiStats stats, UnansweredListener unanswered) {
+        this.stats = stats;
+        this.unanswered = unanswered;
+    }
+
+    /** The api key of the {@code n}-th oldest request in flight, {@code 0 <= n < inFlight()}. */
+    short inFlightApiKey(int n) {
+        return apiKeys[(head + n) & (correlationIds.length - 1)];
+    }
+
+    /** Api key of the request the last response matched, or -1 if it matched none. */
+    short matchedApiKey() {
+        return matchedApiKey;
+    }
+
+    short matchedApiVersion() {
+        return matchedApiVersion;
+    }
+
+    private void onRequest(long header, boolean dropped) {
+        short apiKey = (short) (header >>> 48);
+        if (dropped) {
+            reportUnanswered(apiKey, (int) header, System.nanoTime(), UnansweredProduce.Reason.DROPPED);
+            return;
+        }
+        if (size == correlationIds.length) {
+            grow();
+        }
+        int slot = (head + size) & (correlationIds.length - 1);
+        apiKeys[slot] = apiKey;
+        apiVersions[slot] = (short) (header >>> 32);
+        correlationIds[slot] = (int) header;
+        sentNanos[slot] = System.nanoTime();
+        size++;
+    }
+
+    private void onResponse(int correlationId, boolean dropped) {
+        long now = System.nanoTime();
+        int mask = correlationIds.length - 1;
+        int match = -1;
+        for (int n = 0; n < size; n++) {
+            if (correlationIds[(head + n) & mask] == correlationId) {
+                match = n;
+                break;
+            }
+        }
+        if (match < 0) {
+            matchedApiKey = -1;
+            matchedApiVersion = -1;
+            return; // response to a request we never saw
+        }
+        for (int n = 0; n < match; n++) {
+            popUnanswered(UnansweredProduce.Reason.SKIPPED);
+        }
+        matchedApiKey = apiKeys[head];
+        matchedApiVersion = apiVersions[head];
+        if (dropped) {
+            popUnanswered(UnansweredProduce.Reason.DROPPED);
+            return;
+        }
+        if (stats != null) {
+            stats.record(apiKeys[head], now - sentNanos[head]);
+        }
+        pop();
+    }
+
+    /** Requests seen that have not been answered (or given up on) yet. */
+    int inFlight() {
+        return size;
+    }
+
+    /** Called when the client leaves or the connection closes: nothing still in flight will be answered. */
+    void close() {
+        while (size > 0) {
+            popUnanswered(UnansweredProduce.Reason.CLOSED);
+        }
+    }
+
+    private void popUnanswered(UnansweredProduce.Reason reason) {
+        reportUnanswered(apiKeys[head], correlationIds[head], sentNanos[head], reason);
+        pop();
+    }
+
+    private void reportUnanswered(short apiKey, int correlationId, long sentNanos, UnansweredProduce.Reason reason) {
+        if (stats != null) {
+            stats.unanswered(apiKey);
+        }
+        if (unanswered != null) {
+            unanswered.unanswered(apiKey, correlationId, sentNanos, reason);
+        }
+    }
+
+    private void pop() {
+        head = (head + 1) & (correlationIds.length - 1);
+        size--;
+    }
+
+    private void grow() {
+        int n = correlationIds.length;
+        int[] c = new int[n * 2];
+        short[] k = new short[n * 2];
+        short[] v = new short[n * 2];
+        long[] t = new long[n * 2];
+        for (int i = 0; i < size; i++) {
+            int from = (head + i) & (n - 1);
+            c[i] = correlationIds[from];
+            k[i] = apiKeys[from];
+            v[i] = apiVersions[from];
+            t[i] = sentNanos[from];
+        }
+        correlationIds = c;
+        apiKeys = k;
+        apiVersions = v;
+        sentNanos = t;
+        head = 0;
+    }
+
+}
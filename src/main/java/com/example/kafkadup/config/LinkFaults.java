@@ -0,0 +1,46 @@
+package com.example.kafkadup.config;
+
+/**
+ * Impairments applied to one direction of a proxied connection.
+ *
+ * @param latencyMs      fixed delay added to every chunk of bytes
+ * @param jitterMs       extra random delay, uniform in {@code [0, jitterMs]}; byte order is kept
+ * @param bytesPerSecond token-bucket bandwidth cap, 0 for unlimited
+ * @param burstBytes     bucket size; 0 picks a tenth of a second's worth (at least 16 KiB)
+ * @param dropRate       probability in {@code [0, 1]} that a Kafka frame is removed whole
+ */
+public record LinkFaults(
+        long latencyMs,
+        long jitterMs,
+        long bytesPerSecond,
+        long burstBytes,
+        double dropRate) {
+
+    public static final LinkFaults NONE = new LinkFaults(0, 0, 0, 0, 0);
+
+    private static final long MIN_BURST = 16 * 1024;
+
+    public LinkFaults {
+        if (latencyMs < 0 || jitterMs < 0 || bytesPerSecond < 0 || burstBytes < 0) {
+            throw new IllegalArgumentException("latencyMs, jitterMs, bytesPerSecond and burstBytes must be >= 0");
+        }
+        if (!(dropRate >= 0 && dropRate <= 1)) {
+            throw new IllegalArgumentException("dropRate must be between 0 and 1");
+        }
+        if (bytesPerSecond > 0 && burstBytes == 0) {
+            burstBytes = Math.max(MIN_BURST, bytesPerSecond / 10);
+        }
+    }
+
+    boolean delays() {
+        return latencyMs > 0 || jitterMs > 0;
+    }
+
+    boolean limitsBandwidth() {
+        return bytesPerSecond > 0;
+    }
+
+    boolean isNone() {
+        return !delays() && !limitsBandwidth() && dropRate == 0;
+    }
+}
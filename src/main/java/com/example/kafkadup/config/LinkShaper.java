@@ -0,0 +1,131 @@
+package com.example.kafkadup.config;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * When the bytes buffered for one direction of a {@link ProxyConnection} may be written under
+ * {@link LinkFaults}: each chunk read gets a release time (latency, jitter) and writes are capped
+ * by a token bucket (bandwidth). Only counts bytes, with the clock passed in, so the connection
+ * owns the buffer and the timer. Not thread-safe; used from the loop thread only.
+ */
+final class LinkShaper {
+    private final LongUnaryOperator jitter;
+    private LinkFaults faults = LinkFaults.NONE;
+
+    // stream offsets; they count bytes that survived frame drops
+    private long readTotal;        // bytes added so far
+    private long releasedEnd;      // bytes before this offset are past their release time
+    private long lastRelease;      // release times never go backwards, so bytes stay in order
+    private long[] markEnds = new long[8];
+    private long[] markTimes = new long[8];
+    private int markHead;
+    private int markCount;
+    private double tokens;
+    private long refilledAt;
+
+    /**
+     * @param jitter random extra delay in {@code [0, bound]} for a bound in nanoseconds
+     */
+    LinkShaper(LongUnaryOperator jitter) {
+        this.jitter = jitter;
+    }
+
+    LinkFaults faults() {
+        return faults;
+    }
+
+    /** {@code n} bytes entered the buffer at {@code now}. */
+    void added(int n, long now) {
+        if (n > 0) {
+            readTotal += n;
+            if (faults.delays()) {
+                addMark(readTotal, releaseTime(now));
+            } else {
+                releasedEnd = readTotal;
+            }
+        }
+    }
+
+    /** How many of the {@code pending} buffered bytes may be written now. */
+    long allowance(long now, int pending) {
+        while (markCount > 0 && markTimes[markHead] <= now) {
+            releasedEnd = markEnds[markHead];
+            markHead = (markHead + 1) & (markEnds.length - 1);
+            markCount--;
+        }
+        long written = readTotal - pending;
+        long allowed = Math.min(pending, releasedEnd - written);
+        if (faults.limitsBandwidth()) {
+            tokens = Math.min(faults.burstBytes(), tokens + (now - refilledAt) * faults.bytesPerSecond() / 1e9);
+            refilledAt = now;
+            allowed = Math.min(allowed, (long) Math.max(0, tokens));
+        }
+        return allowed;
+    }
+
+    /** {@code n} bytes went out. */
+    void written(int n) {
+        if (faults.limitsBandwidth()) {
+            tokens -= n;
+        }
+    }
+
+    /** Nanos until more of the {@code pending} bytes may be written, once the allowance held some back. */
+    long resumeDelay(long now, int pending) {
+        long written = readTotal - pending;
+        long releasable = releasedEnd - written;
+        if (releasable <= 0) {
+            // waiting for latency: the next chunk's release time
+            return (markCount > 0) ? markTimes[markHead] - now : 0;
+        }
+        // waiting for tokens: about a millisecond's worth, or what is releasable if less
+        double need = Math.min(releasable, Math.max(1, faults.bytesPerSecond() / 1000));
+        return (long) Math.ceil((need - tokens) * 1e9 / faults.bytesPerSecond());
+    }
+
+    /**
+     * Switch to new faults. Turning delays off releases every buffered byte; otherwise chunks
+     * already read keep their release times. The bucket starts full when bandwidth becomes limited.
+     */
+    void apply(LinkFaults next, long now) {
+        if (!next.delays()) {
+            markCount = 0;
+            releasedEnd = readTotal;
+        }
+        if (next.limitsBandwidth() && !faults.limitsBandwidth()) {
+            tokens = next.burstBytes();
+            refilledAt = now;
+        }
+        tokens = Math.min(tokens, next.burstBytes());
+        faults = next;
+    }
+
+    private long releaseTime(long now) {
+        long delay = TimeUnit.MILLISECONDS.toNanos(faults.latencyMs());
+        if (faults.jitterMs() > 0) {
+            delay += jitter.applyAsLong(TimeUnit.MILLISECONDS.toNanos(faults.jitterMs()));
+        }
+        lastRelease = Math.max(lastRelease, now + delay);
+        return lastRelease;
+    }
+
+    private void addMark(long end, long time) {
+        if (markCount == markEnds.length) {
+            long[] e = new long[markEnds.length * 2];
+            long[] t = new long[markEnds.length * 2];
+            for (int i = 0; i < markCount; i++) {
+                int from = (markHead + i) & (markEnds.length - 1);
+                e[i] = markEnds[from];
+                t[i] = markTimes[from];
+            }
+            markEnds = e;
+            markTimes = t;
+            markHead = 0;
+        }
+        int slot = (markHead + markCount) & (markEnds.length - 1);
+        markEnds[slot] = end;
+        markTimes[slot] = time;
+        markCount++;
+    }
+}
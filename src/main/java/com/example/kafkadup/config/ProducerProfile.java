@@ -0,0 +1,50 @@
+package com.example.kafkadup.config;
+
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+
+/**
+ * Delivery guarantees the producer can run with, selected by {@code app.producer.profile}.
+ * All profiles use {@code acks=all} and retry; they differ in what a retry can do to the log.
+ */
+public enum ProducerProfile {
+    /**
+     * No producer id or sequence numbers: a retried batch whose first ACK was lost is written
+     * again. One request in flight per connection keeps ordering, at the cost of pipelining.
+     */
+    NON_IDEMPOTENT,
+    /**
+     * The broker drops retried batches it has already written, so up to five requests can be
+     * in flight per connection without duplicates or reordering.
+     */
+    IDEMPOTENT,
+    /**
+     * Idempotent, plus sends are grouped into transactions via {@code KafkaTemplate.executeInTransaction}.
+     * Consumers reading {@code read_committed} never see records of aborted transactions.
+     */
+    TRANSACTIONAL;
+
+    public static final String TRANSACTION_ID_PREFIX = "dup-repro-tx-";
+
+    void apply(Map<String, Object> props) {
+        boolean idempotent = this != NON_IDEMPOTENT;
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, idempotent);
+        props.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, idempotent ? 5 : 1);
+    }
+
+    /** Accepts the enum name or its lower-case, dashed form (e.g. {@code non-idempotent}). */
+    public static ProducerProfile parse(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown producer profile: " + value
+                    + " (expected non-idempotent, idempotent or transactional)");
+        }
+    }
+
+    public String slug() {
+        return name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+}
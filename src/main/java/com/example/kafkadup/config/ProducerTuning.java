@@ -0,0 +1,83 @@
+package com.example.kafkadup.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.record.CompressionType;
+
+/**
+ * Compression and batching settings of a producer, independent of its {@link ProducerProfile}.
+ * Named {@code <compression>-<linger>ms-<batch>k}, e.g. {@code lz4-5ms-256k}; the matrix of them
+ * is configured under {@code app.producer.tuning}.
+ *
+ * @param compression  {@code compression.type}: none, gzip, snappy, lz4 or zstd
+ * @param lingerMs     {@code linger.ms}
+ * @param batchSize    {@code batch.size} in bytes
+ * @param bufferMemory {@code buffer.memory} in bytes; the same for every tuning of a matrix, so not in the name
+ */
+public record ProducerTuning(String compression, int lingerMs, int batchSize, long bufferMemory) {
+
+    /** The keys {@link #apply} sets; removing them restores the Kafka defaults. */
+    public static final List<String> CONFIG_KEYS = List.of(ProducerConfig.COMPRESSION_TYPE_CONFIG,
+            ProducerConfig.LINGER_MS_CONFIG, ProducerConfig.BATCH_SIZE_CONFIG, ProducerConfig.BUFFER_MEMORY_CONFIG);
+
+    public ProducerTuning {
+        compression = compression.trim().toLowerCase(Locale.ROOT);
+        // throws IllegalArgumentException for unknown names
+        CompressionType.forName(compression);
+        if (lingerMs < 0) {
+            throw new IllegalArgumentException("linger must be >= 0");
+        }
+        if (batchSize <= 0 || bufferMemory <= 0) {
+            throw new IllegalArgumentException("batch size and buffer memory must be > 0");
+        }
+    }
+
+    public String name() {
+        String batch = (batchSize % 1024 == 0) ? (batchSize / 1024) + "k" : Integer.toString(batchSize);
+        return compression + "-" + lingerMs + "ms-" + batch;
+    }
+
+    public void apply(Map<String, Object> props) {
+        props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compression);
+        props.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        props.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+        props.put(ProducerConfig.BUFFER_MEMORY_CONFIG, bufferMemory);
+    }
+
+    /** Parse a {@link #name()}; the batch size may also be given in bytes (no {@code k}). */
+    public static ProducerTuning parse(String name, long bufferMemory) {
+        String[] parts = name.trim().split("-");
+        try {
+            if (parts.length != 3 || !parts[1].endsWith("ms")) {
+                throw new IllegalArgumentException();
+            }
+            int linger = Integer.parseInt(parts[1].substring(0, parts[1].length() - 2));
+            String b = parts[2].toLowerCase(Locale.ROOT);
+            int batch = b.endsWith("k")
+                    ? Math.multiplyExact(Integer.parseInt(b.substring(0, b.length() - 1)), 1024)
+                    : Integer.parseInt(b);
+            return new ProducerTuning(parts[0], linger, batch, bufferMemory);
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            throw new IllegalArgumentException("unknown producer tuning: " + name
+                    + " (expected <compression>-<linger>ms-<batch>k, e.g. lz4-5ms-256k)");
+        }
+    }
+
+    /** Every combination, compression varying slowest. */
+    public static List<ProducerTuning> matrix(List<String> compressions, List<Integer> lingersMs,
+                                              List<Integer> batchSizes, long bufferMemory) {
+        List<ProducerTuning> matrix = new ArrayList<>();
+        for (String c : compressions) {
+            for (int linger : lingersMs) {
+                for (int batch : batchSizes) {
+                    matrix.add(new ProducerTuning(c, linger, batch, bufferMemory));
+                }
+            }
+        }
+        return matrix;
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.kafkadup.config;
+
+/**
+ * One broker behind {@link ProxyRegistry}: its node id (-1 until a response has named it),
+ * real address, and the port of its proxy.
+ */
+public record ProxyBrokerInfo(
+        int nodeId,
+        String broker,
+        int proxyPort,
+        boolean blocked,
+        String blockMode,
+        int connections,
+        long bytesToBroker,
+        long bytesToClient) {
+}
@@ -1,18 +1,34 @@
 package com.example.kafkadup.config;
 
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
 public class ProxyConfig {
 
-    // NOTE: ensure the proxy is already started in Application.main before Spring needs it,
-    // or manage lifecycle here. For simplicity, this bean creates a TcpProxy that is expected
-    // to be already started externally (we start it in Application.main).
-    @Bean
-    public TcpProxy tcpProxy() {
-        // return a stub; Application will have started a separate TcpProxy instance used by docs.
-        // But to let the controller autowire, return a proxy that can be managed.
-        return new TcpProxy(29099, "127.0.0.1", 9092);
+    /**
+     * One running proxy per broker. Clients bootstrap through them (see {@link KafkaConfig}),
+     * so this is the first bean that waits for {@link BrokerStartup}.
+     */
+    @Bean(destroyMethod = "stop")
+    public ProxyRegistry proxyRegistry(BrokerStartup broker,
+                                       @Value("${app.proxy.port:0}") int port,
+                                       @Value("${app.proxy.advertised-host:127.0.0.1}") String advertisedHost,
+                                       @Value("${app.proxy.io-threads:0}") int ioThreads,
+                                       @Value("${app.proxy.protocol-decoding:true}") boolean protocolDecoding,
+                                       @Value("${app.broker.startup-timeout-ms:120000}") long startupTimeoutMs) throws Exception {
+        String bootstrap = broker.awaitBootstrapServers(Duration.ofMillis(startupTimeoutMs));
+        ProxyRegistry registry = new ProxyRegistry(advertisedHost, port,
+                (ioThreads > 0) ? ioThreads : Runtime.getRuntime().availableProcessors(), protocolDecoding);
+        try {
+            registry.start(bootstrap);
+        } catch (RuntimeException e) {
+            registry.stop();
+            throw e;
+        }
+        return registry;
     }
 }
@@ -0,0 +1,438 @@
+package com.example.kafkadup.config;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * One proxied client connection: the accepted client channel plus the channel to the broker.
+ * Bytes travel through two pooled direct buffers, one per direction. A buffer that cannot be
+ * drained (partial write) turns on OP_WRITE for the destination and, once full, turns off
+ * OP_READ for the source, so a slow peer pushes back through TCP instead of growing memory.
+ * <p>
+ * Blocking the broker->client direction reuses the same mechanism: in {@link TcpProxy.BlockMode#PAUSE}
+ * the broker channel simply loses OP_READ until unblocked; in {@link TcpProxy.BlockMode#DROP_FRAMES}
+ * responses are still read but whole Kafka frames are discarded.
+ * <p>
+ * With protocol decoding on, both directions also feed a {@link KafkaProtocolDecoder}, which
+ * only peeks at the fixed header bytes of each frame. With an {@link TcpProxy.AddressMapper} the
+ * decoder runs regardless, and responses that advertise brokers are captured and rewritten by a
+ * {@link KafkaAddressRewriter}; reads towards the client then stop short of the buffer's end,
+ * so a rewritten frame can grow in place.
+ * <p>
+ * {@link LinkFaults} hold bytes back in the same buffers: a {@link LinkShaper} gives each chunk
+ * read a release time (latency, jitter) and caps writes with a token bucket (bandwidth). A pipe
+ * holding bytes back drops OP_WRITE and sets a timer on the loop's {@link TimerWheel} for when it
+ * may write again.
+ * <p>
+ * Byte and frame counters are written by the loop thread only and may be read from any thread.
+ */
+class ProxyConnection implements ProxyEventLoop.Handler {
+    // a rewritten metadata response grows by a few bytes per broker; this is far more than needed
+    private static final int REWRITE_HEADROOM = 8 * 1024;
+
+    private final TcpProxy proxy;
+    private final ProxyEventLoop loop;
+    private final SocketChannel client;
+    private final SocketChannel remote;
+    private final long id;
+    private final String clientAddress;
+    private final long blockedNanosAtOpen;
+    private volatile long blockedNanosAtClose = -1;
+    private SelectionKey clientKey;
+    private SelectionKey remoteKey;
+    private volatile Pipe toRemote;
+    private volatile Pipe toClient;
+    private KafkaProtocolDecoder decoder;
+    private ProxyFaults appliedFaults = ProxyFaults.NONE;
+    private boolean closed;
+
+    ProxyConnection(TcpProxy proxy, ProxyEventLoop loop, SocketChannel client) throws IOException {
+        this.proxy = proxy;
+        this.loop = loop;
+        this.client = client;
+        this.remote = SocketChannel.open();
+        this.id = proxy.nextConnectionId();
+        this.clientAddress = String.valueOf(client.getRemoteAddress());
+        this.blockedNanosAtOpen = proxy.getBlockedNanos();
+    }
+
+    ProxyEventLoop loop() {
+        return loop;
+    }
+
+    long id() {
+        return id;
+    }
+
+    String clientAddress() {
+        return clientAddress;
+    }
+
+    /** The broker this connection is proxied to. */
+    String broker() {
+        return proxy.getRemoteAddress();
+    }
+
+    long bytesToBroker() {
+        Pipe p = toRemote;
+        return (p != null) ? p.bytes : 0;
+    }
+
+    long bytesToClient() {
+        Pipe p = toClient;
+        return (p != null) ? p.bytes : 0;
+    }
+
+    long droppedFrames() {
+        return droppedFrames(toRemote) + droppedFrames(toClient);
+    }
+
+    private static long droppedFrames(Pipe p) {
+        return (p != null && p.scanner != null) ? p.scanner.droppedFrames() : 0;
+    }
+
+    /** Time the proxy was blocked while this connection was open. */
+    long blockedNanos() {
+        long end = blockedNanosAtClose;
+        return ((end >= 0) ? end : proxy.getBlockedNanos()) - blockedNanosAtOpen;
+    }
+
+    /**
+     * No request awaits its response and no bytes wait to be forwarded in either direction, so
+     * closing now loses nothing. Without a decoder only the buffers are known. Loop thread only.
+     */
+    boolean isIdle() {
+        if (closed || toRemote == null) {
+            return true;
+        }
+        return (decoder == null || decoder.inFlight() == 0) && toRemote.isEmpty() && toClient.isEmpty();
+    }
+
+    /** Must run on the loop thread. */
+    void open(InetSocketAddress upstream) {
+        try {
+            client.configureBlocking(false);
+            client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            remote.configureBlocking(false);
+            remote.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+            toRemote = new Pipe(client, remote, loop.acquireBuffer());
+            toClient = new Pipe(remote, client, loop.acquireBuffer());
+            TcpProxy.AddressMapper mapper = proxy.addressMapper();
+            UnansweredProduceLog unanswered = proxy.unansweredLog();
+            if (proxy.isProtocolDecoding() || mapper != null || unanswered != null) {
+                decoder = new KafkaProtocolDecoder(proxy.isProtocolDecoding() ? proxy.apiStats() : null,
+                        (unanswered != null) ? unanswered.listener(broker(), id) : null);
+                toRemote.scanner = new KafkaFrameScanner(KafkaProtocolDecoder.REQUEST_HEADER_BYTES, decoder.requests);
+                toClient.scanner = new KafkaFrameScanner(KafkaProtocolDecoder.RESPONSE_HEADER_BYTES, decoder.responses,
+                        (mapper != null) ? new KafkaAddressRewriter(decoder, mapper) : null);
+            } else {
+                // framing is tracked both ways so frames can be dropped whenever faults ask for it
+                toRemote.scanner = new KafkaFrameScanner();
+                toClient.scanner = new KafkaFrameScanner();
+            }
+            toClient.paused = proxy.isResponsePaused();
+            applyFaults(System.nanoTime());
+
+            clientKey = client.register(loop.selector(), 0, this);
+            boolean connected = remote.connect(upstream);
+            remoteKey = remote.register(loop.selector(), connected ? 0 : SelectionKey.OP_CONNECT, this);
+            updateInterest();
+            proxy.connectionOpened(this);
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    @Override
+    public void onReady(SelectionKey key) throws IOException {
+        long now = System.nanoTime();
+        toClient.paused = proxy.isResponsePaused();
+        applyFaults(now);
+        if (key == remoteKey && key.isConnectable()) {
+            remote.finishConnect();
+            toRemote.flush(now);
+        }
+        if (key.isValid() && key.isReadable()) {
+            Pipe pipe = (key == clientKey) ? toRemote : toClient;
+            pipe.fill(pipe == toClient && proxy.isResponseDropping(), now);
+            if (pipe == toRemote && pipe.srcEof && decoder != null) {
+                // the client has gone: responses the broker still sends reach nobody
+                decoder.close();
+            }
+            if (pipe.dst != remote || remote.isConnected()) {
+                pipe.flush(now);
+            }
+        }
+        if (key.isValid() && key.isWritable()) {
+            ((key == clientKey) ? toClient : toRemote).flush(now);
+        }
+        if (finished()) {
+            close();
+            return;
+        }
+        updateInterest();
+    }
+
+    /**
+     * Both directions are shut down, or the client has left and every request it sent went to the
+     * broker while responses are paused: those would reach nobody, and a producer reconnecting
+     * every request.timeout.ms during a long block would pile up such connections.
+     */
+    private boolean finished() {
+        return toRemote.done() && (toClient.done() || toClient.paused);
+    }
+
+    /** Re-evaluate block state and faults after they were changed from another thread. Loop thread only. */
+    void refresh() {
+        if (closed || toClient == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        toClient.paused = proxy.isResponsePaused();
+        applyFaults(now);
+        try {
+            toClient.flush(now);
+            if (remote.isConnected()) {
+                toRemote.flush(now);
+            }
+        } catch (IOException e) {
+            close();
+            return;
+        }
+        if (finished()) {
+            close();
+            return;
+        }
+        updateInterest();
+    }
+
+    private void applyFaults(long now) {
+        ProxyFaults faults = proxy.getFaults();
+        if (faults != appliedFaults) {
+            appliedFaults = faults;
+            toRemote.apply(faults.effective(id, TcpProxy.Direction.TO_BROKER), now);
+            toClient.apply(faults.effective(id, TcpProxy.Direction.TO_CLIENT), now);
+        }
+    }
+
+    /** A pipe's timer fired: it may write some of the bytes it was holding back. */
+    private void resume(Pipe pipe) {
+        if (closed) {
+            return;
+        }
+        try {
+            if (pipe.dst != remote || remote.isConnected()) {
+                pipe.flush(System.nanoTime());
+            }
+        } catch (IOException e) {
+            close();
+            return;
+        }
+        if (finished()) {
+            close();
+            return;
+        }
+        updateInterest();
+    }
+
+    private void updateInterest() {
+        if (closed) {
+            return;
+        }
+        boolean remoteConnected = remote.isConnected();
+        int clientOps = 0;
+        int remoteOps = remoteConnected ? 0 : SelectionKey.OP_CONNECT;
+        if (toRemote.wantsRead()) clientOps |= SelectionKey.OP_READ;
+        if (toClient.wantsWrite()) clientOps |= SelectionKey.OP_WRITE;
+        if (remoteConnected) {
+            if (toClient.wantsRead()) remoteOps |= SelectionKey.OP_READ;
+            if (toRemote.wantsWrite()) remoteOps |= SelectionKey.OP_WRITE;
+        }
+        if (clientKey.interestOps() != clientOps) clientKey.interestOps(clientOps);
+        if (remoteKey.interestOps() != remoteOps) remoteKey.interestOps(remoteOps);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        closeQuietly(client);
+        closeQuietly(remote);
+        if (toRemote != null) toRemote.release();
+        if (toClient != null) toClient.release();
+        if (decoder != null) decoder.close();
+        blockedNanosAtClose = proxy.getBlockedNanos();
+        proxy.connectionClosed(this);
+    }
+
+    private static void closeQuietly(SocketChannel ch) {
+        try { ch.close(); } catch (IOException ignore) {}
+    }
+
+    /**
+     * One direction of the connection. The buffer is kept in fill mode: bytes between 0 and
+     * position are waiting to be written to {@code dst}.
+     */
+    private final class Pipe {
+        final SocketChannel src;
+        final SocketChannel dst;
+        final ByteBuffer buf;
+        volatile KafkaFrameScanner scanner;
+        volatile long bytes;   // written to dst
+        boolean paused;
+        boolean srcEof;
+        boolean dstShutdown;
+
+        final LinkShaper shaper = new LinkShaper(bound -> ThreadLocalRandom.current().nextLong(bound + 1));
+        boolean throttled;     // holding bytes back; the timer below resumes writing
+        TimerWheel.Timeout timer;
+        final Runnable onTimer = this::onTimer;
+
+        Pipe(SocketChannel src, SocketChannel dst, ByteBuffer buf) {
+            this.src = src;
+            this.dst = dst;
+            this.buf = buf;
+        }
+
+        void fill(boolean dropFrames, long now) throws IOException {
+            int room = readRoom();
+            if (paused || room <= 0) {
+                return;
+            }
+            int start = buf.position();
+            int r;
+            if (room < buf.remaining()) {
+                int limit = buf.limit();
+                buf.limit(start + room);
+                r = src.read(buf);
+                buf.limit(limit);
+            } else {
+                r = src.read(buf);
+            }
+            if (r < 0) {
+                srcEof = true;
+            } else if (r > 0) {
+                if (scanner != null) {
+                    buf.position(scanner.scan(buf, start, buf.position(), dropFrames));
+                }
+                shaper.added(buf.position() - start, now);
+            }
+        }
+
+        /** How much the next read may take; 0 while a rewritten frame waits for room. */
+        private int readRoom() {
+            KafkaFrameScanner s = scanner;
+            if (s == null || !s.rewrites()) {
+                return buf.remaining();
+            }
+            if (s.overflow() != null) {
+                return 0;
+            }
+            return Math.min(buf.remaining() - REWRITE_HEADROOM, s.captureRemaining());
+        }
+
+        /** Move as much of a rewritten frame that did not fit into the buffer as now fits. */
+        private void drainOverflow(long now) {
+            ByteBuffer overflow = (scanner != null) ? scanner.overflow() : null;
+            if (overflow == null || !buf.hasRemaining()) {
+                return;
+            }
+            int n = Math.min(overflow.remaining(), buf.remaining());
+            buf.put(buf.position(), overflow, overflow.position(), n);
+            buf.position(buf.position() + n);
+            overflow.position(overflow.position() + n);
+            shaper.added(n, now);
+        }
+
+        void flush(long now) throws IOException {
+            if (paused) {
+                return;
+            }
+            int pending = buf.position();
+            if (pending > 0) {
+                long allowed = shaper.faults().isNone() ? pending : shaper.allowance(now, pending);
+                int n = 0;
+                if (allowed > 0) {
+                    buf.flip();
+                    if (allowed < pending) {
+                        buf.limit((int) allowed);
+                    }
+                    n = dst.write(buf);
+                    buf.limit(pending);
+                    buf.compact();
+                    bytes += n;
+                    shaper.written(n);
+                }
+                // everything allowed went out but bytes remain: the faults, not the socket, hold them
+                throttled = allowed < pending && n == allowed;
+                if (throttled) {
+                    scheduleResume(now);
+                }
+            }
+            drainOverflow(now);
+            if (srcEof && buf.position() == 0 && !dstShutdown) {
+                dstShutdown = true;
+                dst.shutdownOutput();
+            }
+        }
+
+        private void scheduleResume(long now) {
+            if (timer != null) {
+                timer.cancel();
+            }
+            timer = loop.schedule(shaper.resumeDelay(now, buf.position()), onTimer);
+        }
+
+        private void onTimer() {
+            timer = null;
+            throttled = false;
+            resume(this);
+        }
+
+        /** Switch to new faults; see {@link LinkShaper#apply}. */
+        void apply(LinkFaults next, long now) {
+            shaper.apply(next, now);
+            if (scanner != null) {
+                scanner.dropRate(next.dropRate());
+            }
+            if (timer != null) {
+                timer.cancel();
+                timer = null;
+            }
+            // the caller flushes, which throttles again if still needed
+            throttled = false;
+        }
+
+        void release() {
+            if (timer != null) {
+                timer.cancel();
+                timer = null;
+            }
+            loop.releaseBuffer(buf);
+        }
+
+        boolean wantsRead() {
+            return !paused && !srcEof && readRoom() > 0;
+        }
+
+        boolean wantsWrite() {
+            return !paused && !throttled && buf.position() > 0;
+        }
+
+        boolean done() {
+            return dstShutdown;
+        }
+
+        boolean isEmpty() {
+            return buf.position() == 0 && (scanner == null || scanner.overflow() == null);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.kafkadup.config;
+
+/**
+ * One open connection of {@link TcpProxy}; {@code id} is what per-connection faults refer to.
+ * {@code broker} is the address the connection's proxy forwards to.
+ */
+public record ProxyConnectionInfo(
+        long id,
+        String broker,
+        String client,
+        long bytesToBroker,
+        long bytesToClient,
+        long droppedFrames,
+        double blockedSeconds) {
+}
@@ -0,0 +1,150 @@
+package com.example.kafkadup.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded selector loop used by {@link TcpProxy}.
+ * Every channel registered here is only ever touched from the loop thread; other threads
+ * hand work over through {@link #execute(Runnable)}. Delayed work (fault injection) runs off a
+ * {@link TimerWheel} whose next deadline bounds the select timeout.
+ */
+class ProxyEventLoop implements Runnable {
+    private static final Logger log = LoggerFactory.getLogger(ProxyEventLoop.class);
+
+    static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 256;
+    private static final long TIMER_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int TIMER_SLOTS = 1024;
+
+    /** Anything attached to a {@link SelectionKey} registered with this loop. */
+    interface Handler {
+        void onReady(SelectionKey key) throws IOException;
+
+        void close();
+    }
+
+    private final String name;
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final ArrayDeque<ByteBuffer> bufferPool = new ArrayDeque<>();
+    private final TimerWheel timers = new TimerWheel(TIMER_TICK_NANOS, TIMER_SLOTS, System.nanoTime());
+    private volatile boolean running = true;
+    private Thread thread;
+
+    ProxyEventLoop(String name) throws IOException {
+        this.name = name;
+        this.selector = Selector.open();
+    }
+
+    void start() {
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    Selector selector() {
+        return selector;
+    }
+
+    boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /** Run a task on the loop thread; safe to call from any thread. */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /** Run a task on the loop thread after {@code delayNanos} (1 ms resolution). Loop thread only. */
+    TimerWheel.Timeout schedule(long delayNanos, Runnable task) {
+        return timers.schedule(delayNanos, task, System.nanoTime());
+    }
+
+    /** Direct buffers are expensive to allocate, so connections borrow them from the loop. */
+    ByteBuffer acquireBuffer() {
+        ByteBuffer buf = bufferPool.poll();
+        return (buf != null) ? buf : ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    void releaseBuffer(ByteBuffer buf) {
+        buf.clear();
+        if (bufferPool.size() < MAX_POOLED_BUFFERS) {
+            bufferPool.push(buf);
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                long wait = timers.nanosToNext(System.nanoTime());
+                if (wait < 0) {
+                    selector.select();
+                } else if (wait < TIMER_TICK_NANOS) {
+                    selector.selectNow();
+                } else {
+                    selector.select(TimeUnit.NANOSECONDS.toMillis(wait));
+                }
+                runTasks();
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    Handler handler = (Handler) key.attachment();
+                    try {
+                        if (key.isValid()) {
+                            handler.onReady(key);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        log.debug("Closing proxy channel after error: {}", e.toString());
+                        handler.close();
+                    }
+                }
+                timers.expire(System.nanoTime());
+            } catch (IOException e) {
+                log.warn("Proxy event loop {} select failed", name, e);
+            }
+        }
+        runTasks();
+        for (SelectionKey key : selector.keys()) {
+            ((Handler) key.attachment()).close();
+        }
+        try { selector.close(); } catch (IOException ignored) {}
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.warn("Proxy event loop task failed", e);
+            }
+        }
+    }
+
+    /** Stop the loop and close every channel still registered with it. */
+    void shutdown(long timeoutMillis) {
+        running = false;
+        selector.wakeup();
+        if (thread != null && !inLoop()) {
+            try {
+                thread.join(timeoutMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
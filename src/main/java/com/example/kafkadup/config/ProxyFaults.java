@@ -0,0 +1,58 @@
+package com.example.kafkadup.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The fault configuration of a {@link TcpProxy}: defaults per direction plus per-connection
+ * overrides. Immutable; every change produces a new instance, which connections pick up by
+ * reference comparison.
+ */
+public record ProxyFaults(
+        LinkFaults toBroker,
+        LinkFaults toClient,
+        Map<Long, LinkFaults> toBrokerByConnection,
+        Map<Long, LinkFaults> toClientByConnection) {
+
+    public static final ProxyFaults NONE = new ProxyFaults(LinkFaults.NONE, LinkFaults.NONE, Map.of(), Map.of());
+
+    public ProxyFaults {
+        toBrokerByConnection = Map.copyOf(toBrokerByConnection);
+        toClientByConnection = Map.copyOf(toClientByConnection);
+    }
+
+    /** Faults in effect for one connection and direction. */
+    LinkFaults effective(long connectionId, TcpProxy.Direction direction) {
+        return (direction == TcpProxy.Direction.TO_BROKER)
+                ? toBrokerByConnection.getOrDefault(connectionId, toBroker)
+                : toClientByConnection.getOrDefault(connectionId, toClient);
+    }
+
+    /**
+     * @param connectionId null for the default of every connection without an override
+     */
+    ProxyFaults with(TcpProxy.Direction direction, Long connectionId, LinkFaults faults) {
+        boolean toBrokerSide = direction == TcpProxy.Direction.TO_BROKER;
+        if (connectionId == null) {
+            return toBrokerSide
+                    ? new ProxyFaults(faults, toClient, toBrokerByConnection, toClientByConnection)
+                    : new ProxyFaults(toBroker, faults, toBrokerByConnection, toClientByConnection);
+        }
+        Map<Long, LinkFaults> overrides = new HashMap<>(toBrokerSide ? toBrokerByConnection : toClientByConnection);
+        overrides.put(connectionId, faults);
+        return toBrokerSide
+                ? new ProxyFaults(toBroker, toClient, overrides, toClientByConnection)
+                : new ProxyFaults(toBroker, toClient, toBrokerByConnection, overrides);
+    }
+
+    ProxyFaults withoutConnection(long connectionId) {
+        if (!toBrokerByConnection.containsKey(connectionId) && !toClientByConnection.containsKey(connectionId)) {
+            return this;
+        }
+        Map<Long, LinkFaults> b = new HashMap<>(toBrokerByConnection);
+        Map<Long, LinkFaults> c = new HashMap<>(toClientByConnection);
+        b.remove(connectionId);
+        c.remove(connectionId);
+        return new ProxyFaults(toBroker, toClient, b, c);
+    }
+}
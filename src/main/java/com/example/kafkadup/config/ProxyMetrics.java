@@ -0,0 +1,169 @@
+package com.example.kafkadup.config;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Exposes the traffic of every broker's {@link TcpProxy} as Micrometer meters, tagged with the
+ * {@code broker} address:
+ * <ul>
+ *   <li>{@code dup.proxy.bytes{direction}} and {@code dup.proxy.frames.dropped} over all connections,</li>
+ *   <li>{@code dup.proxy.blocked} (0/1) and {@code dup.proxy.blocked.time},</li>
+ *   <li>{@code dup.proxy.connections} and {@code dup.proxy.connections.opened},</li>
+ *   <li>with {@code app.proxy.metrics.per-connection=true} only: {@code dup.proxy.connection.bytes{connection,direction}}
+ *       and {@code dup.proxy.connection.blocked.time} per open connection, removed when it closes.
+ *       Connection ids are never reused, so every reconnect adds series; off by default.</li>
+ * </ul>
+ * Throughput is the rate of the byte counters, e.g. {@code sum by (broker) (rate(dup_proxy_bytes_total[1m]))}.
+ * Per-connection meters are registered and removed on a thread of their own, not on the proxy's loops.
+ */
+@Component
+public class ProxyMetrics implements MeterBinder, ProxyRegistry.Listener, TcpProxy.ConnectionListener {
+
+    private final ProxyRegistry proxies;
+    private final Set<TcpProxy> bound = ConcurrentHashMap.newKeySet();
+    private final Map<ProxyConnection, List<Meter>> connectionMeters = new ConcurrentHashMap<>();
+    // null unless per-connection meters are on
+    private final ExecutorService registrar;
+    private volatile MeterRegistry registry;
+
+    public ProxyMetrics(ProxyRegistry proxies,
+                        @Value("${app.proxy.metrics.per-connection:false}") boolean perConnection) {
+        this.proxies = proxies;
+        this.registrar = perConnection ? Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "proxy-metrics");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        // listen first, then pick up proxies that were started before binding
+        proxies.setListener(this);
+        for (ProxyRegistry.BrokerProxy broker : proxies.brokers()) {
+            added(broker);
+        }
+    }
+
+    @Override
+    public void added(ProxyRegistry.BrokerProxy broker) {
+        MeterRegistry r = registry;
+        TcpProxy proxy = broker.proxy;
+        if (r == null || !bound.add(proxy)) {
+            return;
+        }
+        Tags tags = Tags.of("broker", broker.address);
+        FunctionCounter.builder("dup.proxy.bytes", proxy, TcpProxy::getBytesToBroker)
+                .description("Bytes forwarded by the proxy")
+                .baseUnit("bytes")
+                .tags(tags).tag("direction", "to-broker")
+                .register(r);
+        FunctionCounter.builder("dup.proxy.bytes", proxy, TcpProxy::getBytesToClient)
+                .description("Bytes forwarded by the proxy")
+                .baseUnit("bytes")
+                .tags(tags).tag("direction", "to-client")
+                .register(r);
+        FunctionCounter.builder("dup.proxy.frames.dropped", proxy, TcpProxy::getDroppedFrames)
+                .description("Kafka frames discarded by the proxy: DROP_FRAMES blocks and fault drop rates")
+                .tags(tags)
+                .register(r);
+        FunctionCounter.builder("dup.proxy.blocked.time", proxy, p -> p.getBlockedNanos() / 1e9)
+                .description("Time broker->client traffic has been blocked")
+                .baseUnit("seconds")
+                .tags(tags)
+                .register(r);
+        Gauge.builder("dup.proxy.blocked", proxy, p -> p.isBlockUpstream() ? 1 : 0)
+                .description("1 while broker->client traffic is blocked")
+                .tags(tags)
+                .register(r);
+        Gauge.builder("dup.proxy.connections", proxy, TcpProxy::getActiveConnectionCount)
+                .description("Open client connections")
+                .tags(tags)
+                .register(r);
+        FunctionCounter.builder("dup.proxy.connections.opened", proxy, TcpProxy::getOpenedConnections)
+                .description("Client connections opened, e.g. by producers reconnecting after a timeout")
+                .tags(tags)
+                .register(r);
+
+        if (registrar != null) {
+            proxy.setConnectionListener(this);
+            for (ProxyConnection connection : proxy.connections()) {
+                opened(connection);
+            }
+        }
+    }
+
+    @Override
+    public void opened(ProxyConnection connection) {
+        // called on the loop thread, which must not wait for the registry
+        submit(() -> register(connection));
+    }
+
+    @Override
+    public void closed(ProxyConnection connection) {
+        submit(() -> unregister(connection));
+    }
+
+    private void submit(Runnable task) {
+        try {
+            registrar.execute(task);
+        } catch (RejectedExecutionException e) {
+            // shutting down; the registry goes with the application
+        }
+    }
+
+    private void register(ProxyConnection connection) {
+        MeterRegistry r = registry;
+        if (r == null) {
+            return;
+        }
+        connectionMeters.computeIfAbsent(connection, c -> {
+            Tags tags = Tags.of("broker", c.broker(), "connection", Long.toString(c.id()));
+            return List.of(
+                    FunctionCounter.builder("dup.proxy.connection.bytes", c, ProxyConnection::bytesToBroker)
+                            .baseUnit("bytes")
+                            .tags(tags).tag("direction", "to-broker")
+                            .register(r),
+                    FunctionCounter.builder("dup.proxy.connection.bytes", c, ProxyConnection::bytesToClient)
+                            .baseUnit("bytes")
+                            .tags(tags).tag("direction", "to-client")
+                            .register(r),
+                    FunctionCounter.builder("dup.proxy.connection.blocked.time", c, pc -> pc.blockedNanos() / 1e9)
+                            .baseUnit("seconds")
+                            .tags(tags)
+                            .register(r));
+        });
+    }
+
+    private void unregister(ProxyConnection connection) {
+        List<Meter> meters = connectionMeters.remove(connection);
+        MeterRegistry r = registry;
+        if (meters != null && r != null) {
+            meters.forEach(r::remove);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (registrar != null) {
+            registrar.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package com.example.kafkadup.config;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One {@link TcpProxy} per Kafka broker. Clients bootstrap through all of them, and every proxy
+ * rewrites the broker addresses in Metadata, FindCoordinator and DescribeCluster responses to
+ * the matching proxy's address, so each connection a client opens goes through the proxy of the
+ * broker it is meant for. That is what makes blocking one broker's ACKs possible.
+ * <p>
+ * A broker that first shows up in a response (rather than in the bootstrap list) gets a proxy
+ * started on a thread of its own, as that resolves and binds. Until it is up, responses naming
+ * the broker cannot be rewritten, and their connections are closed rather than handing the
+ * client the real address; the client reconnects and asks again. All proxies share one set of
+ * event loops and one set of per-API latency stats.
+ * <p>
+ * Brokers are selected by node id (known once a response has named them) or by their real
+ * {@code host:port}; a null selector means every broker.
+ */
+public class ProxyRegistry implements TcpProxy.AddressMapper {
+    private static final Logger log = LoggerFactory.getLogger(ProxyRegistry.class);
+    private static final int UNANSWERED_PRODUCE_CAPACITY = 10_000;
+    private static final long DRAIN_POLL_MS = 10;
+
+    /** A broker and its proxy. */
+    static final class BrokerProxy {
+        final String address;
+        final TcpProxy proxy;
+        volatile int nodeId = -1;
+
+        BrokerProxy(String address, TcpProxy proxy) {
+            this.address = address;
+            this.proxy = proxy;
+        }
+    }
+
+    /** Notified when a proxy is added, possibly on the thread that starts proxies for new brokers. */
+    interface Listener {
+        void added(BrokerProxy broker);
+    }
+
+    private final String advertisedHost;
+    private final int firstPort;
+    private final boolean protocolDecoding;
+    private final ProxyEventLoop[] loops;
+    private final KafkaApiStats apiStats = new KafkaApiStats();
+    private final UnansweredProduceLog unansweredProduce = new UnansweredProduceLog(UNANSWERED_PRODUCE_CAPACITY);
+    // keyed by host:port as named: looked up on the event loops, which must not wait for DNS
+    private final Map<String, BrokerProxy> brokers = new ConcurrentHashMap<>();
+    private final Set<String> starting = ConcurrentHashMap.newKeySet();
+    private final ExecutorService starter = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "proxy-starter");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile Listener listener;
+
+    /**
+     * @param advertisedHost host clients use to reach the proxies
+     * @param firstPort      listen port of the first proxy, the next ones count up; 0 = ephemeral
+     * @param ioThreads      event loops shared by all proxies
+     */
+    public ProxyRegistry(String advertisedHost, int firstPort, int ioThreads, boolean protocolDecoding)
+            throws IOException {
+        this.advertisedHost = advertisedHost;
+        this.firstPort = firstPort;
+        this.protocolDecoding = protocolDecoding;
+        this.loops = new ProxyEventLoop[Math.max(1, ioThreads)];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new ProxyEventLoop("tcp-proxy-io-" + i);
+            loops[i].start();
+        }
+    }
+
+    /** Start a proxy for each broker of a bootstrap string ({@code host:port,host:port,...}). */
+    public void start(String bootstrapServers) {
+        for (String server : bootstrapServers.split(",")) {
+            String s = server.trim();
+            int colon = s.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalStateException("Cannot parse bootstrap address: " + s);
+            }
+            add(s.substring(0, colon), Integer.parseInt(s.substring(colon + 1)));
+        }
+    }
+
+    /** Start a proxy for a broker unless it has one. Blocks on DNS and bind: never call it on an event loop. */
+    private synchronized BrokerProxy add(String host, int port) {
+        String address = host + ":" + port;
+        BrokerProxy existing = brokers.get(address);
+        if (existing != null) {
+            return existing;
+        }
+        int listenPort = (firstPort > 0) ? firstPort + brokers.size() : 0;
+        TcpProxy proxy = new TcpProxy(listenPort, host, port, loops, apiStats);
+        proxy.setProtocolDecoding(protocolDecoding);
+        proxy.setAddressMapper(this);
+        proxy.setUnansweredLog(unansweredProduce);
+        try {
+            proxy.start();
+        } catch (IOException e) {
+            proxy.stop();
+            throw new UncheckedIOException("cannot start a proxy on port " + listenPort + " for " + address, e);
+        }
+        log.info("Started TcpProxy listening on {}:{} forwarding to {}", advertisedHost, proxy.getListenPort(), address);
+        BrokerProxy broker = new BrokerProxy(address, proxy);
+        brokers.put(address, broker);
+        Listener l = listener;
+        if (l != null) {
+            l.added(broker);
+        }
+        return broker;
+    }
+
+    /**
+     * Called on an event loop. For a broker without a proxy yet, starts one on the starter thread
+     * and fails: the caller must not forward the real address.
+     *
+     * @throws IllegalStateException if the broker has no proxy (yet)
+     */
+    @Override
+    public InetSocketAddress advertise(int nodeId, String host, int port) {
+        String address = host + ":" + port;
+        BrokerProxy broker = brokers.get(address);
+        if (broker == null) {
+            if (starting.add(address)) {
+                starter.execute(() -> {
+                    try {
+                        add(host, port).nodeId = nodeId;
+                    } catch (RuntimeException e) {
+                        log.error("No proxy for broker {} (node {}); clients cannot reach it", address, nodeId, e);
+                    } finally {
+                        starting.remove(address);
+                    }
+                });
+            }
+            throw new IllegalStateException("no proxy for broker " + address + " (node " + nodeId + ") yet");
+        }
+        broker.nodeId = nodeId;
+        return InetSocketAddress.createUnresolved(advertisedHost, broker.proxy.getListenPort());
+    }
+
+    /** What clients should bootstrap from: every proxy. */
+    public String bootstrapServers() {
+        StringBuilder sb = new StringBuilder();
+        for (BrokerProxy b : sorted()) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(advertisedHost).append(':').append(b.proxy.getListenPort());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The proxies of the selected brokers.
+     *
+     * @param broker node id, real {@code host:port}, or null for all
+     * @throws IllegalArgumentException if no broker matches
+     */
+    public List<TcpProxy> select(String broker) {
+        List<TcpProxy> selected = new ArrayList<>();
+        for (BrokerProxy b : sorted()) {
+            if (broker == null || broker.equals(b.address) || broker.equals(Integer.toString(b.nodeId))) {
+                selected.add(b.proxy);
+            }
+        }
+        if (selected.isEmpty()) {
+            throw new IllegalArgumentException("unknown broker: " + broker
+                    + " (expected a node id or host:port from GET /proxy/brokers)");
+        }
+        return selected;
+    }
+
+    public List<TcpProxy> proxies() {
+        return select(null);
+    }
+
+    public List<ProxyBrokerInfo> getBrokers() {
+        List<ProxyBrokerInfo> list = new ArrayList<>();
+        for (BrokerProxy b : sorted()) {
+            TcpProxy p = b.proxy;
+            list.add(new ProxyBrokerInfo(b.nodeId, b.address, p.getListenPort(), p.isBlockUpstream(),
+                    p.getBlockMode().name(), p.getActiveConnectionCount(), p.getBytesToBroker(), p.getBytesToClient()));
+        }
+        return list;
+    }
+
+    /** Block or unblock the selected brokers, keeping each one's block mode. */
+    public void setBlockUpstream(String broker, boolean block) {
+        for (TcpProxy p : select(broker)) {
+            p.setBlockUpstream(block);
+        }
+    }
+
+    public void setBlockUpstream(String broker, boolean block, TcpProxy.BlockMode mode) {
+        for (TcpProxy p : select(broker)) {
+            p.setBlockUpstream(block, mode);
+        }
+    }
+
+    /** True if any broker's ACKs are blocked. */
+    public boolean isBlockUpstream() {
+        for (TcpProxy p : proxies()) {
+            if (p.isBlockUpstream()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<ProxyConnectionInfo> getConnections() {
+        List<ProxyConnectionInfo> list = new ArrayList<>();
+        for (TcpProxy p : proxies()) {
+            list.addAll(p.getConnections());
+        }
+        list.sort(Comparator.comparingLong(ProxyConnectionInfo::id));
+        return list;
+    }
+
+    /**
+     * Set faults on the selected brokers' proxies. A connection id names one connection on
+     * whichever proxy it belongs to.
+     *
+     * @throws IllegalArgumentException if the connection is not open on a selected broker
+     */
+    public void setFaults(String broker, TcpProxy.Direction direction, Long connectionId, LinkFaults faults) {
+        List<TcpProxy> selected = select(broker);
+        if (connectionId == null) {
+            for (TcpProxy p : selected) {
+                p.setFaults(direction, null, faults);
+            }
+            return;
+        }
+        for (TcpProxy p : selected) {
+            for (ProxyConnectionInfo c : p.getConnections()) {
+                if (c.id() == connectionId) {
+                    p.setFaults(direction, connectionId, faults);
+                    return;
+                }
+            }
+        }
+        throw new IllegalArgumentException("no open connection " + connectionId + " (see GET /proxy/connections)");
+    }
+
+    public void clearFaults() {
+        for (TcpProxy p : proxies()) {
+            p.clearFaults();
+        }
+    }
+
+    /** Fault settings per broker address. */
+    public Map<String, ProxyFaults> getFaults() {
+        Map<String, ProxyFaults> faults = new LinkedHashMap<>();
+        for (BrokerProxy b : sorted()) {
+            faults.put(b.address, b.proxy.getFaults());
+        }
+        return faults;
+    }
+
+    /** Each selected broker runs the schedule on its own; null cancels. */
+    public void setBlockSchedule(String broker, BlockSchedule schedule) {
+        for (TcpProxy p : select(broker)) {
+            p.setBlockSchedule(schedule);
+        }
+    }
+
+    /** Block schedules per broker address; brokers without one are left out. */
+    public Map<String, BlockSchedule> getBlockSchedules() {
+        Map<String, BlockSchedule> schedules = new LinkedHashMap<>();
+        for (BrokerProxy b : sorted()) {
+            BlockSchedule s = b.proxy.getBlockSchedule();
+            if (s != null) {
+                schedules.put(b.address, s);
+            }
+        }
+        return schedules;
+    }
+
+    /** Per-API latency over all proxies. Empty unless protocol decoding is on. */
+    public List<KafkaApiLatency> getApiLatencies(boolean reset) {
+        return apiStats.snapshot(reset);
+    }
+
+    /** Bytes forwarded to all brokers so far. */
+    public long getBytesToBroker() {
+        long n = 0;
+        for (TcpProxy p : proxies()) {
+            n += p.getBytesToBroker();
+        }
+        return n;
+    }
+
+    /**
+     * The most recent Produce requests whose response never reached the client, oldest first,
+     * over all brokers. These are the requests a non-idempotent retry may have duplicated.
+     */
+    public List<UnansweredProduce> getUnansweredProduce() {
+        Map<String, Integer> nodeIds = new HashMap<>();
+        for (BrokerProxy b : brokers.values()) {
+            nodeIds.put(b.address, b.nodeId);
+        }
+        List<UnansweredProduce> list = new ArrayList<>();
+        for (UnansweredProduce u : unansweredProduce.snapshot()) {
+            // logged before the broker's node id may have been known
+            int nodeId = nodeIds.getOrDefault(u.broker(), -1);
+            list.add(new UnansweredProduce(nodeId, u.broker(), u.connection(), u.correlationId(),
+                    u.sentNanos(), u.lostNanos(), u.reason()));
+        }
+        return list;
+    }
+
+    public int getActiveConnectionCount() {
+        int n = 0;
+        for (TcpProxy p : proxies()) {
+            n += p.getActiveConnectionCount();
+        }
+        return n;
+    }
+
+    /** Listen first, then go through {@link #brokers()} for the proxies added before. */
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    List<BrokerProxy> brokers() {
+        return sorted();
+    }
+
+    private List<BrokerProxy> sorted() {
+        List<BrokerProxy> list = new ArrayList<>(brokers.values());
+        // by node id once known, then by address
+        list.sort(Comparator.<BrokerProxy>comparingInt(b -> (b.nodeId < 0) ? Integer.MAX_VALUE : b.nodeId)
+                .thenComparing(b -> b.address));
+        return list;
+    }
+
+    /**
+     * Stop accepting connections, then wait until no connection has a request awaiting its
+     * response or bytes left to forward, at most {@code timeout}. Connections stay open either
+     * way; {@link #stop()} closes them.
+     *
+     * @return true if everything in flight was delivered
+     */
+    public boolean drain(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        for (BrokerProxy b : brokers.values()) {
+            b.proxy.stopAccepting();
+        }
+        while (true) {
+            int busy = 0;
+            for (BrokerProxy b : brokers.values()) {
+                busy += b.proxy.busyConnections(DRAIN_POLL_MS * 10);
+            }
+            if (busy == 0) {
+                return true;
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                log.warn("{} proxy connections still busy after {} ms, closing them anyway", busy, timeout.toMillis());
+                return false;
+            }
+            Thread.sleep(DRAIN_POLL_MS);
+        }
+    }
+
+    public void stop() {
+        starter.shutdownNow();
+        for (BrokerProxy b : brokers.values()) {
+            b.proxy.stop();
+        }
+        for (ProxyEventLoop loop : loops) {
+            loop.shutdown(1000);
+        }
+    }
+}
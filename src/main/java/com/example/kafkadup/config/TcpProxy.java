@@ -1,128 +1,546 @@
 package com.example.kafkadup.config;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.Collections;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * TcpProxy that can bind to a specific port or 0 (ephemeral).
  * Call start(); then getListenPort() to find the actual port.
+ * <p>
+ * Connections are served by a small, fixed set of selector loops (one per core by default)
+ * instead of two blocking threads per connection, so hundreds of producer/consumer
+ * connections cost a handful of threads.
+ * <p>
+ * "Blocking upstream" holds back broker->client traffic so the producer never sees its ACKs.
+ * See {@link BlockMode} for the two ways of doing that. Blocks can also be scripted with a
+ * {@link BlockSchedule}.
+ * <p>
+ * Finer impairments (latency, jitter, bandwidth caps, random frame drops) are set per direction,
+ * for all connections or one, through {@link #setFaults}. They are applied on the event loops
+ * with timers, never by sleeping.
+ * <p>
+ * In front of a cluster, one proxy per broker is managed by {@link ProxyRegistry}, which also
+ * has them rewrite the broker addresses clients learn from metadata.
  */
 public class TcpProxy {
+
+    public enum BlockMode {
+        /**
+         * Stop reading from the broker. Responses stay in the socket buffers and TCP windows fill
+         * up, so nothing is lost; after unblock the same connection carries on where it stopped.
+         */
+        PAUSE,
+        /**
+         * Keep reading from the broker but discard every Kafka frame that starts while blocked.
+         * Frames are dropped whole, so the stream stays parseable for the client.
+         */
+        DROP_FRAMES
+    }
+
+    public enum Direction {
+        /** client->broker: requests */
+        TO_BROKER,
+        /** broker->client: responses */
+        TO_CLIENT;
+
+        /** {@code to-broker}, {@code to-client} or {@code both}; null if it is none of these. */
+        public static List<Direction> parse(String direction) {
+            return switch (direction.toLowerCase()) {
+                case "to-broker" -> List.of(TO_BROKER);
+                case "to-client" -> List.of(TO_CLIENT);
+                case "both" -> List.of(values());
+                default -> null;
+            };
+        }
+    }
+
+    // unique across all proxies in the JVM, so a connection id alone names a connection
+    private static final AtomicLong connectionIds = new AtomicLong();
+
     private final int requestedPort; // 0 for ephemeral
     private final String remoteHost;
     private final int remotePort;
-    private final ExecutorService pool = Executors.newCachedThreadPool();
-    private ServerSocket serverSocket;
+    private final int ioThreads;
+    private final boolean ownsLoops;
+    private ServerSocketChannel serverChannel;
+    private ProxyEventLoop[] loops;
+    private int nextLoop;
     private final AtomicBoolean blockUpstream = new AtomicBoolean(false);
-    private final Set<Socket> activeClientSockets = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private volatile BlockMode blockMode = BlockMode.PAUSE;
+    private volatile boolean protocolDecoding;
+    private final KafkaApiStats apiStats;
+    private final Set<ProxyConnection> activeConnections = ConcurrentHashMap.newKeySet();
+    private volatile ConnectionListener connectionListener;
+    private volatile AddressMapper addressMapper;
+    private volatile UnansweredProduceLog unansweredLog;
+
+    // traffic of connections that are already closed; open ones are summed on demand
+    private final LongAdder closedBytesToBroker = new LongAdder();
+    private final LongAdder closedBytesToClient = new LongAdder();
+    private final LongAdder closedDroppedFrames = new LongAdder();
+    private final LongAdder openedConnections = new LongAdder();
+
+    // guarded by this
+    private long blockedSince;
+    private long blockedNanos;
+    private BlockScript blockScript;
+
+    private volatile ProxyFaults faults = ProxyFaults.NONE;
+
+    /** Notified on the loop thread when a connection is opened and when it is closed. */
+    interface ConnectionListener {
+        void opened(ProxyConnection connection);
+
+        void closed(ProxyConnection connection);
+    }
+
+    /** Where clients should connect to reach a broker that a response advertises. */
+    interface AddressMapper {
+        /** @return the address to advertise instead, or null to leave it unchanged */
+        InetSocketAddress advertise(int nodeId, String host, int port);
+    }
 
     public TcpProxy(int listenPort, String remoteHost, int remotePort) {
+        this(listenPort, remoteHost, remotePort, Runtime.getRuntime().availableProcessors());
+    }
+
+    public TcpProxy(int listenPort, String remoteHost, int remotePort, int ioThreads) {
+        this.requestedPort = listenPort;
+        this.remoteHost = remoteHost;
+        this.remotePort = remotePort;
+        this.ioThreads = Math.max(1, ioThreads);
+        this.ownsLoops = true;
+        this.apiStats = new KafkaApiStats();
+    }
+
+    /** A proxy running on loops (and recording into stats) shared with other proxies. */
+    TcpProxy(int listenPort, String remoteHost, int remotePort, ProxyEventLoop[] sharedLoops, KafkaApiStats apiStats) {
         this.requestedPort = listenPort;
         this.remoteHost = remoteHost;
         this.remotePort = remotePort;
+        this.ioThreads = sharedLoops.length;
+        this.ownsLoops = false;
+        this.loops = sharedLoops;
+        this.apiStats = apiStats;
     }
 
     public void start() throws IOException {
-        // bind to requestedPort (0 allowed). serverSocket.getLocalPort() returns actual port.
-        serverSocket = new ServerSocket(requestedPort);
-        pool.submit(() -> {
-            try {
-                while (!serverSocket.isClosed()) {
-                    Socket client = serverSocket.accept();
-                    Socket remote = new Socket(remoteHost, remotePort);
-                    activeClientSockets.add(client);
-                    pool.submit(() -> {
-                        try {
-                            forward(client.getInputStream(), remote.getOutputStream(), client, remote);
-                        } catch (IOException e) {
-                            throw new RuntimeException(e);
-                        }
-                    });
-                    pool.submit(() -> {
-                        try {
-                            forwardUpstream(remote.getInputStream(), client.getOutputStream(), client, remote);
-                        } catch (IOException e) {
-                            throw new RuntimeException(e);
-                        }
-                    });
+        // bind to requestedPort (0 allowed). getListenPort() returns actual port.
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(requestedPort));
+        serverChannel.configureBlocking(false);
+
+        Acceptor acceptor = new Acceptor(new InetSocketAddress(remoteHost, remotePort));
+        if (!ownsLoops) {
+            // the loops are already running; registration must happen on loop 0 itself
+            loops[0].execute(() -> {
+                try {
+                    serverChannel.register(loops[0].selector(), SelectionKey.OP_ACCEPT, acceptor);
+                } catch (IOException e) {
+                    acceptor.close();
                 }
-            } catch (IOException e) {
-                // exit accept loop on socket close or error
-            }
-        });
+            });
+            return;
+        }
+        loops = new ProxyEventLoop[ioThreads];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new ProxyEventLoop("tcp-proxy-io-" + i);
+        }
+        // loop 0 also owns the listening socket
+        serverChannel.register(loops[0].selector(), SelectionKey.OP_ACCEPT, acceptor);
+        for (ProxyEventLoop loop : loops) {
+            loop.start();
+        }
     }
 
     public int getListenPort() {
-        return (serverSocket != null) ? serverSocket.getLocalPort() : -1;
+        return (serverChannel != null) ? serverChannel.socket().getLocalPort() : -1;
     }
 
-    private void forward(InputStream in, OutputStream out, Socket client, Socket remote) {
-        byte[] buf = new byte[8192];
-        try {
-            int r;
-            while ((r = in.read(buf)) != -1) {
-                out.write(buf, 0, r);
-                out.flush();
-            }
-        } catch (IOException ignored) {
-        } finally {
-            closeQuietly(client);
-            closeQuietly(remote);
-            try { out.close(); } catch (Exception ignore) {}
-            try { in.close(); } catch (Exception ignore) {}
-            activeClientSockets.remove(client);
-        }
-    }
-
-    private void forwardUpstream(InputStream in, OutputStream out, Socket client, Socket remote) {
-        byte[] buf = new byte[8192];
-        try {
-            int r;
-            while ((r = in.read(buf)) != -1) {
-                if (blockUpstream.get()) {
-                    try { Thread.sleep(5); } catch (InterruptedException ie) { Thread.currentThread().interrupt(); }
-                    continue;
-                }
-                out.write(buf, 0, r);
-                out.flush();
+    /** The broker this proxy forwards to, as {@code host:port}. */
+    public String getRemoteAddress() {
+        return remoteHost + ":" + remotePort;
+    }
+
+    public void setBlockUpstream(boolean block) {
+        setBlockUpstream(block, blockMode);
+    }
+
+    public void setBlockUpstream(boolean block, BlockMode mode) {
+        synchronized (this) {
+            if (blockScript != null) {
+                // set by hand: a block schedule must not undo it
+                blockScript.ownsBlock = false;
             }
-        } catch (IOException ignored) {
-        } finally {
-            closeQuietly(client);
-            closeQuietly(remote);
-            try { out.close(); } catch (Exception ignore) {}
-            try { in.close(); } catch (Exception ignore) {}
-            activeClientSockets.remove(client);
+            applyBlock(block, mode);
         }
+        // paused connections have no read interest, so they must be told explicitly
+        refreshConnections();
     }
 
-    public void setBlockUpstream(boolean block) {
-        blockUpstream.set(block);
+    /** Caller holds the lock and refreshes connections afterwards. */
+    private void applyBlock(boolean block, BlockMode mode) {
+        blockMode = mode;
+        boolean was = blockUpstream.getAndSet(block);
+        if (block && !was) {
+            blockedSince = System.nanoTime();
+        } else if (!block && was) {
+            blockedNanos += System.nanoTime() - blockedSince;
+        }
+    }
+
+    private void refreshConnections() {
+        for (ProxyConnection connection : activeConnections) {
+            connection.loop().execute(connection::refresh);
+        }
     }
 
     public boolean isBlockUpstream() {
         return blockUpstream.get();
     }
 
+    public BlockMode getBlockMode() {
+        return blockMode;
+    }
+
+    /**
+     * Block ACKs on a schedule, replacing any previous one; null cancels. Cancelling during a
+     * block the schedule started unblocks right away; a block set by hand stays.
+     */
+    public synchronized void setBlockSchedule(BlockSchedule schedule) {
+        if (blockScript != null) {
+            blockScript.cancel();
+            blockScript = null;
+        }
+        if (schedule != null) {
+            if (loops == null) {
+                throw new IllegalStateException("proxy is not started");
+            }
+            blockScript = new BlockScript(schedule, loops[0]);
+            blockScript.begin();
+        }
+    }
+
+    public synchronized BlockSchedule getBlockSchedule() {
+        return (blockScript != null) ? blockScript.schedule : null;
+    }
+
+    /**
+     * Set the impairments of one direction, for one connection (see {@link #getConnections()})
+     * or, with a null connection id, for every connection without its own setting.
+     * Applies to open connections immediately.
+     */
+    public synchronized void setFaults(Direction direction, Long connectionId, LinkFaults linkFaults) {
+        faults = faults.with(direction, connectionId, linkFaults);
+        refreshConnections();
+    }
+
+    public synchronized void clearFaults() {
+        faults = ProxyFaults.NONE;
+        refreshConnections();
+    }
+
+    public ProxyFaults getFaults() {
+        return faults;
+    }
+
+    public List<ProxyConnectionInfo> getConnections() {
+        List<ProxyConnectionInfo> list = new ArrayList<>();
+        for (ProxyConnection c : activeConnections) {
+            list.add(new ProxyConnectionInfo(c.id(), getRemoteAddress(), c.clientAddress(), c.bytesToBroker(), c.bytesToClient(),
+                    c.droppedFrames(), c.blockedNanos() / 1e9));
+        }
+        list.sort(Comparator.comparingLong(ProxyConnectionInfo::id));
+        return list;
+    }
+
+    boolean isResponsePaused() {
+        return blockUpstream.get() && blockMode == BlockMode.PAUSE;
+    }
+
+    boolean isResponseDropping() {
+        return blockUpstream.get() && blockMode == BlockMode.DROP_FRAMES;
+    }
+
+    /**
+     * Decode Kafka request/response headers and record per-API latency.
+     * Applies to connections accepted after the call.
+     */
+    public void setProtocolDecoding(boolean enabled) {
+        protocolDecoding = enabled;
+    }
+
+    public boolean isProtocolDecoding() {
+        return protocolDecoding;
+    }
+
+    /** Per-API latency since start (or since the last reset). Empty unless protocol decoding is on. */
+    public List<KafkaApiLatency> getApiLatencies(boolean reset) {
+        return apiStats.snapshot(reset);
+    }
+
+    KafkaApiStats apiStats() {
+        return apiStats;
+    }
+
+    public int getActiveConnectionCount() {
+        return activeConnections.size();
+    }
+
+    /** Total time broker->client traffic has been blocked (either mode), including a block in progress. */
+    public synchronized long getBlockedNanos() {
+        return blockUpstream.get() ? blockedNanos + (System.nanoTime() - blockedSince) : blockedNanos;
+    }
+
+    /** Bytes written to the broker over all connections, open and closed. */
+    public long getBytesToBroker() {
+        long sum = closedBytesToBroker.sum();
+        for (ProxyConnection connection : activeConnections) {
+            sum += connection.bytesToBroker();
+        }
+        return sum;
+    }
+
+    /** Bytes written to clients over all connections, open and closed. */
+    public long getBytesToClient() {
+        long sum = closedBytesToClient.sum();
+        for (ProxyConnection connection : activeConnections) {
+            sum += connection.bytesToClient();
+        }
+        return sum;
+    }
+
+    /** Frames discarded in {@link BlockMode#DROP_FRAMES} or by a {@link LinkFaults#dropRate()}. */
+    public long getDroppedFrames() {
+        long sum = closedDroppedFrames.sum();
+        for (ProxyConnection connection : activeConnections) {
+            sum += connection.droppedFrames();
+        }
+        return sum;
+    }
+
+    /** Client connections opened since start; its rate shows clients reconnecting. */
+    public long getOpenedConnections() {
+        return openedConnections.sum();
+    }
+
+    Set<ProxyConnection> connections() {
+        return activeConnections;
+    }
+
+    void setConnectionListener(ConnectionListener listener) {
+        this.connectionListener = listener;
+    }
+
+    /** Rewrite broker addresses in responses; applies to connections accepted after the call. */
+    void setAddressMapper(AddressMapper mapper) {
+        this.addressMapper = mapper;
+    }
+
+    AddressMapper addressMapper() {
+        return addressMapper;
+    }
+
+    /** Record unanswered Produce requests; applies to connections accepted after the call. */
+    void setUnansweredLog(UnansweredProduceLog log) {
+        this.unansweredLog = log;
+    }
+
+    UnansweredProduceLog unansweredLog() {
+        return unansweredLog;
+    }
+
+    long nextConnectionId() {
+        return connectionIds.incrementAndGet();
+    }
+
+    /** Close the listening socket; open connections keep running. */
+    public void stopAccepting() {
+        try { serverChannel.close(); } catch (Exception ignored) {}
+    }
+
+    /**
+     * Connections that still have requests awaiting a response or bytes to forward. Each one is
+     * checked on its own loop; connections whose loop does not answer in time count as busy.
+     */
+    public int busyConnections(long timeoutMillis) throws InterruptedException {
+        List<ProxyConnection> connections = List.copyOf(activeConnections);
+        AtomicInteger busy = new AtomicInteger();
+        CountDownLatch checked = new CountDownLatch(connections.size());
+        for (ProxyConnection connection : connections) {
+            connection.loop().execute(() -> {
+                if (!connection.isIdle()) {
+                    busy.incrementAndGet();
+                }
+                checked.countDown();
+            });
+        }
+        if (!checked.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            return connections.size();
+        }
+        return busy.get();
+    }
+
     public void stop() {
-        try { serverSocket.close(); } catch (Exception ignored) {}
-        try { pool.shutdownNow(); } catch (Exception ignored) {}
-        for (Socket s : activeClientSockets) {
-            try { s.close(); } catch (Exception ignored) {}
+        synchronized (this) {
+            if (blockScript != null) {
+                blockScript.cancel();
+                blockScript = null;
+            }
+        }
+        try { serverChannel.close(); } catch (Exception ignored) {}
+        if (loops != null && ownsLoops) {
+            for (ProxyEventLoop loop : loops) {
+                loop.shutdown(1000);
+            }
+            activeConnections.clear();
+        } else {
+            // shared loops keep running; close just this proxy's connections on them
+            for (ProxyConnection connection : activeConnections) {
+                connection.loop().execute(connection::close);
+            }
         }
-        activeClientSockets.clear();
     }
 
-    private void closeQuietly(Socket s) {
-        try { if (s != null && !s.isClosed()) s.close(); } catch (Exception ignore) {}
+    void connectionOpened(ProxyConnection connection) {
+        openedConnections.increment();
+        ConnectionListener listener = connectionListener;
+        if (listener != null) {
+            listener.opened(connection);
+        }
+    }
+
+    void connectionClosed(ProxyConnection connection) {
+        if (!activeConnections.remove(connection)) {
+            return;
+        }
+        closedBytesToBroker.add(connection.bytesToBroker());
+        closedBytesToClient.add(connection.bytesToClient());
+        closedDroppedFrames.add(connection.droppedFrames());
+        if (faults != ProxyFaults.NONE) {
+            synchronized (this) {
+                faults = faults.withoutConnection(connection.id());
+            }
+        }
+        ConnectionListener listener = connectionListener;
+        if (listener != null) {
+            listener.closed(connection);
+        }
+    }
+
+    /**
+     * Drives a {@link BlockSchedule} from timers on one loop. Blocking, unblocking and cancelling
+     * check and change state under the proxy's lock, so a cancel cannot slip in between.
+     */
+    private final class BlockScript {
+        final BlockSchedule schedule;
+        final ProxyEventLoop loop;
+        boolean cancelled;     // guarded by TcpProxy.this
+        boolean ownsBlock;     // guarded by TcpProxy.this; the current block is this script's
+        long nextStart;
+
+        BlockScript(BlockSchedule schedule, ProxyEventLoop loop) {
+            this.schedule = schedule;
+            this.loop = loop;
+        }
+
+        void begin() {
+            loop.execute(() -> {
+                nextStart = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(schedule.initialDelayMs());
+                loop.schedule(nextStart - System.nanoTime(), this::block);
+            });
+        }
+
+        void block() {
+            synchronized (TcpProxy.this) {
+                if (cancelled) {
+                    return;
+                }
+                // a block set by hand is left as it is, and is not ended by this script
+                if (!blockUpstream.get()) {
+                    applyBlock(true, schedule.mode());
+                    ownsBlock = true;
+                }
+            }
+            refreshConnections();
+            loop.schedule(TimeUnit.MILLISECONDS.toNanos(schedule.forMs()), this::unblock);
+        }
+
+        void unblock() {
+            synchronized (TcpProxy.this) {
+                if (cancelled) {
+                    return;
+                }
+                if (ownsBlock) {
+                    ownsBlock = false;
+                    applyBlock(false, blockMode);
+                }
+            }
+            refreshConnections();
+            if (schedule.everyMs() > 0) {
+                // periods are measured from the first start, so they do not drift
+                nextStart += TimeUnit.MILLISECONDS.toNanos(schedule.everyMs());
+                loop.schedule(nextStart - System.nanoTime(), this::block);
+            }
+        }
+
+        /** Caller holds the lock. */
+        void cancel() {
+            cancelled = true;
+            if (ownsBlock) {
+                ownsBlock = false;
+                applyBlock(false, blockMode);
+                refreshConnections();
+            }
+        }
+    }
+
+    private final class Acceptor implements ProxyEventLoop.Handler {
+        private final InetSocketAddress upstream;
+
+        Acceptor(InetSocketAddress upstream) {
+            this.upstream = upstream;
+        }
+
+        @Override
+        public void onReady(SelectionKey key) throws IOException {
+            SocketChannel client;
+            while ((client = serverChannel.accept()) != null) {
+                ProxyEventLoop loop = loops[Math.floorMod(nextLoop++, loops.length)]; // the counter wraps after 2^31 accepts
+                ProxyConnection connection;
+                try {
+                    connection = new ProxyConnection(TcpProxy.this, loop, client);
+                } catch (IOException e) {
+                    // could not open the upstream channel; drop this client but keep accepting
+                    try { client.close(); } catch (IOException ignored) {}
+                    continue;
+                }
+                activeConnections.add(connection);
+                if (loop.inLoop()) {
+                    connection.open(upstream);
+                } else {
+                    loop.execute(() -> connection.open(upstream));
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            try { serverChannel.close(); } catch (IOException ignored) {}
+        }
     }
 }
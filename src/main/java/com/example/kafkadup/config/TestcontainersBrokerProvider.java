@@ -0,0 +1,38 @@
+package com.example.kafkadup.config;
+
+import org.testcontainers.containers.KafkaContainer;
+import org.testcontainers.utility.DockerImageName;
+
+/**
+ * A Kafka container started through Testcontainers. Needs a container runtime.
+ */
+public class TestcontainersBrokerProvider implements BrokerProvider {
+
+    private final String image;
+    private KafkaContainer kafka;
+
+    public TestcontainersBrokerProvider(String image) {
+        this.image = image;
+    }
+
+    @Override
+    public String start() {
+        kafka = new KafkaContainer(DockerImageName.parse(image));
+        kafka.start();
+        // e.g. "PLAINTEXT://localhost:58258"
+        String bootstrap = kafka.getBootstrapServers();
+        return bootstrap.contains("://") ? bootstrap.substring(bootstrap.indexOf("://") + 3) : bootstrap;
+    }
+
+    @Override
+    public String description() {
+        return "Testcontainers " + image;
+    }
+
+    @Override
+    public void close() {
+        if (kafka != null) {
+            kafka.stop();
+        }
+    }
+}
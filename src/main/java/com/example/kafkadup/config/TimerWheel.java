@@ -0,0 +1,162 @@
+package com.example.kafkadup.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashed timer wheel for one {@link ProxyEventLoop}: timers live in intrusive linked lists, one per
+ * slot, so scheduling and cancelling are O(1) and thousands of pending timers cost no threads.
+ * Deadlines are rounded up to the tick, which is fine for network impairments measured in
+ * milliseconds. Not thread-safe; used from the loop thread only.
+ */
+final class TimerWheel {
+    private static final Logger log = LoggerFactory.getLogger(TimerWheel.class);
+
+    /** A scheduled task. {@link #cancel()} is O(1). */
+    static final class Timeout {
+        private final TimerWheel wheel;
+        private final Runnable task;
+        private final long deadlineTick;
+        private Timeout prev;
+        private Timeout next;
+        private boolean linked;
+
+        private Timeout(TimerWheel wheel, Runnable task, long deadlineTick) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /** @return false if the task already ran or was cancelled */
+        boolean cancel() {
+            if (!linked) {
+                return false;
+            }
+            wheel.unlink(this);
+            return true;
+        }
+    }
+
+    private final long tickNanos;
+    private final long origin;
+    private final Timeout[] slots;
+    private final int mask;
+    private final List<Timeout> due = new ArrayList<>();
+    private long currentTick;                  // next tick to process
+    private long nextTick = Long.MAX_VALUE;    // no timer is due before this tick
+    private int size;
+
+    TimerWheel(long tickNanos, int slotCount, long now) {
+        if (Integer.bitCount(slotCount) != 1) {
+            throw new IllegalArgumentException("slotCount must be a power of two");
+        }
+        this.tickNanos = tickNanos;
+        this.origin = now;
+        this.slots = new Timeout[slotCount];
+        this.mask = slotCount - 1;
+    }
+
+    Timeout schedule(long delayNanos, Runnable task, long now) {
+        long tick = Math.max(currentTick, ceilDiv(now - origin + Math.max(0, delayNanos), tickNanos));
+        Timeout t = new Timeout(this, task, tick);
+        int slot = (int) (tick & mask);
+        t.next = slots[slot];
+        if (t.next != null) {
+            t.next.prev = t;
+        }
+        slots[slot] = t;
+        t.linked = true;
+        size++;
+        nextTick = Math.min(nextTick, tick);
+        return t;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Nanos until the earliest timer may be due: 0 if overdue, -1 if there are no timers. */
+    long nanosToNext(long now) {
+        if (size == 0) {
+            return -1;
+        }
+        return Math.max(0, origin + nextTick * tickNanos - now);
+    }
+
+    /** Run every timer whose tick has passed. Tasks may schedule new timers. */
+    void expire(long now) {
+        long nowTick = (now - origin) / tickNanos;
+        while (size > 0 && nextTick <= nowTick) {
+            // ticks without timers are skipped rather than stepped through
+            long tick = Math.max(currentTick, nextTick);
+            collectDue(tick);
+            // advance first, so timers scheduled by the tasks below land on a later tick
+            currentTick = tick + 1;
+            runDue();
+            nextTick = findNextTick();
+        }
+        // every remaining timer is due after nowTick
+        currentTick = Math.max(currentTick, nowTick + 1);
+    }
+
+    private void collectDue(long tick) {
+        int slot = (int) (tick & mask);
+        for (Timeout t = slots[slot]; t != null; ) {
+            Timeout next = t.next;
+            if (t.deadlineTick <= tick) {
+                unlink(t);
+                due.add(t);
+            }
+            t = next;
+        }
+    }
+
+    private void runDue() {
+        for (int i = 0; i < due.size(); i++) {
+            try {
+                due.get(i).task.run();
+            } catch (RuntimeException e) {
+                log.warn("Proxy timer task failed", e);
+            }
+        }
+        due.clear();
+    }
+
+    private long findNextTick() {
+        if (size == 0) {
+            return Long.MAX_VALUE;
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < slots.length; i++) {
+            for (Timeout t = slots[(int) ((currentTick + i) & mask)]; t != null; t = t.next) {
+                best = Math.min(best, t.deadlineTick);
+            }
+            if (best <= currentTick + i) {
+                break; // nothing in later slots of this revolution can be earlier
+            }
+        }
+        return best;
+    }
+
+    private void unlink(Timeout t) {
+        if (t.prev != null) {
+            t.prev.next = t.next;
+        } else {
+            slots[(int) (t.deadlineTick & mask)] = t.next;
+        }
+        if (t.next != null) {
+            t.next.prev = t.prev;
+        }
+        t.prev = null;
+        t.next = null;
+        t.linked = false;
+        size--;
+    }
+
+    private static long ceilDiv(long a, long b) {
+        return -Math.floorDiv(-a, b);
+    }
+}
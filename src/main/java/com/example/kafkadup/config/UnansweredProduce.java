@@ -0,0 +1,30 @@
+package com.example.kafkadup.config;
+
+/**
+ * A Produce request the client never got a response to, as seen by a proxy. If the broker had
+ * written its batches, a producer retry writes them again. Times are {@link System#nanoTime()}.
+ *
+ * @param nodeId     broker node id, -1 if not known yet
+ * @param broker     the broker's real {@code host:port}
+ * @param connection proxy connection id (see {@code GET /proxy/connections})
+ * @param sentNanos  when the request went through the proxy (or was dropped by it)
+ * @param lostNanos  when the proxy gave up on the response
+ */
+public record UnansweredProduce(
+        int nodeId,
+        String broker,
+        long connection,
+        int correlationId,
+        long sentNanos,
+        long lostNanos,
+        Reason reason) {
+
+    public enum Reason {
+        /** The connection closed with the request in flight (e.g. the producer timed it out). */
+        CLOSED,
+        /** The proxy dropped the request frame or the response frame. */
+        DROPPED,
+        /** A response to a later request came first; normal for produce with acks=0. */
+        SKIPPED
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.kafkadup.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.kafka.common.protocol.ApiKeys;
+
+/**
+ * The last {@code capacity} unanswered Produce requests of all proxies, oldest first. Requests
+ * only go unanswered when something is wrong, so a lock is cheap enough.
+ */
+class UnansweredProduceLog {
+    private final UnansweredProduce[] ring;
+    private long written;
+
+    UnansweredProduceLog(int capacity) {
+        this.ring = new UnansweredProduce[Math.max(1, capacity)];
+    }
+
+    /** Hook for a connection's {@link KafkaProtocolDecoder}; other APIs are ignored. */
+    KafkaProtocolDecoder.UnansweredListener listener(String broker, long connection) {
+        return (apiKey, correlationId, sentNanos, reason) -> {
+            if (apiKey == ApiKeys.PRODUCE.id) {
+                add(new UnansweredProduce(-1, broker, connection, correlationId, sentNanos, System.nanoTime(), reason));
+            }
+        };
+    }
+
+    synchronized void add(UnansweredProduce request) {
+        ring[(int) (written++ % ring.length)] = request;
+    }
+
+    synchronized List<UnansweredProduce> snapshot() {
+        int n = (int) Math.min(written, ring.length);
+        List<UnansweredProduce> list = new ArrayList<>(n);
+        for (long i = written - n; i < written; i++) {
+            list.add(ring[(int) (i % ring.length)]);
+        }
+        return list;
+    }
+}
@@ -1,61 +1,526 @@
 package com.example.kafkadup.controller;
 
+import com.example.kafkadup.config.BlockSchedule;
+import com.example.kafkadup.config.KafkaApiLatency;
+import com.example.kafkadup.config.LinkFaults;
+import com.example.kafkadup.config.ProducerProfile;
+import com.example.kafkadup.config.ProducerTuning;
+import com.example.kafkadup.config.ProxyBrokerInfo;
+import com.example.kafkadup.config.ProxyConnectionInfo;
+import com.example.kafkadup.config.ProxyRegistry;
 import com.example.kafkadup.config.TcpProxy;
+import com.example.kafkadup.config.UnansweredProduce;
+import com.example.kafkadup.serde.OrderEvent;
+import com.example.kafkadup.service.BatchSendRequest;
+import com.example.kafkadup.service.BatchSendResult;
+import com.example.kafkadup.service.DuplicateDetector;
+import com.example.kafkadup.service.DuplicateSummary;
+import com.example.kafkadup.service.EndToEndLatencySummary;
+import com.example.kafkadup.service.EndToEndLatencyTracker;
+import com.example.kafkadup.service.LoadGenerator;
+import com.example.kafkadup.service.LoadRunRequest;
 import com.example.kafkadup.service.ProducerService;
+import com.example.kafkadup.service.ProducerTuningService;
+import com.example.kafkadup.service.ProfileComparisonRequest;
+import com.example.kafkadup.service.ProfileComparisonService;
+import com.example.kafkadup.service.RetryCorrelationService;
+import com.example.kafkadup.service.RetryCorrelationSummary;
+import com.example.kafkadup.service.SendJournal;
+import com.example.kafkadup.service.SendJournalReader;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @RestController
 @RequestMapping("/")
 public class TestController {
 
     private final ProducerService producer;
-    private final TcpProxy tcpProxy;
+    private final ProxyRegistry proxies;
+    private final DuplicateDetector duplicateDetector;
+    private final ProfileComparisonService comparison;
+    private final EndToEndLatencyTracker latency;
+    private final LoadGenerator loadGenerator;
+    private final ProducerTuningService tuning;
+    private final RetryCorrelationService retries;
+    private final SendJournal journal;
 
-    public TestController(ProducerService producer, TcpProxy tcpProxy) {
+    public TestController(ProducerService producer, ProxyRegistry proxies, DuplicateDetector duplicateDetector,
+                          ProfileComparisonService comparison, EndToEndLatencyTracker latency,
+                          LoadGenerator loadGenerator, ProducerTuningService tuning,
+                          RetryCorrelationService retries, SendJournal journal) {
         this.producer = producer;
-        this.tcpProxy = tcpProxy;
+        this.proxies = proxies;
+        this.duplicateDetector = duplicateDetector;
+        this.comparison = comparison;
+        this.latency = latency;
+        this.loadGenerator = loadGenerator;
+        this.tuning = tuning;
+        this.retries = retries;
+        this.journal = journal;
     }
 
     /**
      * Send a message with optional key param.
      * POST /send?key=order-123
+     * POST /send?key=order-123&await=true   (respond once the broker acked, with partition and offset)
+     * With spring.threads.virtual.enabled=true each waiting request only parks a virtual thread.
      */
     @PostMapping("/send")
-    public ResponseEntity<Map<String, String>> send(@RequestParam(value = "key", required = false) String key) {
-        String actualKey = producer.sendOneWithKey(key);
-        return ResponseEntity.ok(Map.of("key", actualKey));
+    public ResponseEntity<?> send(@RequestParam(value = "key", required = false) String key,
+                                  @RequestParam(value = "await", defaultValue = "false") boolean await)
+            throws InterruptedException {
+        if (!await) {
+            String actualKey = producer.sendOneWithKey(key);
+            return ResponseEntity.ok(Map.of("key", actualKey));
+        }
+        long start = System.nanoTime();
+        try {
+            SendResult<String, OrderEvent> result = producer.sendOneAndWait(key);
+            RecordMetadata metadata = result.getRecordMetadata();
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("key", result.getProducerRecord().key());
+            body.put("partition", metadata.partition());
+            body.put("offset", metadata.offset());
+            body.put("ackMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return ResponseEntity.ok(body);
+        } catch (ExecutionException e) {
+            Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+            return ResponseEntity.status(502).body(Map.of("error", String.valueOf(cause.getMessage())));
+        } catch (TimeoutException e) {
+            return ResponseEntity.status(504).body(Map.of("error", "no ack or failure from the producer in time"));
+        }
     }
 
     /**
-     * Block upstream (broker -> producer) so ACKs are dropped.
-     * POST /proxy/block
+     * Send many records from a worker thread and report throughput and ack latency.
+     * POST /send/batch?count=100000&payloadSize=512&rate=0&lingerMs=5&batchSize=262144
+     * keyPattern may use {run} and {seq}, e.g. keyPattern=load-{run}-{seq}
+     */
+    @PostMapping("/send/batch")
+    public ResponseEntity<?> sendBatch(@RequestParam(value = "count", defaultValue = "1000") int count,
+                                       @RequestParam(value = "keyPattern", required = false) String keyPattern,
+                                       @RequestParam(value = "payloadSize", defaultValue = "0") int payloadSize,
+                                       @RequestParam(value = "rate", defaultValue = "0") int rate,
+                                       @RequestParam(value = "lingerMs", required = false) Integer lingerMs,
+                                       @RequestParam(value = "batchSize", required = false) Integer batchSize) throws Exception {
+        BatchSendRequest request;
+        try {
+            request = new BatchSendRequest(count, keyPattern, payloadSize, rate, lingerMs, batchSize);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        BatchSendResult result = producer.sendBatch(request);
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Run the ACK-loss scenario once per producer profile and compare throughput, ack latency and duplicates.
+     * POST /producer/compare?count=20000&rate=2000&blockAfterMs=2000&blockMs=5000&mode=pause
+     *      &profiles=non-idempotent,idempotent,transactional
+     */
+    @PostMapping("/producer/compare")
+    public ResponseEntity<?> compareProfiles(@RequestParam(value = "count", defaultValue = "20000") int count,
+                                             @RequestParam(value = "payloadSize", defaultValue = "0") int payloadSize,
+                                             @RequestParam(value = "rate", defaultValue = "2000") int rate,
+                                             @RequestParam(value = "blockAfterMs", defaultValue = "2000") long blockAfterMs,
+                                             @RequestParam(value = "blockMs", defaultValue = "5000") long blockMs,
+                                             @RequestParam(value = "mode", defaultValue = "pause") String mode,
+                                             @RequestParam(value = "profiles", required = false) List<String> profiles) throws Exception {
+        TcpProxy.BlockMode blockMode = parseBlockMode(mode);
+        if (blockMode == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "unknown mode: " + mode + " (expected pause or drop)"));
+        }
+        ProfileComparisonRequest request;
+        try {
+            List<ProducerProfile> selected = new ArrayList<>();
+            if (profiles != null) {
+                for (String p : profiles) {
+                    selected.add(ProducerProfile.parse(p));
+                }
+            }
+            request = new ProfileComparisonRequest(count, payloadSize, rate, blockAfterMs, blockMs, blockMode, selected);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        try {
+            return ResponseEntity.ok(comparison.compare(request));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(409).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * The application producer's compression/batching tuning and the sweep matrix.
+     * GET /producer/tuning
+     */
+    @GetMapping("/producer/tuning")
+    public ResponseEntity<Map<String, Object>> producerTuning() {
+        ProducerTuning active = tuning.active();
+        List<String> matrix = new ArrayList<>();
+        for (ProducerTuning t : tuning.matrix()) {
+            matrix.add(t.name());
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("active", (active != null) ? active.name() : "default");
+        body.put("bufferMemory", (active != null) ? active.bufferMemory() : null);
+        body.put("matrix", matrix);
+        return ResponseEntity.ok(body);
+    }
+
+    /**
+     * Switch the application producer to another tuning; it is rebuilt once in-flight sends complete.
+     * POST /producer/tuning?name=lz4-5ms-256k
+     * POST /producer/tuning?name=default   (Kafka's defaults)
+     */
+    @PostMapping("/producer/tuning")
+    public ResponseEntity<?> setProducerTuning(@RequestParam("name") String name) {
+        try {
+            tuning.activate("default".equalsIgnoreCase(name) ? null : tuning.parse(name));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        return producerTuning();
+    }
+
+    /**
+     * Run the same batch once per tuning and compare throughput, bytes on the wire and ack latency.
+     * POST /producer/tuning/sweep?count=20000&payloadSize=512&rate=0&tunings=none-0ms-16k,lz4-5ms-256k
+     * Without tunings the whole matrix (app.producer.tuning) is swept.
+     */
+    @PostMapping("/producer/tuning/sweep")
+    public ResponseEntity<?> sweepProducerTuning(@RequestParam(value = "count", defaultValue = "20000") int count,
+                                                 @RequestParam(value = "payloadSize", defaultValue = "512") int payloadSize,
+                                                 @RequestParam(value = "rate", defaultValue = "0") int rate,
+                                                 @RequestParam(value = "tunings", required = false) List<String> names)
+            throws Exception {
+        List<ProducerTuning> selected = new ArrayList<>();
+        try {
+            // fail before the first run rather than in the middle of the sweep
+            new BatchSendRequest(count, null, payloadSize, rate, null, null);
+            if (names != null) {
+                for (String n : names) {
+                    selected.add(tuning.parse(n));
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        try {
+            return ResponseEntity.ok(tuning.sweep(selected, count, payloadSize, rate));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(409).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Open-model load ramp: send at a fixed rate per step, raising it until the producer cannot keep up.
+     * Latency is measured from each record's scheduled send time (coordinated-omission corrected).
+     * POST /load?startRate=1000&stepRate=1000&maxRate=20000&stepMs=10000&payloadSize=0&maxP99Ms=100
+     *      &profile=idempotent
+     * Optional proxy faults for the duration of the run (cleared afterwards):
+     *      &direction=to-client&latencyMs=20&jitterMs=10&bandwidth=0&dropRate=0
+     */
+    @PostMapping("/load")
+    public ResponseEntity<?> load(@RequestParam(value = "startRate", defaultValue = "1000") int startRate,
+                                  @RequestParam(value = "stepRate", defaultValue = "1000") int stepRate,
+                                  @RequestParam(value = "maxRate", defaultValue = "20000") int maxRate,
+                                  @RequestParam(value = "stepMs", defaultValue = "10000") long stepMs,
+                                  @RequestParam(value = "payloadSize", defaultValue = "0") int payloadSize,
+                                  @RequestParam(value = "maxP99Ms", defaultValue = "0") long maxP99Ms,
+                                  @RequestParam(value = "profile", required = false) String profile,
+                                  @RequestParam(value = "direction", defaultValue = "both") String direction,
+                                  @RequestParam(value = "latencyMs", defaultValue = "0") long latencyMs,
+                                  @RequestParam(value = "jitterMs", defaultValue = "0") long jitterMs,
+                                  @RequestParam(value = "bandwidth", defaultValue = "0") long bytesPerSecond,
+                                  @RequestParam(value = "dropRate", defaultValue = "0") double dropRate) throws Exception {
+        List<TcpProxy.Direction> directions = TcpProxy.Direction.parse(direction);
+        if (directions == null) {
+            return ResponseEntity.badRequest().body(Map.of("error",
+                    "unknown direction: " + direction + " (expected to-broker, to-client or both)"));
+        }
+        LoadRunRequest request;
+        try {
+            LinkFaults faults = new LinkFaults(latencyMs, jitterMs, bytesPerSecond, 0, dropRate);
+            request = new LoadRunRequest(startRate, stepRate, maxRate, stepMs, payloadSize, maxP99Ms,
+                    (profile != null) ? ProducerProfile.parse(profile) : null,
+                    faults.equals(LinkFaults.NONE) ? null : faults, directions);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        try {
+            return ResponseEntity.ok(loadGenerator.run(request));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(409).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Block upstream (broker -> producer) so ACKs are not delivered, for every broker or one.
+     * POST /proxy/block             (pause: stop reading from the broker, nothing is lost)
+     * POST /proxy/block?mode=drop   (drop whole response frames while blocked)
+     * POST /proxy/block?broker=1    (only broker 1: node id or host:port, see GET /proxy/brokers)
      */
     @PostMapping("/proxy/block")
-    public ResponseEntity<String> blockProxy() {
-        tcpProxy.setBlockUpstream(true);
+    public ResponseEntity<String> blockProxy(@RequestParam(value = "mode", defaultValue = "pause") String mode,
+                                             @RequestParam(value = "broker", required = false) String broker) {
+        TcpProxy.BlockMode blockMode = parseBlockMode(mode);
+        if (blockMode == null) {
+            return ResponseEntity.badRequest().body("unknown mode: " + mode + " (expected pause or drop)");
+        }
+        try {
+            proxies.setBlockUpstream(broker, true, blockMode);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
         return ResponseEntity.ok("blocked");
     }
 
     /**
-     * Unblock upstream
+     * Unblock upstream, for every broker or one
      * POST /proxy/unblock
+     * POST /proxy/unblock?broker=1
      */
     @PostMapping("/proxy/unblock")
-    public ResponseEntity<String> unblockProxy() {
-        tcpProxy.setBlockUpstream(false);
+    public ResponseEntity<String> unblockProxy(@RequestParam(value = "broker", required = false) String broker) {
+        try {
+            proxies.setBlockUpstream(broker, false);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
         return ResponseEntity.ok("unblocked");
     }
 
+    /**
+     * Brokers with their node ids, proxy ports and block state.
+     * GET /proxy/brokers
+     */
+    @GetMapping("/proxy/brokers")
+    public ResponseEntity<List<ProxyBrokerInfo>> proxyBrokers() {
+        return ResponseEntity.ok(proxies.getBrokers());
+    }
+
+    /**
+     * Open proxy connections; the ids are what per-connection faults refer to.
+     * GET /proxy/connections
+     */
+    @GetMapping("/proxy/connections")
+    public ResponseEntity<List<ProxyConnectionInfo>> proxyConnections() {
+        return ResponseEntity.ok(proxies.getConnections());
+    }
+
+    /**
+     * Current fault settings and block schedules, per broker.
+     * GET /proxy/faults
+     */
+    @GetMapping("/proxy/faults")
+    public ResponseEntity<Map<String, Object>> proxyFaults() {
+        Map<String, Object> body = new HashMap<>();
+        body.put("faults", proxies.getFaults());
+        body.put("blockSchedules", proxies.getBlockSchedules());
+        return ResponseEntity.ok(body);
+    }
+
+    /**
+     * Impair one direction (to-broker, to-client or both), for all connections or one, of every broker or one.
+     * Replaces earlier settings of the same scope; omitted parameters mean "no impairment".
+     * POST /proxy/faults?direction=to-client&latencyMs=50&jitterMs=20&bandwidth=1048576&dropRate=0.01
+     * POST /proxy/faults?direction=both&connection=7&latencyMs=200
+     * POST /proxy/faults?direction=to-client&broker=2&latencyMs=100
+     */
+    @PostMapping("/proxy/faults")
+    public ResponseEntity<?> setProxyFaults(@RequestParam(value = "direction", defaultValue = "both") String direction,
+                                            @RequestParam(value = "broker", required = false) String broker,
+                                            @RequestParam(value = "connection", required = false) Long connection,
+                                            @RequestParam(value = "latencyMs", defaultValue = "0") long latencyMs,
+                                            @RequestParam(value = "jitterMs", defaultValue = "0") long jitterMs,
+                                            @RequestParam(value = "bandwidth", defaultValue = "0") long bytesPerSecond,
+                                            @RequestParam(value = "burst", defaultValue = "0") long burstBytes,
+                                            @RequestParam(value = "dropRate", defaultValue = "0") double dropRate) {
+        List<TcpProxy.Direction> directions = TcpProxy.Direction.parse(direction);
+        if (directions == null) {
+            return ResponseEntity.badRequest().body(Map.of("error",
+                    "unknown direction: " + direction + " (expected to-broker, to-client or both)"));
+        }
+        LinkFaults faults;
+        try {
+            faults = new LinkFaults(latencyMs, jitterMs, bytesPerSecond, burstBytes, dropRate);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        try {
+            for (TcpProxy.Direction d : directions) {
+                proxies.setFaults(broker, d, connection, faults);
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        return ResponseEntity.ok(proxies.getFaults());
+    }
+
+    /**
+     * Remove every latency/bandwidth/drop fault (the block schedule is separate).
+     * DELETE /proxy/faults
+     */
+    @DeleteMapping("/proxy/faults")
+    public ResponseEntity<String> clearProxyFaults() {
+        proxies.clearFaults();
+        return ResponseEntity.ok("cleared");
+    }
+
+    /**
+     * Block ACKs on a schedule, e.g. for 3 s every 20 s, of every broker or one. Replaces the current schedule.
+     * POST /proxy/faults/block-schedule?everyMs=20000&forMs=3000&initialDelayMs=0&mode=pause&broker=1
+     */
+    @PostMapping("/proxy/faults/block-schedule")
+    public ResponseEntity<?> setBlockSchedule(@RequestParam(value = "broker", required = false) String broker,
+                                              @RequestParam(value = "everyMs", defaultValue = "0") long everyMs,
+                                              @RequestParam(value = "forMs") long forMs,
+                                              @RequestParam(value = "initialDelayMs", defaultValue = "0") long initialDelayMs,
+                                              @RequestParam(value = "mode", defaultValue = "pause") String mode) {
+        TcpProxy.BlockMode blockMode = parseBlockMode(mode);
+        if (blockMode == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "unknown mode: " + mode + " (expected pause or drop)"));
+        }
+        BlockSchedule schedule;
+        try {
+            schedule = new BlockSchedule(initialDelayMs, everyMs, forMs, blockMode);
+            proxies.setBlockSchedule(broker, schedule);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        return ResponseEntity.ok(schedule);
+    }
+
+    /**
+     * Stop the block schedule of every broker or one (unblocks if it is in a block).
+     * DELETE /proxy/faults/block-schedule
+     * DELETE /proxy/faults/block-schedule?broker=1
+     */
+    @DeleteMapping("/proxy/faults/block-schedule")
+    public ResponseEntity<String> cancelBlockSchedule(@RequestParam(value = "broker", required = false) String broker) {
+        try {
+            proxies.setBlockSchedule(broker, null);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        return ResponseEntity.ok("cancelled");
+    }
+
+    /**
+     * Per-API request/response latency measured by the proxies, over all brokers (microseconds).
+     * GET /proxy/latency?reset=true clears the histograms after reading them.
+     */
+    @GetMapping("/proxy/latency")
+    public ResponseEntity<List<KafkaApiLatency>> proxyLatency(
+            @RequestParam(value = "reset", defaultValue = "false") boolean reset) {
+        return ResponseEntity.ok(proxies.getApiLatencies(reset));
+    }
+
+    /**
+     * Produce requests that got no response through the proxies (most recent ones, oldest first).
+     * GET /proxy/unanswered
+     */
+    @GetMapping("/proxy/unanswered")
+    public ResponseEntity<List<UnansweredProduce>> proxyUnanswered() {
+        return ResponseEntity.ok(proxies.getUnansweredProduce());
+    }
+
+    /**
+     * Produce->consume and ack->consume latency of consumed records (microseconds).
+     * GET /latency?reset=true clears the histograms after reading them.
+     */
+    @GetMapping("/latency")
+    public ResponseEntity<EndToEndLatencySummary> latency(
+            @RequestParam(value = "reset", defaultValue = "false") boolean reset) {
+        return ResponseEntity.ok(latency.snapshot(reset));
+    }
+
+    /**
+     * The same latencies as an HdrHistogram interval log (nanoseconds), e.g. for HistogramLogProcessor.
+     * GET /latency/hlog
+     */
+    @GetMapping(value = "/latency/hlog", produces = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<String> latencyLog() {
+        return ResponseEntity.ok(latency.intervalLog());
+    }
+
+    /**
+     * Duplicate keys found by the consumer so far, with the partition/offset of each copy.
+     * GET /duplicates?limit=100
+     */
+    @GetMapping("/duplicates")
+    public ResponseEntity<DuplicateSummary> duplicates(@RequestParam(value = "limit", defaultValue = "100") int limit) {
+        return ResponseEntity.ok(duplicateDetector.summary(Math.max(0, limit)));
+    }
+
+    /**
+     * Duplicate keys joined with their sends: acked and retried writes, and the unanswered Produce
+     * requests that may have written the retried ones.
+     * GET /duplicates/retries?limit=100
+     */
+    @GetMapping("/duplicates/retries")
+    public ResponseEntity<RetryCorrelationSummary> duplicateRetries(
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        return ResponseEntity.ok(retries.correlate(Math.max(0, limit)));
+    }
+
+    /**
+     * Summary of the send journal: outcomes, send->ack latency and keys sent or acked twice.
+     * GET /journal   (needs app.journal.enabled=true)
+     */
+    @GetMapping("/journal")
+    public ResponseEntity<?> journal() throws IOException {
+        if (!journal.isEnabled()) {
+            return ResponseEntity.status(404).body(Map.of("error", "journal disabled (app.journal.enabled=false)"));
+        }
+        return ResponseEntity.ok(SendJournalReader.read(journal.directory()));
+    }
+
+    /**
+     * Sends are rejected once shutdown has begun (see GracefulShutdown).
+     */
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<Map<String, String>> sendsRejected(RejectedExecutionException e) {
+        return ResponseEntity.status(503).body(Map.of("error", String.valueOf(e.getMessage())));
+    }
+
     /**
      * Status
      */
     @GetMapping("/status")
     public ResponseEntity<Map<String, Object>> status() {
+        List<String> blockedBrokers = new ArrayList<>();
+        for (ProxyBrokerInfo b : proxies.getBrokers()) {
+            if (b.blocked()) {
+                blockedBrokers.add(b.broker());
+            }
+        }
         return ResponseEntity.ok(Map.of(
-                "proxyBlocked", tcpProxy.isBlockUpstream()
+                "proxyBlocked", !blockedBrokers.isEmpty(),
+                "proxyBlockMode", proxies.proxies().get(0).getBlockMode().name(),
+                "blockedBrokers", blockedBrokers
         ));
     }
+
+    private static TcpProxy.BlockMode parseBlockMode(String mode) {
+        return switch (mode.toLowerCase()) {
+            case "pause" -> TcpProxy.BlockMode.PAUSE;
+            case "drop" -> TcpProxy.BlockMode.DROP_FRAMES;
+            default -> null;
+        };
+    }
 }
@@ -0,0 +1,72 @@
+package com.example.kafkadup.serde;
+
+/**
+ * ASCII encoding helpers used by the serializers. They write into the caller's array and
+ * allocate nothing themselves.
+ */
+final class Ascii {
+    private static final long[] POWERS_OF_TEN = new long[19];
+    // "00" "01" ... "99": two digits per division when writing numbers
+    private static final byte[] DIGIT_PAIRS = new byte[200];
+
+    static {
+        long p = 1;
+        for (int i = 0; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = p;
+            p *= 10;
+        }
+        for (int i = 0; i < 100; i++) {
+            DIGIT_PAIRS[2 * i] = (byte) ('0' + i / 10);
+            DIGIT_PAIRS[2 * i + 1] = (byte) ('0' + i % 10);
+        }
+    }
+
+    private Ascii() {
+    }
+
+    /**
+     * Copy {@code s} into {@code out} at {@code pos}.
+     *
+     * @return the position after the copied chars, or -1 if {@code s} is not pure ASCII
+     */
+    static int put(byte[] out, int pos, String s) {
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c > 0x7f) {
+                return -1;
+            }
+            out[pos++] = (byte) c;
+        }
+        return pos;
+    }
+
+    static int put(byte[] out, int pos, byte[] src) {
+        System.arraycopy(src, 0, out, pos, src.length);
+        return pos + src.length;
+    }
+
+    /** Number of chars {@link Long#toString(long)} would produce for a non-negative value. */
+    static int digits(long v) {
+        // floor(log10(v)) from the bit length (1233/4096 ~ log10(2)), corrected by one compare
+        int t = ((64 - Long.numberOfLeadingZeros(v | 1)) * 1233) >>> 12;
+        return (t < POWERS_OF_TEN.length && v >= POWERS_OF_TEN[t]) ? t + 1 : Math.max(1, t);
+    }
+
+    /** Write the decimal form of a non-negative {@code v} ending just before {@code end}. */
+    static int putDigits(byte[] out, int end, long v) {
+        int pos = end;
+        while (v >= 100) {
+            long q = v / 100;
+            int r = (int) (v - q * 100) * 2;
+            v = q;
+            out[--pos] = DIGIT_PAIRS[r + 1];
+            out[--pos] = DIGIT_PAIRS[r];
+        }
+        int r = (int) v * 2;
+        out[--pos] = DIGIT_PAIRS[r + 1];
+        if (v >= 10) {
+            out[--pos] = DIGIT_PAIRS[r];
+        }
+        return end;
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.kafkadup.serde;
+
+/**
+ * Per-thread cache of exact-length byte arrays for serializers.
+ * <p>
+ * Kafka's {@code Serializer} contract returns a {@code byte[]} whose length is the record size,
+ * but {@code KafkaProducer.send()} copies it into the record batch before returning. An array
+ * handed out here can therefore be reused by the next serialize call on the same thread.
+ * Each serializer must use its own pool, because key and value arrays are alive at the same time.
+ * <p>
+ * Only a few lengths are cached per thread, so the pool stays small even with many threads.
+ */
+final class ByteArrayPool {
+    private static final int SLOTS = 8;
+    static final int MAX_POOLED_LENGTH = 16 * 1024;
+
+    private static final class Slots {
+        final byte[][] arrays = new byte[SLOTS][];
+        int next;
+    }
+
+    private final ThreadLocal<Slots> slots = ThreadLocal.withInitial(Slots::new);
+
+    byte[] take(int length) {
+        if (length > MAX_POOLED_LENGTH) {
+            return new byte[length];
+        }
+        Slots s = slots.get();
+        byte[][] arrays = s.arrays;
+        for (byte[] a : arrays) {
+            if (a != null && a.length == length) {
+                return a;
+            }
+        }
+        byte[] a = new byte[length];
+        arrays[s.next] = a;
+        s.next = (s.next + 1) % SLOTS;
+        return a;
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.kafkadup.serde;
+
+/**
+ * Value sent to {@code order.created}. On the wire it is the ASCII text
+ * {@code order-id=<orderId>|ts=<timestampMillis>} (plus {@code |pad=xxx...} when {@code padTo}
+ * asks for a larger record), exactly what the console consumer in the README greps for.
+ *
+ * @param padTo minimum encoded size in bytes, 0 for no padding
+ */
+public record OrderEvent(String orderId, long timestampMillis, int padTo) {
+
+    public OrderEvent(String orderId, long timestampMillis) {
+        this(orderId, timestampMillis, 0);
+    }
+
+    /** The encoded form as a String; for logging and non-ASCII keys, not for the hot path. */
+    public String toPayload() {
+        String payload = "order-id=" + orderId + "|ts=" + timestampMillis;
+        if (payload.length() < padTo) {
+            payload = payload + "|pad=" + "x".repeat(Math.max(0, padTo - payload.length() - 5));
+        }
+        return payload;
+    }
+
+    @Override
+    public String toString() {
+        return toPayload();
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.kafkadup.serde;
+
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes {@link OrderEvent} as {@code order-id=<id>|ts=<millis>[|pad=x...]} straight into a
+ * pooled array, without building the intermediate String.
+ */
+public class OrderEventSerializer implements Serializer<OrderEvent> {
+    private static final byte[] ORDER_ID = "order-id=".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TS = "|ts=".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PAD = "|pad=".getBytes(StandardCharsets.US_ASCII);
+
+    private final ByteArrayPool pool = new ByteArrayPool();
+
+    @Override
+    public byte[] serialize(String topic, OrderEvent event) {
+        if (event == null) {
+            return null;
+        }
+        String id = event.orderId();
+        long ts = event.timestampMillis();
+        if (ts < 0) {
+            return event.toPayload().getBytes(StandardCharsets.UTF_8);
+        }
+        int len = ORDER_ID.length + id.length() + TS.length + Ascii.digits(ts);
+        int padChars = (len < event.padTo()) ? Math.max(0, event.padTo() - len - PAD.length) : -1;
+        int total = (padChars >= 0) ? len + PAD.length + padChars : len;
+
+        byte[] out = pool.take(total);
+        int pos = Ascii.put(out, 0, ORDER_ID);
+        pos = Ascii.put(out, pos, id);
+        if (pos < 0) {
+            return event.toPayload().getBytes(StandardCharsets.UTF_8);
+        }
+        pos = Ascii.put(out, pos, TS);
+        pos = Ascii.putDigits(out, pos + Ascii.digits(ts), ts);
+        if (padChars >= 0) {
+            pos = Ascii.put(out, pos, PAD);
+            Arrays.fill(out, pos, pos + padChars, (byte) 'x');
+        }
+        return out;
+    }
+
+    /** Size of the encoded value for an ASCII order id, as written by {@link #serialize}. */
+    public static int encodedLength(OrderEvent event) {
+        if (event.timestampMillis() < 0) {
+            return event.toPayload().length();
+        }
+        int len = ORDER_ID.length + event.orderId().length() + TS.length + Ascii.digits(event.timestampMillis());
+        return (len < event.padTo()) ? len + PAD.length + Math.max(0, event.padTo() - len - PAD.length) : len;
+    }
+}
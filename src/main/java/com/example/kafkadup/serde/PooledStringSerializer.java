@@ -0,0 +1,25 @@
+package com.example.kafkadup.serde;
+
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Drop-in replacement for {@code StringSerializer} (UTF-8) that encodes ASCII strings into a
+ * pooled array instead of allocating one per record. Non-ASCII strings take the regular path.
+ */
+public class PooledStringSerializer implements Serializer<String> {
+    private final ByteArrayPool pool = new ByteArrayPool();
+
+    @Override
+    public byte[] serialize(String topic, String data) {
+        if (data == null) {
+            return null;
+        }
+        byte[] out = pool.take(data.length());
+        if (Ascii.put(out, 0, data) < 0) {
+            return data.getBytes(StandardCharsets.UTF_8);
+        }
+        return out;
+    }
+}
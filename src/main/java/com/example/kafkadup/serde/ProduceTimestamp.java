@@ -0,0 +1,54 @@
+package com.example.kafkadup.serde;
+
+import java.time.Instant;
+
+/**
+ * Produce timestamp carried in a binary record header: epoch nanoseconds as 8 big-endian bytes.
+ * <p>
+ * {@link #now()} is {@link System#nanoTime()} anchored to the wall clock once, so it has
+ * nanosecond resolution and never steps backwards. Producer and consumer of this app share the
+ * JVM and therefore the anchor; between processes it is only as good as their clock sync.
+ */
+public final class ProduceTimestamp {
+    public static final String HEADER = "dup-produce-ts";
+    private static final long ANCHOR;
+
+    static {
+        Instant wall = Instant.now();
+        ANCHOR = wall.getEpochSecond() * 1_000_000_000L + wall.getNano() - System.nanoTime();
+    }
+
+    private ProduceTimestamp() {
+    }
+
+    /** Current time in epoch nanoseconds. */
+    public static long now() {
+        return ANCHOR + System.nanoTime();
+    }
+
+    /** A {@link System#nanoTime()} reading of this JVM in epoch nanoseconds. */
+    public static long fromNanoTime(long nanoTime) {
+        return ANCHOR + nanoTime;
+    }
+
+    public static byte[] encode(long epochNanos) {
+        byte[] b = new byte[Long.BYTES];
+        for (int i = Long.BYTES - 1; i >= 0; i--) {
+            b[i] = (byte) epochNanos;
+            epochNanos >>>= 8;
+        }
+        return b;
+    }
+
+    /** @return the timestamp, or -1 if {@code value} is not one written by {@link #encode} */
+    public static long decode(byte[] value) {
+        if (value == null || value.length != Long.BYTES) {
+            return -1;
+        }
+        long v = 0;
+        for (byte b : value) {
+            v = (v << 8) | (b & 0xff);
+        }
+        return v;
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.kafkadup.service;
+
+/**
+ * Parameters for {@link ProducerService#sendBatch(BatchSendRequest)}.
+ *
+ * @param count       number of records to send
+ * @param keyPattern  key template; {@code {run}} and {@code {seq}} are replaced per record
+ * @param payloadSize minimum value size in bytes (the usual payload is padded up to it)
+ * @param rate        target records per second, 0 for as fast as the producer accepts them
+ * @param lingerMs    {@code linger.ms} for this run, null to keep the producer default
+ * @param batchSize   {@code batch.size} for this run, null to keep the producer default
+ */
+public record BatchSendRequest(
+        int count,
+        String keyPattern,
+        int payloadSize,
+        int rate,
+        Integer lingerMs,
+        Integer batchSize) {
+
+    public static final String DEFAULT_KEY_PATTERN = "batch-{run}-{seq}";
+
+    public BatchSendRequest {
+        if (count <= 0) {
+            throw new IllegalArgumentException("count must be > 0");
+        }
+        if (payloadSize < 0 || rate < 0) {
+            throw new IllegalArgumentException("payloadSize and rate must be >= 0");
+        }
+        if (lingerMs != null && lingerMs < 0) {
+            throw new IllegalArgumentException("lingerMs must be >= 0");
+        }
+        if (batchSize != null && batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be > 0");
+        }
+        if (keyPattern == null || keyPattern.isBlank()) {
+            keyPattern = DEFAULT_KEY_PATTERN;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.kafkadup.service;
+
+/**
+ * Aggregate outcome of one batch run. Latencies are send()-to-ack, in microseconds.
+ *
+ * @param payloadBytes key and value bytes handed to the producer, before compression
+ */
+public record BatchSendResult(
+        String runId,
+        int requested,
+        long acked,
+        long failed,
+        long payloadBytes,
+        long elapsedMillis,
+        double recordsPerSecond,
+        double megabytesPerSecond,
+        long p50Micros,
+        long p99Micros,
+        long p999Micros,
+        long maxMicros) {
+}
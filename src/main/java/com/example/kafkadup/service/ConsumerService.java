@@ -1,26 +1,90 @@
-/*
 package com.example.kafkadup.service;
 
+import com.example.kafkadup.serde.ProduceTimestamp;
+import jakarta.annotation.PreDestroy;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Service;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-*/
-/**
- * Simple consumer that logs key, offset and value. If the same key appears at different offsets,
- * you'll see duplicate messages (this is the thing we want to reproduce).
- *//*
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+/**
+ * Consumes the order topic and feeds every record to the {@link DuplicateDetector} and, with
+ * its produce timestamp header, to the {@link EndToEndLatencyTracker}.
+ * If the same key appears at different offsets, the detector reports it (this is the thing
+ * we want to reproduce). Disable with {@code app.consumer.enabled=false}.
+ * <p>
+ * With {@code app.consumer.batch=true} records arrive as poll-sized batches. Setting
+ * {@code app.consumer.virtual-threads=true} as well processes the records of each partition
+ * of a batch on a virtual thread of their own, in offset order, so the detector still sees a
+ * key's first copy first. The batch only returns (and its offsets are committed) once every
+ * partition is done, so commits stay in offset order.
+ */
 @Service
 public class ConsumerService {
-    private final Logger log = LoggerFactory.getLogger(ConsumerService.class);
+    private final DuplicateDetector detector;
+    private final EndToEndLatencyTracker latency;
+    private final ExecutorService recordExecutor;
 
-    @KafkaListener(topics = "${app.topic:order.created}", groupId = "dup-repro-group")
+    public ConsumerService(DuplicateDetector detector, EndToEndLatencyTracker latency,
+                           @Value("${app.consumer.virtual-threads:false}") boolean virtualThreads) {
+        this.detector = detector;
+        this.latency = latency;
+        this.recordExecutor = virtualThreads ? Executors.newVirtualThreadPerTaskExecutor() : null;
+    }
+
+    @KafkaListener(id = "order-consumer", topics = "${app.topic:order.created}", groupId = "dup-repro-group",
+            autoStartup = "#{${app.consumer.enabled:true} and !${app.consumer.batch:false}}")
     public void listen(ConsumerRecord<String, String> record) {
-        log.info("[CONSUMER] received key={} offset={} value={}",
-                record.key(), record.offset(), record.value());
+        process(record);
+    }
+
+    @KafkaListener(id = "order-batch-consumer", topics = "${app.topic:order.created}", groupId = "dup-repro-group",
+            containerFactory = "batchListenerContainerFactory",
+            autoStartup = "#{${app.consumer.enabled:true} and ${app.consumer.batch:false}}")
+    public void listenBatch(List<ConsumerRecord<String, String>> records) throws Exception {
+        if (recordExecutor == null) {
+            for (ConsumerRecord<String, String> record : records) {
+                process(record);
+            }
+            return;
+        }
+        Map<Integer, List<ConsumerRecord<String, String>>> byPartition = new LinkedHashMap<>();
+        for (ConsumerRecord<String, String> record : records) {
+            byPartition.computeIfAbsent(record.partition(), p -> new ArrayList<>()).add(record);
+        }
+        List<Future<?>> futures = new ArrayList<>(byPartition.size());
+        for (List<ConsumerRecord<String, String>> partition : byPartition.values()) {
+            futures.add(recordExecutor.submit(() -> {
+                for (ConsumerRecord<String, String> record : partition) {
+                    process(record);
+                }
+            }));
+        }
+        // a failed record fails the whole batch, which is then redelivered from its first offset
+        for (Future<?> f : futures) {
+            f.get();
+        }
+    }
+
+    private void process(ConsumerRecord<String, String> record) {
+        Header ts = record.headers().lastHeader(ProduceTimestamp.HEADER);
+        latency.consumed(record.partition(), record.offset(), (ts != null) ? ProduceTimestamp.decode(ts.value()) : -1);
+        detector.observe(record.key(), record.partition(), record.offset());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (recordExecutor != null) {
+            recordExecutor.shutdownNow();
+        }
     }
 }
-*/
@@ -0,0 +1,171 @@
+package com.example.kafkadup.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Online duplicate-key detection for consumed records, across all partitions.
+ * <p>
+ * Every key goes through a bounded {@link SeenKeyIndex}; only keys that turn out to be
+ * duplicates are kept as objects (up to {@code app.duplicates.max-reports} of them), so
+ * memory stays flat however many records are consumed.
+ * <p>
+ * The index keeps only the first position of a key, so a later copy that is delivered again
+ * (after a rebalance or seek) is recognised by the positions already reported for its key.
+ * Beyond {@code max-reports} keys that cannot be told, and such redeliveries are counted again.
+ */
+@Component
+public class DuplicateDetector {
+    private final Logger log = LoggerFactory.getLogger(DuplicateDetector.class);
+
+    private final SeenKeyIndex index;
+    private final int maxReports;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, List<DuplicateKeyReport.Occurrence>> duplicates = new ConcurrentHashMap<>();
+    private final LongAdder recordsSeen = new LongAdder();
+    private final Counter duplicateRecords;
+    private final MeterRegistry registry;
+
+    public DuplicateDetector(MeterRegistry registry,
+                             @Value("${app.duplicates.index-capacity:1000000}") int indexCapacity,
+                             @Value("${app.duplicates.max-reports:10000}") int maxReports) {
+        this.index = new SeenKeyIndex(indexCapacity);
+        this.maxReports = maxReports;
+        this.duplicateRecords = Counter.builder("dup.consumer.duplicate.records")
+                .description("Consumed records whose key had already been seen at another offset")
+                .register(registry);
+        Gauge.builder("dup.consumer.records", recordsSeen, LongAdder::sum)
+                .description("Records inspected by the duplicate detector")
+                .register(registry);
+        Gauge.builder("dup.consumer.duplicate.keys", duplicates, Map::size)
+                .description("Distinct keys reported as duplicates")
+                .register(registry);
+        this.registry = registry;
+    }
+
+    /** Bound to this detector, so registered only once it is fully constructed. */
+    @PostConstruct
+    void registerIndexGauge() {
+        Gauge.builder("dup.consumer.index.keys", this, DuplicateDetector::indexedKeys)
+                .description("Keys currently held by the seen-key index")
+                .register(registry);
+    }
+
+    /**
+     * Check one consumed record.
+     *
+     * @return true if the key was already seen at a different partition/offset, and this
+     *         partition/offset was not reported before
+     */
+    public boolean observe(String key, int partition, long offset) {
+        recordsSeen.increment();
+        if (key == null) {
+            return false;
+        }
+        long position = SeenKeyIndex.position(partition, offset);
+        long first;
+        lock.lock();
+        try {
+            first = index.putIfAbsent(SeenKeyIndex.hash(key), key.hashCode(), position);
+        } finally {
+            lock.unlock();
+        }
+        if (first == SeenKeyIndex.NOT_SEEN || first == position) {
+            return false; // new key, or the same record delivered again after a rebalance
+        }
+        if (!recordDuplicate(key, first, partition, offset)) {
+            return false; // a duplicate already reported, delivered again
+        }
+        duplicateRecords.increment();
+        return true;
+    }
+
+    /** @return false if this position was already reported for the key */
+    private boolean recordDuplicate(String key, long first, int partition, long offset) {
+        List<DuplicateKeyReport.Occurrence> occurrences = duplicates.get(key);
+        if (occurrences == null) {
+            if (duplicates.size() >= maxReports) {
+                return true;
+            }
+            occurrences = duplicates.computeIfAbsent(key, k -> {
+                List<DuplicateKeyReport.Occurrence> list = new ArrayList<>(2);
+                list.add(new DuplicateKeyReport.Occurrence(SeenKeyIndex.partition(first), SeenKeyIndex.offset(first)));
+                return list;
+            });
+        }
+        DuplicateKeyReport.Occurrence occurrence = new DuplicateKeyReport.Occurrence(partition, offset);
+        synchronized (occurrences) {
+            if (occurrences.contains(occurrence)) {
+                return false;
+            }
+            occurrences.add(occurrence);
+        }
+        log.warn("[DUPLICATES] key={} seen again at partition={} offset={} (first at partition={} offset={})",
+                key, partition, offset, SeenKeyIndex.partition(first), SeenKeyIndex.offset(first));
+        return true;
+    }
+
+    public DuplicateSummary summary(int limit) {
+        List<DuplicateKeyReport> keys = new ArrayList<>();
+        for (Map.Entry<String, List<DuplicateKeyReport.Occurrence>> e : duplicates.entrySet()) {
+            if (keys.size() >= limit) {
+                break;
+            }
+            List<DuplicateKeyReport.Occurrence> occurrences = e.getValue();
+            synchronized (occurrences) {
+                keys.add(new DuplicateKeyReport(e.getKey(), List.copyOf(occurrences)));
+            }
+        }
+        long indexed;
+        long evicted;
+        lock.lock();
+        try {
+            indexed = index.size();
+            evicted = index.evictedKeys();
+        } finally {
+            lock.unlock();
+        }
+        return new DuplicateSummary(recordsSeen.sum(), (long) duplicateRecords.count(), duplicates.size(),
+                indexed, evicted, keys);
+    }
+
+    /** Duplicate keys starting with {@code keyPrefix}; limited to what fits in {@code max-reports}. */
+    public List<DuplicateKeyReport> reports(String keyPrefix) {
+        List<DuplicateKeyReport> keys = new ArrayList<>();
+        for (Map.Entry<String, List<DuplicateKeyReport.Occurrence>> e : duplicates.entrySet()) {
+            if (e.getKey().startsWith(keyPrefix)) {
+                List<DuplicateKeyReport.Occurrence> occurrences = e.getValue();
+                synchronized (occurrences) {
+                    keys.add(new DuplicateKeyReport(e.getKey(), List.copyOf(occurrences)));
+                }
+            }
+        }
+        return keys;
+    }
+
+    public long recordsSeen() {
+        return recordsSeen.sum();
+    }
+
+    private long indexedKeys() {
+        lock.lock();
+        try {
+            return index.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
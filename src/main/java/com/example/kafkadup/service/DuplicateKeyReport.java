@@ -0,0 +1,13 @@
+package com.example.kafkadup.service;
+
+import java.util.List;
+
+/**
+ * A key that was consumed more than once, with every partition/offset it was seen at
+ * (the first one included), in the order they were consumed.
+ */
+public record DuplicateKeyReport(String key, List<Occurrence> occurrences) {
+
+    public record Occurrence(int partition, long offset) {
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.kafkadup.service;
+
+import java.util.List;
+
+/**
+ * Snapshot returned by {@code GET /duplicates}.
+ *
+ * @param indexedKeys keys currently remembered by the seen-key index
+ * @param evictedKeys keys forgotten because the index reached its capacity
+ * @param keys        duplicate keys, at most the requested limit
+ */
+public record DuplicateSummary(
+        long recordsSeen,
+        long duplicateRecords,
+        int duplicateKeys,
+        long indexedKeys,
+        long evictedKeys,
+        List<DuplicateKeyReport> keys) {
+}
@@ -0,0 +1,16 @@
+package com.example.kafkadup.service;
+
+/**
+ * One latency distribution of {@link EndToEndLatencyTracker}. All times are in microseconds.
+ *
+ * @param series {@code e2e} (produce to consume) or {@code ack-to-consume}
+ */
+public record EndToEndLatency(
+        String series,
+        long count,
+        double meanMicros,
+        long p50Micros,
+        long p99Micros,
+        long p999Micros,
+        long maxMicros) {
+}
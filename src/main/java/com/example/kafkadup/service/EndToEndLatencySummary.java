@@ -0,0 +1,15 @@
+package com.example.kafkadup.service;
+
+import java.util.List;
+
+/**
+ * Answer of {@code GET /latency}.
+ *
+ * @param untimedRecords consumed records without a produce timestamp header (e.g. written by other producers)
+ * @param unmatched      acks or consumed records whose counterpart never showed up before being evicted
+ */
+public record EndToEndLatencySummary(
+        long untimedRecords,
+        long unmatched,
+        List<EndToEndLatency> latencies) {
+}
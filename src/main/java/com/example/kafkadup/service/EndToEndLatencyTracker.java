@@ -0,0 +1,233 @@
+package com.example.kafkadup.service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.example.kafkadup.serde.ProduceTimestamp;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Produce-to-consume latency of records carrying a {@link ProduceTimestamp} header, and the lag
+ * between a record's ack reaching the producer and the record reaching the consumer.
+ * <p>
+ * Listener threads and the producer's I/O thread record into HdrHistogram {@link Recorder}s,
+ * which are wait-free for writers. Every {@code app.latency.interval-ms} the interval in progress
+ * is appended to an in-memory HdrHistogram log (values in nanoseconds), of which the last
+ * {@code app.latency.log-intervals} intervals are kept. Reading the totals takes what was recorded
+ * so far without closing the interval, so the logged intervals do not depend on how often the
+ * results are read.
+ * <p>
+ * Acks and consumed records are matched by partition and offset. Whichever comes first waits in
+ * a map; when the consumer wins the race the lag is recorded as 0.
+ */
+@Component
+public class EndToEndLatencyTracker {
+    static final String E2E = "e2e";
+    static final String ACK_TO_CONSUME = "ack-to-consume";
+    private static final long PENDING_TTL_NANOS = TimeUnit.SECONDS.toNanos(60);
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /** An ack or a consumed record waiting for the other one. */
+    private record Mark(boolean acked, long nanos) {
+    }
+
+    private final long intervalMs;
+    private final boolean matchAcks;
+    private final int maxPending;
+    private final int logIntervals;
+    private final Series e2e = new Series(E2E);
+    private final Series ackToConsume = new Series(ACK_TO_CONSUME);
+    private final Map<Long, Mark> pending = new ConcurrentHashMap<>();
+    private final LongAdder untimed = new LongAdder();
+    private final LongAdder unmatched = new LongAdder();
+    private volatile long nextSweep;
+
+    // interval log, guarded by this
+    private final long startMillis = System.currentTimeMillis();
+    private long intervalStartMillis = startMillis;
+    private final ArrayDeque<String> logLines = new ArrayDeque<>();
+    private final ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream();
+    private final HistogramLogWriter lineWriter = new HistogramLogWriter(lineBuffer);
+
+    private final ScheduledExecutorService roller = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "latency-interval");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * @param consumerEnabled without the consumer no ack is ever matched, so acks are not kept
+     */
+    public EndToEndLatencyTracker(@Value("${app.latency.interval-ms:1000}") long intervalMs,
+                                  @Value("${app.latency.log-intervals:600}") int logIntervals,
+                                  @Value("${app.latency.max-pending:200000}") int maxPending,
+                                  @Value("${app.consumer.enabled:true}") boolean consumerEnabled) {
+        this.logIntervals = Math.max(1, logIntervals);
+        this.maxPending = maxPending;
+        this.matchAcks = consumerEnabled;
+        this.intervalMs = Math.max(1, intervalMs);
+        lineWriter.setBaseTime(startMillis);
+    }
+
+    @PostConstruct
+    void start() {
+        roller.scheduleAtFixedRate(this::roll, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /** The broker acked the record at {@code partition}/{@code offset}. */
+    public void acked(int partition, long offset) {
+        if (matchAcks) {
+            match(SeenKeyIndex.position(partition, offset), new Mark(true, ProduceTimestamp.now()));
+        }
+    }
+
+    /**
+     * A record was consumed.
+     *
+     * @param producedNanos its {@link ProduceTimestamp}, or -1 if it had none
+     */
+    public void consumed(int partition, long offset, long producedNanos) {
+        if (producedNanos < 0) {
+            untimed.increment();
+            return;
+        }
+        long now = ProduceTimestamp.now();
+        e2e.recorder.recordValue(Math.max(0, now - producedNanos));
+        match(SeenKeyIndex.position(partition, offset), new Mark(false, now));
+    }
+
+    private void match(long position, Mark mine) {
+        Mark other = pending.get(position);
+        if (other == null) {
+            if (pending.size() >= maxPending && !sweep(mine.nanos)) {
+                unmatched.increment();
+                return;
+            }
+            other = pending.putIfAbsent(position, mine);
+            if (other == null) {
+                return;
+            }
+        }
+        // the same side twice is a redelivery (or a retried ack); keep waiting for the other one
+        if (other.acked != mine.acked && pending.remove(position, other)) {
+            long ack = mine.acked ? mine.nanos : other.nanos;
+            long consume = mine.acked ? other.nanos : mine.nanos;
+            ackToConsume.recorder.recordValue(Math.max(0, consume - ack));
+        }
+    }
+
+    /** Drop stale marks, at most once a second. @return true if there is room again */
+    private boolean sweep(long now) {
+        if (now - nextSweep < 0) {
+            return false;
+        }
+        nextSweep = now + SWEEP_INTERVAL_NANOS;
+        int before = pending.size();
+        pending.values().removeIf(m -> now - m.nanos > PENDING_TTL_NANOS);
+        unmatched.add(Math.max(0, before - pending.size()));
+        return pending.size() < maxPending;
+    }
+
+    /**
+     * Close the current interval and append it to the log. Only the roller calls this, so every
+     * logged interval is {@code app.latency.interval-ms} long however often the results are read.
+     */
+    synchronized void roll() {
+        long now = System.currentTimeMillis();
+        for (Series s : List.of(e2e, ackToConsume)) {
+            s.drain();
+            s.current.setTag(s.name);
+            s.current.setStartTimeStamp(intervalStartMillis);
+            s.current.setEndTimeStamp(now);
+            lineBuffer.reset();
+            lineWriter.outputIntervalHistogram(s.current);
+            logLines.addLast(lineBuffer.toString(StandardCharsets.US_ASCII));
+            s.current.reset();
+        }
+        intervalStartMillis = now;
+        while (logLines.size() > 2 * logIntervals) {
+            logLines.removeFirst();
+        }
+    }
+
+    /** Totals up to now, including the interval in progress; the interval log is not touched. */
+    public synchronized EndToEndLatencySummary snapshot(boolean reset) {
+        e2e.drain();
+        ackToConsume.drain();
+        List<EndToEndLatency> latencies = List.of(e2e.summary(reset), ackToConsume.summary(reset));
+        long u = reset ? untimed.sumThenReset() : untimed.sum();
+        long m = reset ? unmatched.sumThenReset() : unmatched.sum();
+        return new EndToEndLatencySummary(u, m, latencies);
+    }
+
+    /**
+     * The kept intervals as an HdrHistogram log, tagged {@code e2e} and {@code ack-to-consume},
+     * values in nanoseconds (e.g. {@code HistogramLogProcessor -tag e2e -outputValueUnitRatio 1000}).
+     */
+    public synchronized String intervalLog() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HistogramLogWriter writer = new HistogramLogWriter(out);
+        writer.outputComment("kafka-dup-repro end-to-end latency, values in nanoseconds");
+        writer.outputLogFormatVersion();
+        writer.outputStartTime(startMillis);
+        writer.outputBaseTime(startMillis);
+        writer.outputLegend();
+        StringBuilder sb = new StringBuilder(out.toString(StandardCharsets.US_ASCII));
+        for (String line : logLines) {
+            sb.append(line);
+        }
+        return sb.toString();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        roller.shutdownNow();
+    }
+
+    /** Guarded by the tracker. */
+    private static final class Series {
+        final String name;
+        final Recorder recorder = new Recorder(3);
+        final Histogram total = new Histogram(3);     // since start or the last reset
+        final Histogram current = new Histogram(3);   // the interval in progress, taken so far
+        Histogram taken;
+
+        Series(String name) {
+            this.name = name;
+        }
+
+        /** Take what was recorded since the last call into both the totals and the current interval. */
+        void drain() {
+            taken = recorder.getIntervalHistogram(taken);
+            total.add(taken);
+            current.add(taken);
+        }
+
+        EndToEndLatency summary(boolean reset) {
+            EndToEndLatency l = new EndToEndLatency(name, total.getTotalCount(),
+                    total.getMean() / 1000.0,
+                    total.getValueAtPercentile(50.0) / 1000,
+                    total.getValueAtPercentile(99.0) / 1000,
+                    total.getValueAtPercentile(99.9) / 1000,
+                    total.getMaxValue() / 1000);
+            if (reset) {
+                total.reset();
+            }
+            return l;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.example.kafkadup.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.example.kafkadup.config.KafkaConfig;
+import com.example.kafkadup.config.ProxyFaults;
+import com.example.kafkadup.config.ProxyRegistry;
+import com.example.kafkadup.config.TcpProxy;
+import com.example.kafkadup.serde.OrderEvent;
+import jakarta.annotation.PreDestroy;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Open-model load: records are sent on a fixed schedule, whether or not earlier ones have been
+ * acked, and latency is measured from each record's scheduled send time. A producer that stalls
+ * (full buffer, blocked metadata, a slow proxy) therefore shows up in the latencies of every
+ * record that should have gone out meanwhile, instead of silently lowering the send rate
+ * (coordinated omission).
+ * <p>
+ * The rate goes up in steps until a step is saturated: fewer than 95% of its target rate acked,
+ * or its corrected p99 over the run's limit. Records go through the proxies like all others, so
+ * faults set on them apply. Faults for the run replace every broker's all-connections faults in
+ * the run's directions until it ends, then the ones set before are put back (none for a broker
+ * that appeared during the run); per-connection faults set by hand are left alone, and keep
+ * applying to their connections.
+ */
+@Service
+public class LoadGenerator {
+    private static final double SUSTAINED_RATIO = 0.95;
+    private static final long ACK_WAIT_MINUTES = 10;
+
+    private final Logger log = LoggerFactory.getLogger(LoadGenerator.class);
+    private final ProducerService producer;
+    private final KafkaTemplate<String, OrderEvent> kafkaTemplate;
+    private final KafkaConfig kafkaConfig;
+    private final ProxyRegistry proxies;
+    // set until the run itself has ended, not just until its caller stopped waiting
+    private final AtomicBoolean running = new AtomicBoolean();
+    // the schedule is kept by one platform thread, away from HTTP and producer threads
+    private final ExecutorService sender = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "load-generator");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public LoadGenerator(ProducerService producer, KafkaTemplate<String, OrderEvent> kafkaTemplate,
+                         KafkaConfig kafkaConfig, ProxyRegistry proxies) {
+        this.producer = producer;
+        this.kafkaTemplate = kafkaTemplate;
+        this.kafkaConfig = kafkaConfig;
+        this.proxies = proxies;
+    }
+
+    /**
+     * Run the ramp and wait for it. Only one run at a time. Interrupting the caller stops the run.
+     *
+     * @throws IllegalStateException if a run is already in progress
+     */
+    public LoadRunResult run(LoadRunRequest request) throws InterruptedException, ExecutionException {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("a load run is already running");
+        }
+        // whoever claims the run releases it: the task once it ends, or the caller if it never started
+        AtomicBoolean claimed = new AtomicBoolean();
+        Future<LoadRunResult> future;
+        try {
+            future = sender.submit(() -> {
+                if (!claimed.compareAndSet(false, true)) {
+                    return null;
+                }
+                try {
+                    return ramp(request);
+                } finally {
+                    running.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            running.set(false);
+            throw e;
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            if (claimed.compareAndSet(false, true)) {
+                running.set(false);
+            }
+            throw e;
+        }
+    }
+
+    private LoadRunResult ramp(LoadRunRequest request) throws InterruptedException {
+        String runId = Long.toString(System.currentTimeMillis(), 36);
+        DefaultKafkaProducerFactory<String, OrderEvent> factory =
+                (request.profile() != null) ? kafkaConfig.newProducerFactory(request.profile()) : null;
+        KafkaTemplate<String, OrderEvent> template = (factory != null) ? new KafkaTemplate<>(factory) : kafkaTemplate;
+        // the faults set by hand, to put back when the run is over
+        Map<String, ProxyFaults> before = (request.faults() != null) ? proxies.getFaults() : null;
+        if (request.faults() != null) {
+            for (TcpProxy.Direction d : request.faultDirections()) {
+                proxies.setFaults(null, d, null, request.faults());
+            }
+        }
+        log.info("[LOAD] Run {} starting: {}..{}/s in steps of {}/s, {} ms each, profile={}, faults={}",
+                runId, request.startRate(), request.maxRate(), request.stepRate(), request.stepMs(),
+                (request.profile() != null) ? request.profile() : "application",
+                (request.faults() != null) ? request.faults() + " on " + request.faultDirections() : "none");
+
+        List<LoadStepResult> steps = new ArrayList<>();
+        int maxSustained = 0;
+        Integer saturatedAt = null;
+        long seq = 0;
+        try {
+            for (int rate = request.startRate(); rate <= request.maxRate(); rate += request.stepRate()) {
+                Step step = new Step(rate, request.stepMs());
+                step.send(template, "load-" + runId + "-", seq, request.payloadSize());
+                seq += step.count;
+                LoadStepResult result = step.result(request.maxP99Ms());
+                steps.add(result);
+                log.info("[LOAD] Run {} step: {}", runId, result);
+                if (step.rejected) {
+                    log.info("[LOAD] Run {} stopped: the producer no longer takes sends", runId);
+                    break;
+                }
+                if (result.saturated()) {
+                    saturatedAt = rate;
+                    break;
+                }
+                maxSustained = rate;
+                if (request.stepRate() == 0) {
+                    break;
+                }
+            }
+        } finally {
+            if (before != null) {
+                restoreFaults(before, request.faultDirections());
+            }
+            if (factory != null) {
+                factory.destroy();
+            }
+        }
+        LoadRunResult result = new LoadRunResult(runId, steps, maxSustained, saturatedAt);
+        log.info("[LOAD] Run {} finished: max sustained {}/s, saturated at {}", runId, maxSustained, saturatedAt);
+        return result;
+    }
+
+    /**
+     * Only the all-connections faults were replaced for the run; per-connection ones stay as they are.
+     * Every broker there is now is reset, including one whose proxy started during the run.
+     */
+    private void restoreFaults(Map<String, ProxyFaults> before, List<TcpProxy.Direction> directions) {
+        for (String broker : proxies.getFaults().keySet()) {
+            ProxyFaults f = before.getOrDefault(broker, ProxyFaults.NONE);
+            for (TcpProxy.Direction d : directions) {
+                proxies.setFaults(broker, d, null,
+                        (d == TcpProxy.Direction.TO_BROKER) ? f.toBroker() : f.toClient());
+            }
+        }
+    }
+
+    /** One step of the ramp; {@link #send} runs on the sender thread, callbacks on the producer's. */
+    private final class Step {
+        final int rate;
+        final int count;
+        final Recorder corrected = new Recorder(3);
+        final Recorder uncorrected = new Recorder(3);
+        final LongAdder acked = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final AtomicLong lastAck = new AtomicLong();
+        final CountDownLatch done;
+        long start;
+        long maxLag;
+        boolean rejected;
+
+        Step(int rate, long stepMs) {
+            this.rate = rate;
+            this.count = (int) Math.max(1, Math.min(Integer.MAX_VALUE, rate * stepMs / 1000));
+            this.done = new CountDownLatch(count);
+        }
+
+        void send(KafkaTemplate<String, OrderEvent> template, String keyPrefix, long firstSeq, int payloadSize)
+                throws InterruptedException {
+            start = System.nanoTime();
+            lastAck.set(start);
+            for (int i = 0; i < count; i++) {
+                long intended = start + i * 1_000_000_000L / rate;
+                long now;
+                // behind schedule: send at once, the lag is charged to this record's latency
+                while ((now = System.nanoTime()) < intended) {
+                    LockSupport.parkNanos(intended - now);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException("load run cancelled");
+                    }
+                }
+                maxLag = Math.max(maxLag, now - intended);
+                String key = keyPrefix + (firstSeq + i);
+                long sentAt = now;
+                try {
+                    producer.instrumentedSend(template, key, new OrderEvent(key, System.currentTimeMillis(), payloadSize))
+                            .whenComplete((result, ex) -> {
+                                long at = System.nanoTime();
+                                if (ex == null) {
+                                    corrected.recordValue((at - intended) / 1000);
+                                    uncorrected.recordValue((at - sentAt) / 1000);
+                                    lastAck.accumulateAndGet(at, Math::max);
+                                    acked.increment();
+                                } else {
+                                    failed.increment();
+                                }
+                                done.countDown();
+                            });
+                } catch (RejectedExecutionException e) {
+                    // shutting down: fail the rest of the step at once
+                    rejected = true;
+                    for (int j = i; j < count; j++) {
+                        failed.increment();
+                        done.countDown();
+                    }
+                    break;
+                } catch (RuntimeException e) {
+                    failed.increment();
+                    done.countDown();
+                }
+            }
+            // every send completes within delivery.timeout.ms; this only guards against a stuck producer
+            if (!done.await(ACK_WAIT_MINUTES, TimeUnit.MINUTES)) {
+                failed.add(done.getCount());
+            }
+        }
+
+        LoadStepResult result(long maxP99Ms) {
+            Histogram h = corrected.getIntervalHistogram();
+            Histogram u = uncorrected.getIntervalHistogram();
+            long scheduleNanos = (long) count * 1_000_000_000L / rate;
+            double seconds = Math.max(scheduleNanos, lastAck.get() - start) / 1e9;
+            double achieved = acked.sum() / Math.max(seconds, 1e-9);
+            long p99 = h.getValueAtPercentile(99.0);
+            boolean saturated = achieved < rate * SUSTAINED_RATIO
+                    || (maxP99Ms > 0 && p99 > maxP99Ms * 1000);
+            return new LoadStepResult(rate, count, acked.sum(), failed.sum(), achieved,
+                    h.getValueAtPercentile(50.0), p99, h.getValueAtPercentile(99.9), h.getMaxValue(),
+                    u.getValueAtPercentile(99.0), maxLag / 1000, saturated);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        sender.shutdownNow();
+    }
+}
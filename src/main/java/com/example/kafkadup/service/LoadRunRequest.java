@@ -0,0 +1,52 @@
+package com.example.kafkadup.service;
+
+import java.util.List;
+
+import com.example.kafkadup.config.LinkFaults;
+import com.example.kafkadup.config.ProducerProfile;
+import com.example.kafkadup.config.TcpProxy;
+
+/**
+ * Parameters for {@link LoadGenerator#run(LoadRunRequest)}: a step ramp from {@code startRate}
+ * to {@code maxRate}, {@code stepMs} per step.
+ *
+ * @param startRate       records per second of the first step
+ * @param stepRate        added per step; 0 for a single step
+ * @param maxRate         highest rate to try
+ * @param stepMs          length of each step's send schedule
+ * @param payloadSize     minimum value size in bytes
+ * @param maxP99Ms        a step whose corrected p99 exceeds this counts as saturated; 0 = throughput only
+ * @param profile         producer profile for the run, null for the application's producer
+ * @param faults          proxy faults to apply for the duration of the run, null to leave the proxies alone
+ * @param faultDirections directions {@code faults} apply to
+ */
+public record LoadRunRequest(
+        int startRate,
+        int stepRate,
+        int maxRate,
+        long stepMs,
+        int payloadSize,
+        long maxP99Ms,
+        ProducerProfile profile,
+        LinkFaults faults,
+        List<TcpProxy.Direction> faultDirections) {
+
+    public LoadRunRequest {
+        if (startRate <= 0) {
+            throw new IllegalArgumentException("startRate must be > 0");
+        }
+        if (stepRate < 0 || payloadSize < 0 || maxP99Ms < 0) {
+            throw new IllegalArgumentException("stepRate, payloadSize and maxP99Ms must be >= 0");
+        }
+        if (maxRate < startRate) {
+            maxRate = startRate;
+        }
+        if (stepMs <= 0) {
+            throw new IllegalArgumentException("stepMs must be > 0");
+        }
+        if (faultDirections == null || faultDirections.isEmpty()) {
+            faultDirections = List.of(TcpProxy.Direction.values());
+        }
+        faultDirections = List.copyOf(faultDirections);
+    }
+}
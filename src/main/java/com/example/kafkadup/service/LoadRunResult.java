@@ -0,0 +1,16 @@
+package com.example.kafkadup.service;
+
+import java.util.List;
+
+/**
+ * Outcome of a load run: every step that ran, the last one possibly saturated.
+ *
+ * @param maxSustainedRate highest step rate that was not saturated, 0 if none
+ * @param saturatedAtRate  rate of the first saturated step, null if the ramp reached maxRate
+ */
+public record LoadRunResult(
+        String runId,
+        List<LoadStepResult> steps,
+        int maxSustainedRate,
+        Integer saturatedAtRate) {
+}
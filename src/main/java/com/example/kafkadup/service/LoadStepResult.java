@@ -0,0 +1,26 @@
+package com.example.kafkadup.service;
+
+/**
+ * One step of a load run. Latencies are in microseconds and, unless marked otherwise, measured
+ * from the time the schedule said the record should be sent, so time the sender spent stuck
+ * (in send() or behind schedule) counts against the records that had to wait for it.
+ *
+ * @param achievedRate         acks per second, over the step or until its last ack if that came later
+ * @param p99UncorrectedMicros p99 from the actual send() call, for comparison
+ * @param maxScheduleLagMicros how far the sender fell behind its schedule
+ * @param saturated            the rate was not sustained, or p99 exceeded the run's limit
+ */
+public record LoadStepResult(
+        int targetRate,
+        long sent,
+        long acked,
+        long failed,
+        double achievedRate,
+        long p50Micros,
+        long p99Micros,
+        long p999Micros,
+        long maxMicros,
+        long p99UncorrectedMicros,
+        long maxScheduleLagMicros,
+        boolean saturated) {
+}
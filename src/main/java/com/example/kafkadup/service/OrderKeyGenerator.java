@@ -0,0 +1,25 @@
+package com.example.kafkadup.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monotonic order ids: a per-process prefix plus a counter, e.g. {@code ord-mvdibco5-42}.
+ * Replaces {@code UUID.randomUUID()}, which goes through SecureRandom on every call.
+ * Ids stay unique across restarts because the prefix is the start time in base 36.
+ */
+public class OrderKeyGenerator {
+    private final String prefix;
+    private final AtomicLong counter = new AtomicLong();
+
+    public OrderKeyGenerator() {
+        this("ord-" + Long.toString(System.currentTimeMillis(), 36) + "-");
+    }
+
+    public OrderKeyGenerator(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public String next() {
+        return prefix + counter.incrementAndGet();
+    }
+}
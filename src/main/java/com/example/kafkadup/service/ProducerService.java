@@ -1,12 +1,41 @@
 package com.example.kafkadup.service;
 
-import java.util.UUID;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
+import com.example.kafkadup.config.KafkaConfig;
+import com.example.kafkadup.serde.OrderEvent;
+import com.example.kafkadup.serde.OrderEventSerializer;
+import com.example.kafkadup.serde.ProduceTimestamp;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
 import org.springframework.util.concurrent.ListenableFuture;
@@ -15,17 +44,89 @@ import org.springframework.util.concurrent.ListenableFuture;
  * ProducerService that works with multiple Spring-Kafka versions:
  * - If KafkaTemplate.send(...) returns a CompletableFuture, use it directly.
  * - If it returns a ListenableFuture, convert it to a CompletableFuture.
+ * <p>
+ * Send callbacks normally run on the producer's single I/O thread, so a slow one delays every
+ * ack behind it. With {@code spring.threads.virtual.enabled=true} the per-send result handling
+ * of {@link #sendOneWithKey} runs on virtual threads instead; only the cheap counters and timers
+ * stay on the I/O thread, where they measure the ack itself.
+ * <p>
+ * Every record carries a {@link ProduceTimestamp} header, read back by the consumer for the
+ * {@link EndToEndLatencyTracker}.
+ * <p>
+ * Each send is also remembered by key in a {@link SendTracker} for {@code app.producer.tracking.ttl-ms},
+ * so duplicates found by the consumer can be traced back to it (see {@link RetryCorrelationService}).
+ * <p>
+ * With {@code app.journal.enabled=true} every send and its outcome is also appended to the
+ * {@link SendJournal}.
+ * <p>
+ * On shutdown {@link #drain} closes the send gate: every later send is rejected with a
+ * {@link RejectedExecutionException}, and sends already handed over get to finish.
  */
 @Service
 public class ProducerService {
+    private static final long ACK_WAIT_MINUTES = 10;
+
     private final Logger log = LoggerFactory.getLogger(ProducerService.class);
-    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final KafkaTemplate<String, OrderEvent> kafkaTemplate;
+    private final KafkaConfig kafkaConfig;
+    private final OrderKeyGenerator keyGenerator = new OrderKeyGenerator();
+    private final Timer ackTimer;
+    private final Timer failureTimer;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ExecutorService callbackExecutor;
+    private final EndToEndLatencyTracker latency;
+    private final SendTracker sends;
+    private final SendJournal journal;
+    private volatile boolean accepting = true;
+    // batch runs are executed one at a time, off the HTTP thread
+    private final ExecutorService batchWorker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "batch-sender");
+        t.setDaemon(true);
+        return t;
+    });
 
     @Value("${app.topic:order.created}")
     private String topic;
 
-    public ProducerService(KafkaTemplate<String, String> kafkaTemplate) {
+    // per-record "Sending"/"Send succeeded" lines are opt-in; failures are always logged
+    @Value("${app.producer.log-records:false}")
+    private boolean logRecords;
+
+    @Value("${app.producer.transaction-records:100}")
+    private int transactionRecords;
+
+    public ProducerService(KafkaTemplate<String, OrderEvent> kafkaTemplate, KafkaConfig kafkaConfig,
+                           MeterRegistry meterRegistry,
+                           @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                           EndToEndLatencyTracker latency,
+                           @Value("${app.producer.tracking.ttl-ms:120000}") long trackingTtlMs,
+                           @Value("${app.producer.tracking.max-sends:200000}") int trackingMaxSends,
+                           SendJournal journal) {
         this.kafkaTemplate = kafkaTemplate;
+        this.kafkaConfig = kafkaConfig;
+        this.latency = latency;
+        this.journal = journal;
+        this.sends = (trackingMaxSends > 0) ? new SendTracker(trackingTtlMs, trackingMaxSends) : null;
+        this.callbackExecutor = virtualThreads ? Executors.newVirtualThreadPerTaskExecutor() : null;
+        // retry counts come from the Kafka client metrics bound in KafkaConfig (kafka.producer.record.retry.*)
+        this.ackTimer = sendTimer(meterRegistry, "acked");
+        this.failureTimer = sendTimer(meterRegistry, "failed");
+        Gauge.builder("dup.producer.in.flight", inFlight, AtomicInteger::get)
+                .description("Records handed to the producer that have not been acked or failed yet")
+                .register(meterRegistry);
+        if (sends != null) {
+            Gauge.builder("dup.producer.tracked.sends", sends, SendTracker::size)
+                    .description("Sends remembered by key for retry correlation")
+                    .register(meterRegistry);
+        }
+    }
+
+    private static Timer sendTimer(MeterRegistry registry, String outcome) {
+        return Timer.builder("dup.producer.send")
+                .description("Time from KafkaTemplate.send() to broker ack or final failure")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry);
     }
 
     public String sendOne() {
@@ -33,45 +134,388 @@ public class ProducerService {
     }
 
     public String sendOneWithKey(String providedKey) {
-        final String id = (providedKey == null || providedKey.isBlank()) ? UUID.randomUUID().toString() : providedKey;
-        final String payload = "order-id=" + id + "|ts=" + System.currentTimeMillis();
-        log.info("[PRODUCER] Sending payload={} key={}", payload, id);
+        String id = resolveKey(providedKey);
+        sendLogged(id);
+        return id;
+    }
+
+    /**
+     * Send one record and block until it is acked or finally fails. Meant for callers on virtual
+     * threads (see {@code spring.threads.virtual.enabled}), where the wait only parks the caller.
+     *
+     * @throws ExecutionException if the send failed, with the producer's exception as the cause
+     */
+    public SendResult<String, OrderEvent> sendOneAndWait(String providedKey)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        // the producer fails the send after delivery.timeout.ms; the bound only guards against a stuck future
+        return sendLogged(resolveKey(providedKey)).get(ACK_WAIT_MINUTES, TimeUnit.MINUTES);
+    }
+
+    private String resolveKey(String providedKey) {
+        return (providedKey == null || providedKey.isBlank()) ? keyGenerator.next() : providedKey;
+    }
+
+    private CompletableFuture<SendResult<String, OrderEvent>> sendLogged(String id) {
+        final OrderEvent payload = new OrderEvent(id, System.currentTimeMillis());
+        if (logRecords) {
+            log.info("[PRODUCER] Sending payload={} key={}", payload, id);
+        }
 
         // kafkaTemplate.send(...) may return either a CompletableFuture or a ListenableFuture
-        Object rawFuture = kafkaTemplate.send(topic, id, payload);
+        CompletableFuture<SendResult<String, OrderEvent>> cf = instrumentedSend(kafkaTemplate, id, payload);
 
-        CompletableFuture<SendResult<String, String>> cf = adaptToCompletable(rawFuture);
+        if (callbackExecutor != null) {
+            cf.whenCompleteAsync(this::logResult, callbackExecutor);
+        } else {
+            cf.whenComplete(this::logResult);
+        }
+        return cf;
+    }
 
-        cf.whenComplete((result, ex) -> {
-            if (ex == null && result != null && result.getRecordMetadata() != null) {
+    private void logResult(SendResult<String, OrderEvent> result, Throwable ex) {
+        if (ex == null && result != null && result.getRecordMetadata() != null) {
+            if (logRecords) {
                 log.info("[PRODUCER] Send succeeded topic={}, partition={}, offset={}",
                         result.getRecordMetadata().topic(),
                         result.getRecordMetadata().partition(),
                         result.getRecordMetadata().offset());
-            } else if (ex != null) {
-                log.warn("[PRODUCER] Send failed — producer did not get ack: {}", ex.getMessage(), ex);
+            }
+        } else if (ex != null) {
+            log.warn("[PRODUCER] Send failed — producer did not get ack: {}", ex.getMessage(), ex);
+        } else {
+            log.warn("[PRODUCER] Send completed but result or metadata was null (unexpected).");
+        }
+    }
+
+    /**
+     * Send {@code request.count()} records from the batch worker and wait for every ack.
+     * If linger.ms or batch.size are given, the run uses a producer factory of its own (see
+     * {@link KafkaConfig#newProducerFactory(com.example.kafkadup.config.ProducerProfile)}) with those overrides.
+     */
+    public BatchSendResult sendBatch(BatchSendRequest request) throws InterruptedException, ExecutionException {
+        return sendBatch(request, kafkaTemplate);
+    }
+
+    /**
+     * Same as {@link #sendBatch(BatchSendRequest)}, through another template (e.g. one built for a
+     * different {@link com.example.kafkadup.config.ProducerProfile}). With a transactional template
+     * every {@code app.producer.transaction-records} records are committed as one transaction.
+     * linger.ms and batch.size overrides are only taken for the application's template.
+     */
+    public BatchSendResult sendBatch(BatchSendRequest request, KafkaTemplate<String, OrderEvent> base)
+            throws InterruptedException, ExecutionException {
+        if (base != kafkaTemplate && !overrides(request).isEmpty()) {
+            throw new IllegalArgumentException("lingerMs and batchSize only apply to the application's producer");
+        }
+        checkAccepting();
+        return batchWorker.submit(() -> runBatch(request, base)).get();
+    }
+
+    private static Map<String, Object> overrides(BatchSendRequest request) {
+        Map<String, Object> overrides = new HashMap<>();
+        if (request.lingerMs() != null) {
+            overrides.put(ProducerConfig.LINGER_MS_CONFIG, request.lingerMs());
+        }
+        if (request.batchSize() != null) {
+            overrides.put(ProducerConfig.BATCH_SIZE_CONFIG, request.batchSize());
+        }
+        return overrides;
+    }
+
+    private BatchSendResult runBatch(BatchSendRequest request, KafkaTemplate<String, OrderEvent> base)
+            throws InterruptedException {
+        Map<String, Object> overrides = overrides(request);
+        // not a copy of the application's factory: that would keep its transactional ids and fence it
+        DefaultKafkaProducerFactory<String, OrderEvent> runFactory =
+                overrides.isEmpty() ? null : kafkaConfig.newProducerFactory(kafkaConfig.producerProfile());
+        if (runFactory != null) {
+            runFactory.updateConfigs(overrides);
+        }
+        KafkaTemplate<String, OrderEvent> template = (runFactory != null) ? new KafkaTemplate<>(runFactory) : base;
+
+        BatchRun run = new BatchRun(request);
+        log.info("[PRODUCER] Batch run {} starting: {} records, payloadSize={}, rate={}/s, overrides={}, transactional={}",
+                run.runId, request.count(), request.payloadSize(), request.rate(), overrides, template.isTransactional());
+
+        try {
+            if (template.isTransactional()) {
+                int perTransaction = Math.max(1, transactionRecords);
+                for (int next = 0; next < request.count(); next += perTransaction) {
+                    int from = next;
+                    int to = Math.min(request.count(), from + perTransaction);
+                    try {
+                        // the transaction is bound to this thread, so sends through the template join it
+                        template.executeInTransaction(ops -> {
+                            run.send(template, from, to);
+                            return null;
+                        });
+                    } catch (RuntimeException e) {
+                        // the transaction was aborted and its records fail through their futures;
+                        // later ones would most likely fail the same way after max.block.ms, so stop here
+                        log.warn("[PRODUCER] Batch run {} transaction for records {}..{} failed, skipping the rest: {}",
+                                run.runId, from, to - 1, e.getMessage());
+                        run.skip(request.count() - to);
+                        break;
+                    }
+                    if (run.rejected) {
+                        run.skip(request.count() - to);
+                        break;
+                    }
+                }
             } else {
-                log.warn("[PRODUCER] Send completed but result or metadata was null (unexpected).");
+                run.send(template, 0, request.count());
+                template.flush();
+            }
+            run.awaitAcks();
+        } finally {
+            if (runFactory != null) {
+                runFactory.destroy();
+            }
+        }
+        BatchSendResult result = run.result();
+        log.info("[PRODUCER] Batch run finished: {}", result);
+        return result;
+    }
+
+    /** State of one batch run; {@link #send} is only called from the batch worker. */
+    private final class BatchRun {
+        final BatchSendRequest request;
+        final String runId = Long.toString(System.currentTimeMillis(), 36);
+        final String keyPattern;
+        final long intervalNanos;
+        final Recorder latencies = new Recorder(3);
+        final LongAdder acked = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final CountDownLatch done;
+        final long start = System.nanoTime();
+        long bytes;
+        boolean rejected;
+
+        BatchRun(BatchSendRequest request) {
+            this.request = request;
+            this.keyPattern = request.keyPattern().replace("{run}", runId);
+            this.intervalNanos = (request.rate() > 0) ? 1_000_000_000L / request.rate() : 0;
+            this.done = new CountDownLatch(request.count());
+        }
+
+        void send(KafkaTemplate<String, OrderEvent> template, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (intervalNanos > 0) {
+                    long due = start + i * intervalNanos;
+                    long wait;
+                    while ((wait = due - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                String key = keyPattern.replace("{seq}", Integer.toString(i));
+                OrderEvent payload = new OrderEvent(key, System.currentTimeMillis(), request.payloadSize());
+                bytes += key.length() + OrderEventSerializer.encodedLength(payload);
+
+                long sentAt = System.nanoTime();
+                try {
+                    instrumentedSend(template, key, payload).whenComplete((result, ex) -> {
+                        if (ex == null) {
+                            acked.increment();
+                            latencies.recordValue((System.nanoTime() - sentAt) / 1000);
+                        } else {
+                            failed.increment();
+                        }
+                        done.countDown();
+                    });
+                } catch (RejectedExecutionException e) {
+                    // shutting down: the rest would be rejected too
+                    rejected = true;
+                    skip(to - i);
+                    return;
+                } catch (RuntimeException e) {
+                    failed.increment();
+                    done.countDown();
+                }
+            }
+        }
+
+        void skip(int records) {
+            failed.add(records);
+            for (int i = 0; i < records; i++) {
+                done.countDown();
+            }
+        }
+
+        void awaitAcks() throws InterruptedException {
+            // every send completes within delivery.timeout.ms; this only guards against a stuck transaction
+            if (!done.await(ACK_WAIT_MINUTES, TimeUnit.MINUTES)) {
+                log.warn("[PRODUCER] Batch run {}: {} sends still pending, counted as failed", runId, done.getCount());
+                failed.add(done.getCount());
+            }
+        }
+
+        BatchSendResult result() {
+            long elapsedNanos = Math.max(1, System.nanoTime() - start);
+            Histogram h = latencies.getIntervalHistogram();
+            double seconds = elapsedNanos / 1e9;
+            return new BatchSendResult(runId, request.count(), acked.sum(), failed.sum(), bytes,
+                    elapsedNanos / 1_000_000,
+                    acked.sum() / seconds,
+                    bytes / seconds / (1024 * 1024),
+                    h.getValueAtPercentile(50.0),
+                    h.getValueAtPercentile(99.0),
+                    h.getValueAtPercentile(99.9),
+                    h.getMaxValue());
+        }
+    }
+
+    /**
+     * Close the send gate, flush the application's producer and wait until every send in flight
+     * (through any template) is acked or has failed, at most {@code timeout}. Then close the
+     * application's producer, while the proxies are still there for its last requests.
+     * A transactional producer is not flushed: its sends were flushed when their transaction
+     * committed, and flush() outside a transaction is refused.
+     *
+     * @return true if nothing was left in flight
+     */
+    public boolean drain(Duration timeout) throws InterruptedException {
+        accepting = false;
+        long deadline = System.nanoTime() + timeout.toNanos();
+        Thread flusher = null;
+        if (!kafkaTemplate.isTransactional()) {
+            // flush() waits for every record without a bound; the deadline is kept here instead
+            flusher = Thread.ofVirtual().name("producer-flush").start(() -> {
+                try {
+                    kafkaTemplate.flush();
+                } catch (RuntimeException e) {
+                    log.warn("[PRODUCER] Flushing the producer on shutdown failed: {}", e.getMessage(), e);
+                }
+            });
+        }
+        int pending;
+        while ((pending = inFlight.get()) > 0 && System.nanoTime() - deadline < 0) {
+            Thread.sleep(5);
+        }
+        if (flusher != null) {
+            flusher.join(Duration.ofNanos(Math.max(0, deadline - System.nanoTime())));
+        }
+        ProducerFactory<String, OrderEvent> factory = kafkaTemplate.getProducerFactory();
+        if (pending > 0) {
+            log.warn("[PRODUCER] {} sends still in flight after {} ms; closing the producer fails them",
+                    pending, timeout.toMillis());
+            // they were never acked, so nothing acknowledged is lost by not waiting for them again
+            if (factory instanceof DefaultKafkaProducerFactory<String, OrderEvent> f) {
+                f.setPhysicalCloseTimeout(0);
+            }
+        }
+        factory.reset();
+        return pending == 0;
+    }
+
+    /** Early rejection for batches; each send checks the gate again in {@link #instrumentedSend}. */
+    private void checkAccepting() {
+        if (!accepting) {
+            throw new RejectedExecutionException("shutting down, no new sends");
+        }
+    }
+
+    @PreDestroy
+    void shutdownExecutors() {
+        batchWorker.shutdownNow();
+        if (callbackExecutor != null) {
+            // pending callbacks only log; their sends have already completed
+            callbackExecutor.shutdown();
+        }
+    }
+
+    /**
+     * send() plus in-flight and latency accounting, for both the single and the batch path.
+     * Stamps the record with its {@link ProduceTimestamp} right before handing it over.
+     * A transactional template outside a transaction gets a transaction of its own; that call
+     * returns once the transaction is committed. Also used by the {@link LoadGenerator}.
+     *
+     * @throws RejectedExecutionException once {@link #drain} has started
+     */
+    CompletableFuture<SendResult<String, OrderEvent>> instrumentedSend(
+            KafkaTemplate<String, OrderEvent> template, String key, OrderEvent payload) {
+        // counted before the gate is checked: drain() closes the gate before it reads the count,
+        // so a send either sees the gate closed or is waited for
+        inFlight.incrementAndGet();
+        if (!accepting) {
+            inFlight.decrementAndGet();
+            throw new RejectedExecutionException("shutting down, no new sends");
+        }
+        long start = System.nanoTime();
+        long produceTs = ProduceTimestamp.now();
+        SendTracker.Send tracked = (sends != null && key != null) ? sends.started(key, start) : null;
+        boolean journaled = journal.isEnabled() && key != null;
+        long keyHash = journaled ? SeenKeyIndex.hash(key) : 0;
+        int keyCheck = journaled ? key.hashCode() : 0;
+        if (journaled) {
+            journal.sent(keyHash, keyCheck, produceTs);
+        }
+        CompletableFuture<SendResult<String, OrderEvent>> cf;
+        try {
+            // unlike the serialized key and value, the record, its header and the header bytes are
+            // allocated per send: SendResult and producer listeners still hold them after send()
+            List<Header> headers = List.of(new RecordHeader(ProduceTimestamp.HEADER,
+                    ProduceTimestamp.encode(produceTs)));
+            ProducerRecord<String, OrderEvent> record = new ProducerRecord<>(topic, null, null, key, payload, headers);
+            if (template.isTransactional() && !template.inTransaction()) {
+                cf = template.executeInTransaction(t -> adaptToCompletable(t.send(record)));
+            } else {
+                cf = adaptToCompletable(template.send(record));
+            }
+        } catch (RuntimeException e) {
+            inFlight.decrementAndGet();
+            failureTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (journaled) {
+                journal.failed(keyHash, keyCheck, produceTs, SendJournal.errorCode(e));
+            }
+            throw e;
+        }
+        return cf.whenComplete((result, ex) -> {
+            inFlight.decrementAndGet();
+            (ex == null ? ackTimer : failureTimer).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (ex == null && result != null && result.getRecordMetadata() != null) {
+                int partition = result.getRecordMetadata().partition();
+                long offset = result.getRecordMetadata().offset();
+                latency.acked(partition, offset);
+                if (tracked != null) {
+                    tracked.acked(partition, offset, System.nanoTime());
+                }
+                if (journaled) {
+                    journal.acked(keyHash, keyCheck, produceTs, partition, offset);
+                }
+            } else if (ex != null && journaled) {
+                journal.failed(keyHash, keyCheck, produceTs, SendJournal.errorCode(ex));
             }
         });
+    }
 
-        return id;
+    /** The tracked send of {@code key}, null if tracking is off or it is no longer (or never was) tracked. */
+    SendTracker.Send trackedSend(String key) {
+        return (sends != null) ? sends.get(key) : null;
+    }
+
+    long trackedSends() {
+        return (sends != null) ? sends.size() : 0;
+    }
+
+    /** Sends forgotten before their duplicates could be looked up (older than the TTL, or over max-sends). */
+    long evictedSends() {
+        return (sends != null) ? sends.evicted() : 0;
     }
 
     @SuppressWarnings("unchecked")
-    private CompletableFuture<SendResult<String, String>> adaptToCompletable(Object rawFuture) {
+    private CompletableFuture<SendResult<String, OrderEvent>> adaptToCompletable(Object rawFuture) {
         if (rawFuture == null) {
             return CompletableFuture.failedFuture(new IllegalStateException("kafkaTemplate.send returned null"));
         }
 
         // Case 1: Spring-Kafka 3.1+ where send(...) returns CompletableFuture<SendResult<...>>
         if (rawFuture instanceof CompletableFuture<?> cfAny) {
-            return (CompletableFuture<SendResult<String, String>>) cfAny;
+            return (CompletableFuture<SendResult<String, OrderEvent>>) cfAny;
         }
 
         // Case 2: older Spring-Kafka returning ListenableFuture<SendResult<...>>
         if (rawFuture instanceof ListenableFuture<?> lfAny) {
-            return toCompletableFuture((ListenableFuture<SendResult<String, String>>) lfAny);
+            return toCompletableFuture((ListenableFuture<SendResult<String, OrderEvent>>) lfAny);
         }
 
         // Unknown future type — attempt to wrap defensively
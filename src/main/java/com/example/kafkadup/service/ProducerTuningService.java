@@ -0,0 +1,130 @@
+package com.example.kafkadup.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.example.kafkadup.config.KafkaConfig;
+import com.example.kafkadup.config.ProducerTuning;
+import com.example.kafkadup.config.ProxyRegistry;
+import com.example.kafkadup.serde.OrderEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Compression and batching of the application's producer ({@link ProducerTuning}), and sweeps
+ * over the configured matrix of tunings.
+ * <p>
+ * Switching updates the application's producer factory and resets it: the current producer is
+ * closed once its in-flight sends complete, and the next send creates one with the new settings.
+ * A sweep gives every tuning its own producer and the same batch run, and counts the bytes the
+ * proxies forward to the brokers meanwhile, so it should not overlap with other traffic.
+ */
+@Service
+public class ProducerTuningService {
+    private static final int WARMUP_RECORDS = 100;
+
+    private final Logger log = LoggerFactory.getLogger(ProducerTuningService.class);
+
+    private final DefaultKafkaProducerFactory<String, OrderEvent> producerFactory;
+    private final KafkaConfig kafkaConfig;
+    private final ProducerService producer;
+    private final ProxyRegistry proxies;
+    private final List<ProducerTuning> matrix;
+    private final ReentrantLock sweeping = new ReentrantLock();
+    private volatile ProducerTuning active;
+
+    public ProducerTuningService(DefaultKafkaProducerFactory<String, OrderEvent> producerFactory,
+                                 KafkaConfig kafkaConfig, ProducerService producer, ProxyRegistry proxies,
+                                 @Value("${app.producer.tuning.compression:none,lz4,zstd}") List<String> compressions,
+                                 @Value("${app.producer.tuning.linger-ms:0,5,20}") List<Integer> lingersMs,
+                                 @Value("${app.producer.tuning.batch-size:16384,262144}") List<Integer> batchSizes) {
+        this.producerFactory = producerFactory;
+        this.kafkaConfig = kafkaConfig;
+        this.producer = producer;
+        this.proxies = proxies;
+        this.matrix = List.copyOf(ProducerTuning.matrix(compressions, lingersMs, batchSizes,
+                kafkaConfig.producerBufferMemory()));
+        this.active = kafkaConfig.producerTuning();
+    }
+
+    public List<ProducerTuning> matrix() {
+        return matrix;
+    }
+
+    /** The application producer's tuning, null for Kafka's defaults. */
+    public ProducerTuning active() {
+        return active;
+    }
+
+    /** A tuning by name, in or outside the matrix. */
+    public ProducerTuning parse(String name) {
+        return ProducerTuning.parse(name, kafkaConfig.producerBufferMemory());
+    }
+
+    /** Rebuild the application's producer with {@code tuning}; null goes back to Kafka's defaults. */
+    public synchronized void activate(ProducerTuning tuning) {
+        for (String key : ProducerTuning.CONFIG_KEYS) {
+            producerFactory.removeConfig(key);
+        }
+        if (tuning != null) {
+            Map<String, Object> configs = new HashMap<>();
+            tuning.apply(configs);
+            producerFactory.updateConfigs(configs);
+        }
+        producerFactory.reset();
+        active = tuning;
+        log.info("[TUNING] Application producer now uses {}", (tuning != null) ? tuning.name() : "Kafka defaults");
+    }
+
+    /**
+     * Run the same batch with each tuning in turn (the whole matrix if none are given).
+     *
+     * @throws IllegalStateException if a sweep is already running
+     */
+    public List<TuningSweepResult> sweep(List<ProducerTuning> tunings, int count, int payloadSize, int rate)
+            throws InterruptedException, ExecutionException {
+        if (!sweeping.tryLock()) {
+            throw new IllegalStateException("a sweep is already running");
+        }
+        try {
+            List<TuningSweepResult> results = new ArrayList<>();
+            for (ProducerTuning tuning : (tunings == null || tunings.isEmpty()) ? matrix : tunings) {
+                results.add(runTuning(tuning, count, payloadSize, rate));
+            }
+            return results;
+        } finally {
+            sweeping.unlock();
+        }
+    }
+
+    private TuningSweepResult runTuning(ProducerTuning tuning, int count, int payloadSize, int rate)
+            throws InterruptedException, ExecutionException {
+        DefaultKafkaProducerFactory<String, OrderEvent> factory =
+                kafkaConfig.newProducerFactory(kafkaConfig.producerProfile(), tuning);
+        KafkaTemplate<String, OrderEvent> template = new KafkaTemplate<>(factory);
+        String keyPattern = "sweep-" + tuning.name() + "-{run}-{seq}";
+        try {
+            // connect to every leader and fetch metadata first, so the measured run is only produce traffic
+            producer.sendBatch(new BatchSendRequest(WARMUP_RECORDS, keyPattern, payloadSize, 0, null, null), template);
+            long wireBefore = proxies.getBytesToBroker();
+            BatchSendResult send = producer.sendBatch(
+                    new BatchSendRequest(count, keyPattern, payloadSize, rate, null, null), template);
+            long wire = proxies.getBytesToBroker() - wireBefore;
+            TuningSweepResult result = new TuningSweepResult(tuning.name(), send, wire,
+                    (send.acked() > 0) ? (double) wire / send.acked() : 0,
+                    (wire > 0) ? (double) send.payloadBytes() / wire : 0);
+            log.info("[TUNING] Sweep {}: {}", tuning.name(), result);
+            return result;
+        } finally {
+            factory.destroy();
+        }
+    }
+}
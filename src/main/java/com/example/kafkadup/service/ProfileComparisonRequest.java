@@ -0,0 +1,47 @@
+package com.example.kafkadup.service;
+
+import java.util.List;
+
+import com.example.kafkadup.config.ProducerProfile;
+import com.example.kafkadup.config.TcpProxy;
+
+/**
+ * Parameters for {@link ProfileComparisonService#compare(ProfileComparisonRequest)}. Every profile
+ * sends the same records at the same rate, and ACKs are held back by the proxy for the same window.
+ *
+ * @param count        records per profile
+ * @param payloadSize  minimum value size in bytes
+ * @param rate         records per second; should be low enough that sending outlasts the block window
+ * @param blockAfterMs time after the start of each run at which the proxy blocks ACKs
+ * @param blockMs      how long ACKs stay blocked; must exceed request.timeout.ms to force retries
+ * @param blockMode    how the proxy blocks
+ * @param profiles     profiles to run, in order
+ */
+public record ProfileComparisonRequest(
+        int count,
+        int payloadSize,
+        int rate,
+        long blockAfterMs,
+        long blockMs,
+        TcpProxy.BlockMode blockMode,
+        List<ProducerProfile> profiles) {
+
+    public ProfileComparisonRequest {
+        if (count <= 0) {
+            throw new IllegalArgumentException("count must be > 0");
+        }
+        if (payloadSize < 0 || rate < 0) {
+            throw new IllegalArgumentException("payloadSize and rate must be >= 0");
+        }
+        if (blockAfterMs < 0 || blockMs < 0) {
+            throw new IllegalArgumentException("blockAfterMs and blockMs must be >= 0");
+        }
+        if (blockMode == null) {
+            blockMode = TcpProxy.BlockMode.PAUSE;
+        }
+        if (profiles == null || profiles.isEmpty()) {
+            profiles = List.of(ProducerProfile.values());
+        }
+        profiles = List.copyOf(profiles);
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.kafkadup.service;
+
+import com.example.kafkadup.config.ProducerProfile;
+
+/**
+ * Outcome of one profile in a comparison run.
+ *
+ * @param send              throughput and send()-to-ack latency of the run
+ * @param duplicateKeys     keys of this run the consumer saw at more than one offset
+ * @param duplicateRecords  extra copies beyond the first, over all those keys
+ * @param consumerCaughtUp  false if the consumer had not read the run's records when counting stopped,
+ *                          in which case the duplicate counts are a lower bound
+ */
+public record ProfileComparisonResult(
+        ProducerProfile profile,
+        BatchSendResult send,
+        long duplicateKeys,
+        long duplicateRecords,
+        boolean consumerCaughtUp) {
+}
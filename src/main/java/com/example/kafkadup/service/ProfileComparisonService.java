@@ -0,0 +1,143 @@
+package com.example.kafkadup.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.example.kafkadup.config.KafkaConfig;
+import com.example.kafkadup.config.ProducerProfile;
+import com.example.kafkadup.config.ProxyRegistry;
+import com.example.kafkadup.serde.OrderEvent;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Runs the ACK-loss scenario once per {@link ProducerProfile}: send at a fixed rate, block ACKs
+ * of every broker in the proxies for a while in the middle of the run, unblock, then let the duplicate-detecting
+ * consumer count what ended up in the topic. Each profile gets its own producer and its own key
+ * prefix, so the runs do not see each other's records.
+ */
+@Service
+public class ProfileComparisonService {
+    private final Logger log = LoggerFactory.getLogger(ProfileComparisonService.class);
+
+    private final ProducerService producer;
+    private final KafkaConfig kafkaConfig;
+    private final ProxyRegistry proxies;
+    private final DuplicateDetector duplicateDetector;
+    private final ReentrantLock running = new ReentrantLock();
+    private final ScheduledExecutorService blocker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "comparison-blocker");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // how long to wait for the consumer to read a run's records, and how long it must then stay quiet
+    @Value("${app.producer.compare.consumer-wait-ms:30000}")
+    private long consumerWaitMs;
+
+    @Value("${app.producer.compare.consumer-quiet-ms:1000}")
+    private long consumerQuietMs;
+
+    public ProfileComparisonService(ProducerService producer, KafkaConfig kafkaConfig, ProxyRegistry proxies,
+                                    DuplicateDetector duplicateDetector) {
+        this.producer = producer;
+        this.kafkaConfig = kafkaConfig;
+        this.proxies = proxies;
+        this.duplicateDetector = duplicateDetector;
+    }
+
+    /**
+     * Run every requested profile in turn. Only one comparison runs at a time, since they all
+     * share the proxies' block switches.
+     */
+    public List<ProfileComparisonResult> compare(ProfileComparisonRequest request)
+            throws InterruptedException, ExecutionException {
+        if (!running.tryLock()) {
+            throw new IllegalStateException("a comparison is already running");
+        }
+        try {
+            List<ProfileComparisonResult> results = new ArrayList<>();
+            for (ProducerProfile profile : request.profiles()) {
+                results.add(runProfile(profile, request));
+            }
+            return results;
+        } finally {
+            running.unlock();
+        }
+    }
+
+    private ProfileComparisonResult runProfile(ProducerProfile profile, ProfileComparisonRequest request)
+            throws InterruptedException, ExecutionException {
+        String keyPattern = "cmp-" + profile.slug() + "-{run}-{seq}";
+        BatchSendRequest send = new BatchSendRequest(request.count(), keyPattern, request.payloadSize(),
+                request.rate(), null, null);
+        DefaultKafkaProducerFactory<String, OrderEvent> factory = kafkaConfig.newProducerFactory(profile);
+        long recordsBefore = duplicateDetector.recordsSeen();
+        log.info("[COMPARE] profile={} starting: {} records at {}/s, ACKs blocked ({}) from {} ms for {} ms",
+                profile, request.count(), request.rate(), request.blockMode(), request.blockAfterMs(), request.blockMs());
+
+        proxies.setBlockUpstream(null, false);
+        ScheduledFuture<?> block = blocker.schedule(() -> proxies.setBlockUpstream(null, true, request.blockMode()),
+                request.blockAfterMs(), TimeUnit.MILLISECONDS);
+        ScheduledFuture<?> unblock = blocker.schedule(() -> proxies.setBlockUpstream(null, false),
+                request.blockAfterMs() + request.blockMs(), TimeUnit.MILLISECONDS);
+        BatchSendResult result;
+        try {
+            result = producer.sendBatch(send, new KafkaTemplate<>(factory));
+        } finally {
+            block.cancel(false);
+            unblock.cancel(false);
+            proxies.setBlockUpstream(null, false);
+            factory.destroy();
+        }
+
+        boolean caughtUp = awaitConsumer(recordsBefore + result.acked());
+        String prefix = "cmp-" + profile.slug() + "-" + result.runId() + "-";
+        List<DuplicateKeyReport> duplicates = duplicateDetector.reports(prefix);
+        long extraCopies = 0;
+        for (DuplicateKeyReport report : duplicates) {
+            extraCopies += report.occurrences().size() - 1;
+        }
+        ProfileComparisonResult outcome = new ProfileComparisonResult(profile, result, duplicates.size(),
+                extraCopies, caughtUp);
+        log.info("[COMPARE] profile={} finished: {}", profile, outcome);
+        return outcome;
+    }
+
+    /**
+     * Wait until the consumer has seen at least {@code target} records in total and then nothing
+     * new for {@code consumer-quiet-ms}, so retried copies written late are counted too.
+     */
+    private boolean awaitConsumer(long target) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + consumerWaitMs;
+        long last = duplicateDetector.recordsSeen();
+        long quietSince = System.currentTimeMillis();
+        while (System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(100);
+            long seen = duplicateDetector.recordsSeen();
+            if (seen != last) {
+                last = seen;
+                quietSince = System.currentTimeMillis();
+            } else if (seen >= target && System.currentTimeMillis() - quietSince >= consumerQuietMs) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        blocker.shutdownNow();
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.kafkadup.service;
+
+import java.util.List;
+
+import com.example.kafkadup.config.UnansweredProduce;
+
+/**
+ * One duplicated key joined with its send: which of its writes the producer was acked for, and
+ * the Produce requests to the partition leader that went unanswered while it was being sent.
+ *
+ * @param sends                 times the application sent the key (each has its own ack)
+ * @param firstSendEpochMillis  when the key was first handed to the producer
+ * @param ackMillis             first send to the latest ack, -1 if not acked (yet)
+ * @param leaderNodeId          current leader of the partition, -1 if unknown
+ * @param retryWrites           writes no ack was returned for: each one is a producer retry whose
+ *                              earlier attempt had been written
+ * @param minAttempts           {@code sends + retryWrites}: the producer made at least this many attempts
+ * @param writes                every offset the consumer saw the key at, by partition and offset
+ * @param unansweredRequests    Produce requests to the leader sent between the first send and the
+ *                              latest ack that got no response; none if the leader is unknown. A
+ *                              request carries batches of many keys, so some of these may belong to
+ *                              other keys' sends.
+ * @param writesMatched         true if there are exactly as many unanswered requests as retry writes,
+ *                              in which case each retry write is paired with one, in order
+ */
+public record RetryCorrelation(
+        String key,
+        int sends,
+        long firstSendEpochMillis,
+        long ackMillis,
+        int leaderNodeId,
+        int retryWrites,
+        int minAttempts,
+        List<Write> writes,
+        List<UnansweredProduce> unansweredRequests,
+        boolean writesMatched) {
+
+    /**
+     * @param acked   true if this is the offset a send was acked with
+     * @param request the unanswered request that most likely wrote it, if {@code writesMatched}
+     */
+    public record Write(int partition, long offset, boolean acked, UnansweredProduce request) {
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.kafkadup.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.example.kafkadup.config.ProxyRegistry;
+import com.example.kafkadup.config.UnansweredProduce;
+import com.example.kafkadup.serde.OrderEvent;
+import com.example.kafkadup.serde.ProduceTimestamp;
+import org.apache.kafka.common.PartitionInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Joins the duplicates the consumer found with the sends that produced them and the Produce
+ * requests the proxies saw go unanswered.
+ * <p>
+ * The Kafka producer does not tell how many attempts a record took, only whether it was acked
+ * in the end. Every write of a key that no send was acked for is therefore counted as a retry
+ * whose earlier attempt the broker had written; the proxies' unanswered requests to the leader
+ * in the same time window are the candidates for those attempts.
+ */
+@Service
+public class RetryCorrelationService {
+    private final Logger log = LoggerFactory.getLogger(RetryCorrelationService.class);
+
+    private final ProducerService producer;
+    private final DuplicateDetector duplicateDetector;
+    private final ProxyRegistry proxies;
+    private final KafkaTemplate<String, OrderEvent> kafkaTemplate;
+
+    @Value("${app.topic:order.created}")
+    private String topic;
+
+    public RetryCorrelationService(ProducerService producer, DuplicateDetector duplicateDetector,
+                                   ProxyRegistry proxies, KafkaTemplate<String, OrderEvent> kafkaTemplate) {
+        this.producer = producer;
+        this.duplicateDetector = duplicateDetector;
+        this.proxies = proxies;
+        this.kafkaTemplate = kafkaTemplate;
+    }
+
+    /** Up to {@code limit} tracked duplicate keys with their writes and candidate requests. */
+    public RetryCorrelationSummary correlate(int limit) {
+        List<UnansweredProduce> unanswered = new ArrayList<>(proxies.getUnansweredProduce());
+        unanswered.removeIf(u -> u.reason() == UnansweredProduce.Reason.SKIPPED);
+        unanswered.sort(Comparator.comparingLong(UnansweredProduce::sentNanos));
+        Map<Integer, Integer> leaders = leaders();
+
+        List<DuplicateKeyReport> duplicates = duplicateDetector.reports("");
+        List<RetryCorrelation> correlations = new ArrayList<>();
+        int untracked = 0;
+        for (DuplicateKeyReport report : duplicates) {
+            SendTracker.Send send = producer.trackedSend(report.key());
+            if (send == null) {
+                untracked++;
+            } else if (correlations.size() < limit) {
+                // a key always maps to the same partition, so all its writes went to one leader
+                int partition = report.occurrences().get(0).partition();
+                correlations.add(correlate(report, send, leaders.getOrDefault(partition, -1), unanswered));
+            }
+        }
+        return new RetryCorrelationSummary(producer.trackedSends(), producer.evictedSends(),
+                unanswered.size(), duplicates.size(), untracked, correlations);
+    }
+
+    /**
+     * @param leader     node id of the partition's leader, -1 if unknown: requests then cannot be
+     *                   attributed, and none are taken as candidates
+     * @param unanswered ordered by {@link UnansweredProduce#sentNanos()}
+     */
+    static RetryCorrelation correlate(DuplicateKeyReport report, SendTracker.Send send, int leader,
+                                      List<UnansweredProduce> unanswered) {
+        List<DuplicateKeyReport.Occurrence> occurrences = new ArrayList<>(report.occurrences());
+        occurrences.sort(Comparator.comparingInt(DuplicateKeyReport.Occurrence::partition)
+                .thenComparingLong(DuplicateKeyReport.Occurrence::offset));
+        List<DuplicateKeyReport.Occurrence> retries = new ArrayList<>();
+        for (DuplicateKeyReport.Occurrence o : occurrences) {
+            if (!send.isAcked(o.partition(), o.offset())) {
+                retries.add(o);
+            }
+        }
+
+        long lastAck = send.lastAckNanos();
+        long until = (lastAck != 0) ? lastAck : System.nanoTime();
+        List<UnansweredProduce> candidates = new ArrayList<>();
+        // unanswered requests to a broker whose id is not known yet carry -1 as well
+        if (leader >= 0) {
+            for (UnansweredProduce u : unanswered) {
+                if (u.nodeId() == leader && u.sentNanos() >= send.firstSendNanos && u.sentNanos() <= until) {
+                    candidates.add(u);
+                }
+            }
+        }
+
+        // retries append after the attempt they repeat, so earlier requests wrote lower offsets
+        boolean matched = !retries.isEmpty() && candidates.size() == retries.size();
+        List<RetryCorrelation.Write> writes = new ArrayList<>(occurrences.size());
+        for (DuplicateKeyReport.Occurrence o : occurrences) {
+            int retry = retries.indexOf(o);
+            writes.add(new RetryCorrelation.Write(o.partition(), o.offset(), retry < 0,
+                    (matched && retry >= 0) ? candidates.get(retry) : null));
+        }
+        int sends = send.sends.get();
+        return new RetryCorrelation(report.key(), sends,
+                ProduceTimestamp.fromNanoTime(send.firstSendNanos) / 1_000_000,
+                (lastAck != 0) ? (lastAck - send.firstSendNanos) / 1_000_000 : -1,
+                leader, retries.size(), sends + retries.size(), writes, candidates, matched);
+    }
+
+    private Map<Integer, Integer> leaders() {
+        Map<Integer, Integer> leaders = new HashMap<>();
+        try {
+            for (PartitionInfo p : kafkaTemplate.partitionsFor(topic)) {
+                if (p.leader() != null) {
+                    leaders.put(p.partition(), p.leader().id());
+                }
+            }
+        } catch (RuntimeException e) {
+            // e.g. metadata timed out while a broker is blocked; requests then cannot be attributed
+            log.warn("[RETRIES] Could not fetch the leaders of {}: {}", topic, e.getMessage());
+        }
+        return leaders;
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.kafkadup.service;
+
+import java.util.List;
+
+/**
+ * Snapshot returned by {@code GET /duplicates/retries}.
+ *
+ * @param trackedSends       sends the producer currently remembers by key
+ * @param evictedSends       sends forgotten by age or count; their duplicates show up as untracked
+ * @param unansweredProduce  unanswered Produce requests currently kept by the proxies
+ * @param untrackedKeys      duplicate keys among those looked at whose send is not tracked
+ * @param correlations       tracked duplicate keys, at most the requested limit
+ */
+public record RetryCorrelationSummary(
+        long trackedSends,
+        long evictedSends,
+        int unansweredProduce,
+        int duplicateKeys,
+        int untrackedKeys,
+        List<RetryCorrelation> correlations) {
+}
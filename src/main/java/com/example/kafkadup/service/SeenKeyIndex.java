@@ -0,0 +1,131 @@
+package com.example.kafkadup.service;
+
+/**
+ * Bounded set of seen keys for duplicate detection, stored in primitive arrays only.
+ * <p>
+ * A key is represented by a 64-bit hash plus an independent 32-bit check hash (both must
+ * match for a hit, which makes false positives negligible), together with the partition and
+ * offset where it was first seen. Nothing per key lives on the heap as an object.
+ * <p>
+ * Memory is bounded by generations: when the current table reaches its capacity it becomes
+ * the previous one and the old previous table is dropped. Keys are therefore remembered for
+ * at least {@code capacity} and at most {@code 2 * capacity} distinct keys. Not thread-safe.
+ */
+class SeenKeyIndex {
+    static final long NOT_SEEN = -1L;
+    /** A table has up to twice as many slots, rounded up to a power of two, and arrays stop at 2^31 - 1. */
+    static final int MAX_CAPACITY = 1 << 29;
+
+    private final int capacity;
+    private Table current;
+    private Table previous;
+    private long evictedKeys;
+
+    SeenKeyIndex(int capacity) {
+        if (capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("capacity must be 1.." + MAX_CAPACITY + ", was " + capacity);
+        }
+        this.capacity = capacity;
+        this.current = new Table(capacity);
+    }
+
+    /**
+     * Record {@code position} for the key if it is new.
+     *
+     * @return the position the key was first seen at, or {@link #NOT_SEEN}
+     */
+    long putIfAbsent(long hash, int check, long position) {
+        if (hash == 0) {
+            hash = 1; // 0 marks an empty slot
+        }
+        long seen = current.get(hash, check);
+        if (seen != NOT_SEEN) {
+            return seen;
+        }
+        if (previous != null) {
+            seen = previous.get(hash, check);
+            if (seen != NOT_SEEN) {
+                return seen;
+            }
+        }
+        if (current.size >= capacity) {
+            evictedKeys += (previous != null) ? previous.size : 0;
+            previous = current;
+            current = new Table(capacity);
+        }
+        current.put(hash, check, position);
+        return NOT_SEEN;
+    }
+
+    long size() {
+        return current.size + (previous != null ? previous.size : 0);
+    }
+
+    long evictedKeys() {
+        return evictedKeys;
+    }
+
+    static long position(int partition, long offset) {
+        return ((long) partition << 48) | (offset & 0xFFFF_FFFF_FFFFL);
+    }
+
+    static int partition(long position) {
+        return (int) (position >>> 48);
+    }
+
+    static long offset(long position) {
+        return position & 0xFFFF_FFFF_FFFFL;
+    }
+
+    /** 64-bit FNV-1a over the chars, finished with the MurmurHash3 fmix64 step. */
+    static long hash(CharSequence key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0, n = key.length(); i < n; i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /** Open addressing with linear probing, kept at most half full. */
+    private static final class Table {
+        final long[] hashes;
+        final int[] checks;
+        final long[] positions;
+        final int mask;
+        int size;
+
+        Table(int capacity) {
+            int slots = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) << 1;
+            hashes = new long[slots];
+            checks = new int[slots];
+            positions = new long[slots];
+            mask = slots - 1;
+        }
+
+        long get(long hash, int check) {
+            for (int i = (int) hash & mask; hashes[i] != 0; i = (i + 1) & mask) {
+                if (hashes[i] == hash && checks[i] == check) {
+                    return positions[i];
+                }
+            }
+            return NOT_SEEN;
+        }
+
+        void put(long hash, int check, long position) {
+            int i = (int) hash & mask;
+            while (hashes[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            hashes[i] = hash;
+            checks[i] = check;
+            positions[i] = position;
+            size++;
+        }
+    }
+}
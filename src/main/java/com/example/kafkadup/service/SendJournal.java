@@ -0,0 +1,248 @@
+package com.example.kafkadup.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import com.example.kafkadup.serde.ProduceTimestamp;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.common.errors.ApiException;
+import org.apache.kafka.common.protocol.Errors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Append-only binary journal of every send and its outcome, for analysis after a run with
+ * {@link SendJournalReader}. Off unless {@code app.journal.enabled=true}.
+ * <p>
+ * Entries have a fixed size and go into memory-mapped segment files of
+ * {@code app.journal.segment-entries} entries each. A writer claims a slot with one atomic
+ * increment and fills it with absolute puts, so appending allocates nothing and needs no lock;
+ * only rolling to the next segment does. The entry type is written last with release semantics,
+ * so a reader that sees it also sees the rest of the entry. Slots claimed but not yet written
+ * (or never, after a crash) read as type 0 and are skipped.
+ * <p>
+ * Entries reach the page cache at once and so survive the process; the OS writes them back,
+ * and the last segment is forced to disk on close (forcing on every roll would stall whichever
+ * writer, possibly the producer's I/O thread, filled the segment). The oldest segments are
+ * deleted beyond {@code app.journal.max-segments}.
+ */
+@Component
+public class SendJournal {
+    static final int MAGIC = 0x44555053; // "DUPS"
+    static final short VERSION = 1;
+    /** magic(4) version(2) entry size(2) created epoch millis(8) */
+    static final int HEADER_BYTES = 16;
+    /** key hash(8) send ts(8) event ts(8) offset(8) partition(4) key check(4) error code(4) type(4) */
+    static final int ENTRY_BYTES = 48;
+    static final int KEY_HASH = 0;
+    static final int SEND_TS = 8;
+    static final int EVENT_TS = 16;
+    static final int OFFSET = 24;
+    static final int PARTITION = 32;
+    static final int KEY_CHECK = 36;
+    static final int ERROR_CODE = 40;
+    static final int TYPE = 44;
+
+    static final int SENT = 1;
+    static final int ACKED = 2;
+    static final int FAILED = 3;
+
+    static final String SEGMENT_PREFIX = "sends-";
+    static final String SEGMENT_SUFFIX = ".journal";
+
+    static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private final Logger log = LoggerFactory.getLogger(SendJournal.class);
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentEntries;
+    private final int maxSegments;
+    private final Deque<Path> segments = new ArrayDeque<>();
+    private final LongAdder dropped = new LongAdder();
+    private volatile Segment current;
+    private long nextSegment;
+    private boolean closed;
+
+    /** One mapped segment file; {@code next} hands out its slots. */
+    private static final class Segment {
+        final FileChannel channel;
+        final MappedByteBuffer buf;
+        final int capacity;
+        final AtomicInteger next = new AtomicInteger();
+
+        Segment(Path path, int capacity) throws IOException {
+            this.capacity = capacity;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            // the file is sized up front; pages are only backed once written
+            this.buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) capacity * ENTRY_BYTES);
+            buf.putInt(0, MAGIC);
+            buf.putShort(4, VERSION);
+            buf.putShort(6, (short) ENTRY_BYTES);
+            buf.putLong(8, System.currentTimeMillis());
+        }
+
+        /** The mapping stays valid after the channel is closed, for writers still filling their slots. */
+        void close(boolean force) {
+            if (force) {
+                buf.force();
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    public SendJournal(@Value("${app.journal.enabled:false}") boolean enabled,
+                       @Value("${app.journal.dir:${java.io.tmpdir}/dup-journal}") String directory,
+                       @Value("${app.journal.segment-entries:1000000}") int segmentEntries,
+                       @Value("${app.journal.max-segments:20}") int maxSegments) throws IOException {
+        this.enabled = enabled;
+        this.directory = (directory != null) ? Path.of(directory) : null;
+        // a segment is one mapping, so it must stay under 2 GB
+        this.segmentEntries = Math.max(1, Math.min(segmentEntries, (Integer.MAX_VALUE - HEADER_BYTES) / ENTRY_BYTES));
+        this.maxSegments = maxSegments;
+        if (enabled) {
+            Files.createDirectories(this.directory);
+            // a restart continues the numbering, so older runs age out under the same limit
+            for (Path p : segmentFiles(this.directory)) {
+                segments.add(p);
+                nextSegment = Math.max(nextSegment, segmentNumber(p) + 1);
+            }
+            current = openSegment();
+            log.info("[JOURNAL] Writing sends to {} ({} entries of {} bytes per segment)",
+                    this.directory, this.segmentEntries, ENTRY_BYTES);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Path directory() {
+        return directory;
+    }
+
+    /** Entries lost because the journal was closed or a segment could not be created. */
+    public long droppedEntries() {
+        return dropped.sum();
+    }
+
+    /** {@code key} was handed to the producer at {@code sendTs} (epoch nanos, see {@link ProduceTimestamp}). */
+    public void sent(long keyHash, int keyCheck, long sendTs) {
+        append(SENT, keyHash, keyCheck, sendTs, sendTs, -1, -1L, 0);
+    }
+
+    public void acked(long keyHash, int keyCheck, long sendTs, int partition, long offset) {
+        append(ACKED, keyHash, keyCheck, sendTs, ProduceTimestamp.now(), partition, offset, 0);
+    }
+
+    /** @param errorCode Kafka error code of the failure, see {@link #errorCode} */
+    public void failed(long keyHash, int keyCheck, long sendTs, short errorCode) {
+        append(FAILED, keyHash, keyCheck, sendTs, ProduceTimestamp.now(), -1, -1L, errorCode);
+    }
+
+    private void append(int type, long keyHash, int keyCheck, long sendTs, long eventTs,
+                        int partition, long offset, int errorCode) {
+        Segment s = current;
+        while (s != null) {
+            int slot = s.next.getAndIncrement();
+            if (slot < s.capacity) {
+                MappedByteBuffer b = s.buf;
+                int at = HEADER_BYTES + slot * ENTRY_BYTES;
+                b.putLong(at + KEY_HASH, keyHash);
+                b.putLong(at + SEND_TS, sendTs);
+                b.putLong(at + EVENT_TS, eventTs);
+                b.putLong(at + OFFSET, offset);
+                b.putInt(at + PARTITION, partition);
+                b.putInt(at + KEY_CHECK, keyCheck);
+                b.putInt(at + ERROR_CODE, errorCode);
+                INT.setRelease(b, at + TYPE, type);
+                return;
+            }
+            s = roll(s);
+        }
+        dropped.increment();
+    }
+
+    /** Replace the full segment {@code full}, unless another writer already did. */
+    private synchronized Segment roll(Segment full) {
+        if (current != full || closed) {
+            return current;
+        }
+        try {
+            current = openSegment();
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("[JOURNAL] Could not start a new segment in {}, no longer journaling: {}", directory, e.toString());
+            current = null;
+        }
+        full.close(false);
+        return current;
+    }
+
+    private Segment openSegment() throws IOException {
+        Path path = directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, nextSegment++, SEGMENT_SUFFIX));
+        Segment segment = new Segment(path, segmentEntries);
+        segments.add(path);
+        while (maxSegments > 0 && segments.size() > maxSegments) {
+            Files.deleteIfExists(segments.removeFirst());
+        }
+        return segment;
+    }
+
+    /** Segment files of {@code directory}, oldest first. */
+    static List<Path> segmentFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).sorted().toList();
+        }
+    }
+
+    private static long segmentNumber(Path p) {
+        String name = p.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /** The Kafka error code behind a failed send; UNKNOWN_SERVER_ERROR (-1) if it is not a Kafka API error. */
+    public static short errorCode(Throwable ex) {
+        for (Throwable t = ex; t != null; t = (t.getCause() != t) ? t.getCause() : null) {
+            if (t instanceof ApiException) {
+                return Errors.forException(t).code();
+            }
+        }
+        return Errors.UNKNOWN_SERVER_ERROR.code();
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        closed = true;
+        Segment s = current;
+        current = null;
+        if (s != null) {
+            s.close(true);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.kafkadup.service;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+import org.apache.kafka.common.protocol.Errors;
+
+/**
+ * Scans the segments of a {@link SendJournal}, oldest first, in one pass over read-only
+ * mappings: outcome counts, send-to-ack latency, and keys sent or acked more than once. Works
+ * on a live journal too; entries still being written are skipped.
+ * <p>
+ * Also runnable offline: {@code java -jar app.jar journal [dir]} prints the summary as JSON.
+ */
+public final class SendJournalReader {
+    /** Keys per index generation (about 40 MB each), for each of the two repeat counts. */
+    private static final int MAX_INDEX_KEYS = 1_000_000;
+
+    private SendJournalReader() {
+    }
+
+    public static SendJournalSummary read(Path directory) throws IOException {
+        long start = System.nanoTime();
+        List<Path> files = SendJournal.segmentFiles(directory);
+        long capacity = 0;
+        for (Path f : files) {
+            capacity += Math.max(0, (f.toFile().length() - SendJournal.HEADER_BYTES) / SendJournal.ENTRY_BYTES);
+        }
+        int indexKeys = (int) Math.max(1, Math.min(capacity, MAX_INDEX_KEYS));
+        SeenKeyIndex sentKeys = new SeenKeyIndex(indexKeys);
+        SeenKeyIndex ackedKeys = new SeenKeyIndex(indexKeys);
+        Histogram latency = new Histogram(3);
+        Map<String, Long> failuresByError = new TreeMap<>();
+        long entries = 0;
+        long sends = 0;
+        long acks = 0;
+        long failures = 0;
+        long repeatedSends = 0;
+        long repeatedAcks = 0;
+
+        int segments = 0;
+        for (Path f : files) {
+            MappedByteBuffer buf;
+            try (FileChannel ch = FileChannel.open(f, StandardOpenOption.READ)) {
+                buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            } catch (NoSuchFileException e) {
+                continue; // deleted by the writer's retention since it was listed
+            }
+            segments++;
+            if (buf.capacity() < SendJournal.HEADER_BYTES || buf.getInt(0) != SendJournal.MAGIC
+                    || buf.getShort(4) != SendJournal.VERSION || buf.getShort(6) != SendJournal.ENTRY_BYTES) {
+                throw new IOException("not a send journal segment (or another version): " + f);
+            }
+            int slots = (buf.capacity() - SendJournal.HEADER_BYTES) / SendJournal.ENTRY_BYTES;
+            for (int i = 0; i < slots; i++) {
+                int at = SendJournal.HEADER_BYTES + i * SendJournal.ENTRY_BYTES;
+                int type = (int) SendJournal.INT.getAcquire(buf, at + SendJournal.TYPE);
+                if (type == 0) {
+                    continue; // claimed but not written (yet), or never claimed
+                }
+                entries++;
+                long keyHash = buf.getLong(at + SendJournal.KEY_HASH);
+                int keyCheck = buf.getInt(at + SendJournal.KEY_CHECK);
+                switch (type) {
+                    case SendJournal.SENT -> {
+                        sends++;
+                        if (sentKeys.putIfAbsent(keyHash, keyCheck, entries) != SeenKeyIndex.NOT_SEEN) {
+                            repeatedSends++;
+                        }
+                    }
+                    case SendJournal.ACKED -> {
+                        acks++;
+                        long position = SeenKeyIndex.position(buf.getInt(at + SendJournal.PARTITION),
+                                buf.getLong(at + SendJournal.OFFSET));
+                        long first = ackedKeys.putIfAbsent(keyHash, keyCheck, position);
+                        if (first != SeenKeyIndex.NOT_SEEN && first != position) {
+                            repeatedAcks++;
+                        }
+                        long micros = (buf.getLong(at + SendJournal.EVENT_TS) - buf.getLong(at + SendJournal.SEND_TS)) / 1000;
+                        if (micros >= 0) {
+                            latency.recordValue(micros);
+                        }
+                    }
+                    case SendJournal.FAILED -> {
+                        failures++;
+                        Errors error = Errors.forCode((short) buf.getInt(at + SendJournal.ERROR_CODE));
+                        failuresByError.merge(error.name(), 1L, Long::sum);
+                    }
+                    default -> throw new IOException("unknown entry type " + type + " in " + f + " at " + at);
+                }
+            }
+        }
+        return new SendJournalSummary(segments, entries, sends, acks, failures, sends - acks - failures,
+                repeatedSends, repeatedAcks, failuresByError,
+                latency.getValueAtPercentile(50.0), latency.getValueAtPercentile(99.0),
+                latency.getValueAtPercentile(99.9), latency.getMaxValue(),
+                sentKeys.evictedKeys() + ackedKeys.evictedKeys(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /** {@code journal [dir]}; the directory defaults to the one {@code app.journal.dir} defaults to. */
+    public static void main(String[] args) throws IOException {
+        Path dir = Path.of((args.length > 0) ? args[0] : System.getProperty("java.io.tmpdir") + "/dup-journal");
+        System.out.println(new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(read(dir)));
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.kafkadup.service;
+
+import java.util.Map;
+
+/**
+ * What {@link SendJournalReader} found in a journal directory.
+ *
+ * @param unfinished                sends without an ack or failure: still in flight, or the process died
+ *                                  (negative if retention deleted the segments of their sends)
+ * @param repeatedSends             sends of a key the application had sent before
+ * @param repeatedAcks              acks of a key at another partition/offset than its earlier ack;
+ *                                  producer retries that wrote duplicates are not among these, as the
+ *                                  producer acks them once (see {@code GET /duplicates/retries})
+ * @param failuresByError           failed sends by Kafka error name
+ * @param p50Micros                 send-to-ack latency of acked sends
+ * @param evictedKeys               keys the repeat counts forgot, because there were more than the
+ *                                  reader's index holds; the counts are then a lower bound
+ */
+public record SendJournalSummary(
+        int segments,
+        long entries,
+        long sends,
+        long acks,
+        long failures,
+        long unfinished,
+        long repeatedSends,
+        long repeatedAcks,
+        Map<String, Long> failuresByError,
+        long p50Micros,
+        long p99Micros,
+        long p999Micros,
+        long maxMicros,
+        long evictedKeys,
+        long scanMillis) {
+}
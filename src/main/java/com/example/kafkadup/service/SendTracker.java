@@ -0,0 +1,120 @@
+package com.example.kafkadup.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Logical sends by key: when a key was first handed to the producer, how often, and where its ack
+ * put it. Kept long enough to be joined with the duplicates the consumer finds later.
+ * <p>
+ * Entries live in two generations of maps. Once the current one is half the TTL old (or holds half
+ * of {@code maxSends}), it becomes the previous one and the old previous one is dropped whole, so
+ * a send is kept between TTL/2 and TTL and eviction costs nothing per send.
+ */
+final class SendTracker {
+
+    /**
+     * One logical send. Acks arrive on the producer's I/O thread and are read by report threads;
+     * a key the application sent more than once has one ack per send.
+     */
+    static final class Send {
+        final String key;
+        final long firstSendNanos;
+        final AtomicInteger sends = new AtomicInteger(1);
+        private final List<long[]> acks = new ArrayList<>(1);
+        private long lastAckNanos;
+
+        Send(String key, long now) {
+            this.key = key;
+            this.firstSendNanos = now;
+        }
+
+        synchronized void acked(int partition, long offset, long now) {
+            acks.add(new long[] {partition, offset});
+            lastAckNanos = Math.max(lastAckNanos, now);
+        }
+
+        synchronized boolean isAcked(int partition, long offset) {
+            for (long[] a : acks) {
+                if (a[0] == partition && a[1] == offset) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        synchronized int ackCount() {
+            return acks.size();
+        }
+
+        /** {@link System#nanoTime()} of the latest ack, 0 if none yet. */
+        synchronized long lastAckNanos() {
+            return lastAckNanos;
+        }
+    }
+
+    private final long halfTtlNanos;
+    private final int maxPerGeneration;
+    private final LongAdder evicted = new LongAdder();
+    private volatile ConcurrentHashMap<String, Send> current = new ConcurrentHashMap<>();
+    private volatile ConcurrentHashMap<String, Send> previous = new ConcurrentHashMap<>();
+    private volatile long rotateAt;
+
+    SendTracker(long ttlMs, int maxSends) {
+        this.halfTtlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(2, ttlMs)) / 2;
+        this.maxPerGeneration = Math.max(1, maxSends / 2);
+        this.rotateAt = System.nanoTime() + halfTtlNanos;
+    }
+
+    /** The producer was handed {@code key}; a key sent again keeps its first send time. */
+    Send started(String key, long now) {
+        if (now - rotateAt >= 0 || current.size() >= maxPerGeneration) {
+            rotate(now);
+        }
+        Send s = current.get(key);
+        if (s == null) {
+            s = previous.get(key);
+            if (s != null) {
+                current.put(key, s);
+            }
+        }
+        if (s != null) {
+            s.sends.incrementAndGet();
+            return s;
+        }
+        Send fresh = new Send(key, now);
+        s = current.putIfAbsent(key, fresh);
+        if (s != null) {
+            s.sends.incrementAndGet();
+            return s;
+        }
+        return fresh;
+    }
+
+    Send get(String key) {
+        Send s = current.get(key);
+        return (s != null) ? s : previous.get(key);
+    }
+
+    long size() {
+        return current.mappingCount() + previous.mappingCount();
+    }
+
+    long evicted() {
+        return evicted.sum();
+    }
+
+    private synchronized void rotate(long now) {
+        if (now - rotateAt < 0 && current.size() < maxPerGeneration) {
+            return; // another thread rotated first
+        }
+        evicted.add(previous.mappingCount());
+        previous = current;
+        current = new ConcurrentHashMap<>();
+        rotateAt = now + halfTtlNanos;
+    }
+}
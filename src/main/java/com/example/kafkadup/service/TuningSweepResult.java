@@ -0,0 +1,17 @@
+package com.example.kafkadup.service;
+
+/**
+ * Outcome of one tuning in a sweep.
+ *
+ * @param send              throughput and send()-to-ack latency of the run
+ * @param wireBytes         bytes the proxies forwarded to the brokers during the run (requests, headers included)
+ * @param wireBytesPerRecord {@code wireBytes} per acked record
+ * @param compressionRatio  key and value bytes handed to the producer per byte on the wire
+ */
+public record TuningSweepResult(
+        String tuning,
+        BatchSendResult send,
+        long wireBytes,
+        double wireBytesPerRecord,
+        double compressionRatio) {
+}
@@ -0,0 +1,180 @@
+package com.example.kafkadup.config;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.kafka.common.message.MetadataResponseData;
+import org.apache.kafka.common.message.ResponseHeaderData;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.protocol.ByteBufferAccessor;
+import org.apache.kafka.common.requests.RequestUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Request tracking, response capture and rewriting of one proxied connection, driven through
+ * the two scanners the way {@link ProxyConnection} wires them.
+ */
+class KafkaFrameScannerTest {
+    private static final short METADATA_VERSION = 12;
+    private static final String PROXY_HOST = "proxy.with.a.much.longer.host.name";
+    private static final int PROXY_PORT = 19092;
+
+    private final List<UnansweredProduce.Reason> unanswered = new ArrayList<>();
+    private final KafkaProtocolDecoder decoder = new KafkaProtocolDecoder(null,
+            (apiKey, correlationId, sentNanos, reason) -> unanswered.add(reason));
+    private final KafkaFrameScanner requests =
+            new KafkaFrameScanner(KafkaProtocolDecoder.REQUEST_HEADER_BYTES, decoder.requests);
+    private final KafkaFrameScanner responses =
+            new KafkaFrameScanner(KafkaProtocolDecoder.RESPONSE_HEADER_BYTES, decoder.responses,
+                    new KafkaAddressRewriter(decoder,
+                            (nodeId, host, port) -> InetSocketAddress.createUnresolved(PROXY_HOST, PROXY_PORT)));
+
+    @Test
+    void rewritesMetadataResponse() {
+        send(ApiKeys.METADATA, 1, false);
+
+        ByteBuffer out = receive(4096, metadataResponse(1));
+
+        MetadataResponseData.MetadataResponseBroker broker = parseMetadata(out).brokers().find(0);
+        Assertions.assertEquals(PROXY_HOST, broker.host());
+        Assertions.assertEquals(PROXY_PORT, broker.port());
+        Assertions.assertEquals(0, decoder.inFlight());
+    }
+
+    @Test
+    void droppedRequestIsUnansweredAndDoesNotHideTheNextMetadata() {
+        send(ApiKeys.PRODUCE, 1, true);
+        send(ApiKeys.METADATA, 2, false);
+
+        Assertions.assertEquals(List.of(UnansweredProduce.Reason.DROPPED), unanswered);
+        Assertions.assertEquals(1, decoder.inFlight());
+        Assertions.assertEquals(PROXY_HOST, parseMetadata(receive(4096, metadataResponse(2))).brokers().find(0).host());
+    }
+
+    @Test
+    void capturesMetadataBehindProduceWithoutResponse() {
+        // acks=0: the broker never answers the produce, which stays the oldest request in flight
+        send(ApiKeys.PRODUCE, 1, false);
+        send(ApiKeys.METADATA, 2, false);
+
+        ByteBuffer out = receive(4096, metadataResponse(2));
+
+        Assertions.assertEquals(PROXY_HOST, parseMetadata(out).brokers().find(0).host());
+        Assertions.assertEquals(List.of(UnansweredProduce.Reason.SKIPPED), unanswered);
+    }
+
+    @Test
+    void forwardsOtherResponsesUnchangedWhileMetadataIsInFlight() {
+        send(ApiKeys.FETCH, 1, false);
+        send(ApiKeys.METADATA, 2, false);
+        ByteBuffer fetch = frame(1, new byte[]{1, 2, 3, 4, 5});
+
+        ByteBuffer out = receive(4096, fetch.duplicate(), metadataResponse(2));
+
+        Assertions.assertEquals(fetch, out.slice(0, fetch.remaining()));
+        out.position(fetch.remaining());
+        Assertions.assertEquals(PROXY_HOST, parseMetadata(out).brokers().find(0).host());
+    }
+
+    @Test
+    void insertMovesFollowingBytesUp() {
+        send(ApiKeys.METADATA, 1, false);
+        send(ApiKeys.FETCH, 2, false);
+        ByteBuffer metadata = metadataResponse(1);
+        ByteBuffer fetch = frame(2, new byte[]{9, 8, 7});
+
+        ByteBuffer out = receive(4096, metadata.duplicate(), fetch.duplicate());
+
+        int rewrittenSize = out.getInt(0) + 4;
+        Assertions.assertTrue(rewrittenSize > metadata.remaining(), "the proxy host is longer than the broker's");
+        Assertions.assertEquals(PROXY_HOST, parseMetadata(out.slice(0, rewrittenSize)).brokers().find(0).host());
+        Assertions.assertEquals(fetch, out.slice(rewrittenSize, out.remaining() - rewrittenSize));
+        Assertions.assertEquals(0, decoder.inFlight());
+    }
+
+    @Test
+    void rewrittenFrameThatDoesNotFitBecomesOverflow() {
+        send(ApiKeys.METADATA, 1, false);
+        ByteBuffer metadata = metadataResponse(1);
+        ByteBuffer buf = ByteBuffer.allocate(metadata.remaining()).put(metadata.duplicate());
+
+        int end = responses.scan(buf, 0, buf.capacity(), false);
+
+        Assertions.assertEquals(0, end);
+        ByteBuffer overflow = responses.overflow();
+        Assertions.assertNotNull(overflow);
+        Assertions.assertEquals(PROXY_HOST, parseMetadata(overflow.duplicate()).brokers().find(0).host());
+        overflow.position(overflow.limit()); // forwarded
+        Assertions.assertNull(responses.overflow());
+    }
+
+    @Test
+    void captureRemainingStopsReadsAtTheEndOfTheCapturedFrame() {
+        send(ApiKeys.METADATA, 1, false);
+        ByteBuffer metadata = metadataResponse(1);
+        ByteBuffer buf = ByteBuffer.allocate(4096).put(metadata.duplicate().limit(2));
+
+        Assertions.assertEquals(0, responses.scan(buf, 0, 2, false));
+        Assertions.assertEquals(2, responses.captureRemaining());
+        buf.put(metadata.duplicate().position(2).limit(4));
+        Assertions.assertEquals(2, responses.scan(buf, 2, 4, false), "captured bytes are not left in the buffer");
+        Assertions.assertEquals(metadata.remaining() - 4, responses.captureRemaining());
+    }
+
+    @Test
+    void responseIsNotForwardedWhenABrokerHasNoProxy() {
+        KafkaFrameScanner failing = new KafkaFrameScanner(KafkaProtocolDecoder.RESPONSE_HEADER_BYTES, decoder.responses,
+                new KafkaAddressRewriter(decoder, (nodeId, host, port) -> {
+                    throw new IllegalStateException("no proxy for broker " + host + ":" + port);
+                }));
+        send(ApiKeys.METADATA, 1, false);
+        ByteBuffer metadata = metadataResponse(1);
+        ByteBuffer buf = ByteBuffer.allocate(4096).put(metadata);
+
+        Assertions.assertThrows(IllegalStateException.class, () -> failing.scan(buf, 0, buf.position(), false));
+    }
+
+    /** One request frame through the request scanner; {@code drop} as with a to-broker drop. */
+    private void send(ApiKeys api, int correlationId, boolean drop) {
+        ByteBuffer body = ByteBuffer.allocate(KafkaProtocolDecoder.REQUEST_HEADER_BYTES + 2)
+                .putShort(api.id).putShort(api == ApiKeys.METADATA ? METADATA_VERSION : api.latestVersion())
+                .putInt(correlationId).putShort((short) -1).flip();
+        ByteBuffer buf = ByteBuffer.allocate(4 + body.remaining()).putInt(body.remaining()).put(body);
+        int end = requests.scan(buf, 0, buf.capacity(), drop);
+        Assertions.assertEquals(drop ? 0 : buf.capacity(), end);
+    }
+
+    /** {@code frames} back to back in a buffer of {@code capacity}, scanned in one go. */
+    private ByteBuffer receive(int capacity, ByteBuffer... frames) {
+        ByteBuffer buf = ByteBuffer.allocate(capacity);
+        for (ByteBuffer f : frames) {
+            buf.put(f);
+        }
+        int end = responses.scan(buf, 0, buf.position(), false);
+        Assertions.assertNull(responses.overflow());
+        return buf.slice(0, end);
+    }
+
+    private static ByteBuffer metadataResponse(int correlationId) {
+        MetadataResponseData data = new MetadataResponseData().setClusterId("c").setControllerId(0);
+        data.brokers().add(new MetadataResponseData.MetadataResponseBroker()
+                .setNodeId(0).setHost("localhost").setPort(9092));
+        short headerVersion = ApiKeys.METADATA.responseHeaderVersion(METADATA_VERSION);
+        ByteBuffer payload = RequestUtils.serialize(new ResponseHeaderData().setCorrelationId(correlationId),
+                headerVersion, data, METADATA_VERSION);
+        return ByteBuffer.allocate(4 + payload.remaining()).putInt(payload.remaining()).put(payload).flip();
+    }
+
+    private static ByteBuffer frame(int correlationId, byte[] rest) {
+        return ByteBuffer.allocate(8 + rest.length).putInt(4 + rest.length).putInt(correlationId).put(rest).flip();
+    }
+
+    private static MetadataResponseData parseMetadata(ByteBuffer frame) {
+        ByteBufferAccessor in = new ByteBufferAccessor(frame.duplicate().position(frame.position() + 4));
+        new ResponseHeaderData(in, ApiKeys.METADATA.responseHeaderVersion(METADATA_VERSION));
+        return new MetadataResponseData(in, METADATA_VERSION);
+    }
+}
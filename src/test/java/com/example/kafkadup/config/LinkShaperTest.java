@@ -0,0 +1,110 @@
+package com.example.kafkadup.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class LinkShaperTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final List<Long> jitterBounds = new ArrayList<>();
+    private final List<Long> jitters = new ArrayList<>();
+    private final LinkShaper shaper = new LinkShaper(bound -> {
+        jitterBounds.add(bound);
+        return jitters.remove(0);
+    });
+
+    @Test
+    void latencyHoldsBytesUntilTheirReleaseTime() {
+        shaper.apply(new LinkFaults(10, 0, 0, 0, 0), 0);
+        shaper.added(100, 0);
+
+        Assertions.assertEquals(0, shaper.allowance(5 * MS, 100));
+        Assertions.assertEquals(5 * MS, shaper.resumeDelay(5 * MS, 100));
+        Assertions.assertEquals(100, shaper.allowance(10 * MS, 100));
+    }
+
+    @Test
+    void jitterNeverReleasesALaterChunkFirst() {
+        shaper.apply(new LinkFaults(10, 10, 0, 0, 0), 0);
+        jitters.addAll(List.of(5 * MS, 0L, 10 * MS));
+        shaper.added(100, 0);         // 15 ms
+        shaper.added(100, MS);        // 11 ms, held back to 15 ms behind the first chunk
+        shaper.added(100, 2 * MS);    // 22 ms
+
+        Assertions.assertEquals(List.of(10 * MS, 10 * MS, 10 * MS), jitterBounds);
+        Assertions.assertEquals(0, shaper.allowance(14 * MS, 300));
+        Assertions.assertEquals(200, shaper.allowance(15 * MS, 300));
+        Assertions.assertEquals(0, shaper.allowance(21 * MS, 100), "the first two chunks were written");
+        Assertions.assertEquals(MS, shaper.resumeDelay(21 * MS, 100));
+        Assertions.assertEquals(100, shaper.allowance(22 * MS, 100));
+    }
+
+    @Test
+    void tokenBucketStartsFullAndRefillsAtTheRate() {
+        shaper.apply(new LinkFaults(0, 0, 1000, 100, 0), 0);
+        shaper.added(500, 0);
+
+        Assertions.assertEquals(100, shaper.allowance(0, 500));
+        shaper.written(100);
+        Assertions.assertEquals(0, shaper.allowance(0, 400));
+        Assertions.assertEquals(MS, shaper.resumeDelay(0, 400), "a millisecond's worth at 1000 B/s is one byte");
+        Assertions.assertEquals(50, shaper.allowance(50 * MS, 400));
+        shaper.written(50);
+        Assertions.assertEquals(100, shaper.allowance(TimeUnit.SECONDS.toNanos(10), 350), "refill stops at the burst");
+    }
+
+    @Test
+    void removingLatencyReleasesBufferedBytes() {
+        shaper.apply(new LinkFaults(1000, 0, 0, 0, 0), 0);
+        shaper.added(100, 0);
+        Assertions.assertEquals(0, shaper.allowance(MS, 100));
+
+        shaper.apply(LinkFaults.NONE, MS);
+
+        Assertions.assertEquals(100, shaper.allowance(MS, 100));
+    }
+
+    @Test
+    void loweringLatencyKeepsBytesInOrder() {
+        shaper.apply(new LinkFaults(100, 0, 0, 0, 0), 0);
+        shaper.added(10, 0);
+        shaper.apply(new LinkFaults(10, 0, 0, 0, 0), MS);
+        shaper.added(10, MS);
+
+        Assertions.assertEquals(0, shaper.allowance(50 * MS, 20));
+        Assertions.assertEquals(20, shaper.allowance(100 * MS, 20));
+    }
+
+    @Test
+    void smallerBurstCapsTokensAndUnlimitedBandwidthStopsCounting() {
+        shaper.apply(new LinkFaults(0, 0, 1000, 500, 0), 0);
+        shaper.apply(new LinkFaults(0, 0, 1000, 100, 0), 0);
+        shaper.added(300, 0);
+
+        Assertions.assertEquals(100, shaper.allowance(0, 300));
+        shaper.written(100);
+
+        shaper.apply(LinkFaults.NONE, 0);
+        Assertions.assertEquals(200, shaper.allowance(0, 200));
+        shaper.written(200);
+
+        shaper.apply(new LinkFaults(0, 0, 1000, 100, 0), 0);
+        shaper.added(300, 0);
+        Assertions.assertEquals(100, shaper.allowance(0, 300), "limiting again starts with a full bucket");
+    }
+
+    @Test
+    void manyChunksInFlightGrowTheMarks() {
+        shaper.apply(new LinkFaults(10, 0, 0, 0, 0), 0);
+        for (int i = 0; i < 20; i++) {
+            shaper.added(10, i * MS);
+        }
+
+        Assertions.assertEquals(10, shaper.allowance(10 * MS, 200));
+        Assertions.assertEquals(190, shaper.allowance(29 * MS, 190));
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.kafkadup.config;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ProxyRegistryTest {
+    private ProxyRegistry registry;
+
+    @AfterEach
+    void stop() {
+        if (registry != null) {
+            registry.stop();
+        }
+    }
+
+    @Test
+    void newBrokerGetsItsProxyOffTheCallingThread() throws Exception {
+        registry = new ProxyRegistry("127.0.0.1", 0, 1, false);
+        registry.start("localhost:9");
+
+        // known broker: answered at once, by the name it was bootstrapped with
+        InetSocketAddress known = registry.advertise(0, "localhost", 9);
+        Assertions.assertEquals(registry.select("localhost:9").get(0).getListenPort(), known.getPort());
+        Assertions.assertEquals(known, registry.advertise(0, "localhost", 9));
+
+        // new broker: the first response fails rather than name the real address, a later one succeeds
+        Assertions.assertThrows(IllegalStateException.class, () -> registry.advertise(1, "localhost", 10));
+        InetSocketAddress added = awaitAdvertised(1, "localhost", 10);
+        Assertions.assertEquals("127.0.0.1", added.getHostString());
+        Assertions.assertEquals(registry.select("1").get(0).getListenPort(), added.getPort());
+        Assertions.assertEquals(2, registry.getBrokers().size());
+    }
+
+    @Test
+    void brokerWhoseProxyCannotStartIsNeverAdvertised() throws Exception {
+        try (ServerSocket taken = new ServerSocket(0)) {
+            // a fixed first port: the second broker's proxy would go on the port taken above
+            registry = new ProxyRegistry("127.0.0.1", taken.getLocalPort() - 1, 1, false);
+            try {
+                registry.start("localhost:9");
+            } catch (UncheckedIOException e) {
+                return; // the port below was taken too; nothing to check
+            }
+            for (int i = 0; i < 3; i++) {
+                Assertions.assertThrows(IllegalStateException.class, () -> registry.advertise(1, "localhost", 10));
+                Thread.sleep(100);
+            }
+            Assertions.assertEquals(1, registry.getBrokers().size());
+        }
+    }
+
+    @Test
+    void bootstrapProxyThatCannotStartFailsStartup() throws IOException {
+        try (ServerSocket taken = new ServerSocket(0)) {
+            registry = new ProxyRegistry("127.0.0.1", taken.getLocalPort(), 1, false);
+            Assertions.assertThrows(UncheckedIOException.class, () -> registry.start("localhost:9"));
+        }
+    }
+
+    private InetSocketAddress awaitAdvertised(int nodeId, String host, int port) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (true) {
+            try {
+                return registry.advertise(nodeId, host, port);
+            } catch (IllegalStateException e) {
+                if (System.nanoTime() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.kafkadup.config;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TcpProxyTest {
+    private ServerSocket broker;
+    private final List<Socket> brokerSide = new ArrayList<>();
+    private TcpProxy proxy;
+
+    @BeforeEach
+    void start() throws IOException {
+        // a broker that reads requests and never answers
+        broker = new ServerSocket(0);
+        Thread acceptor = new Thread(() -> {
+            try {
+                while (true) {
+                    Socket s = broker.accept();
+                    synchronized (brokerSide) {
+                        brokerSide.add(s);
+                    }
+                    Thread.ofVirtual().start(() -> {
+                        try {
+                            // the socket stays open after the client's end of stream, like a broker's
+                            s.getInputStream().transferTo(OutputStream.nullOutputStream());
+                        } catch (IOException ignored) {
+                        }
+                    });
+                }
+            } catch (IOException closed) {
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        proxy = new TcpProxy(0, "127.0.0.1", broker.getLocalPort(), 1);
+        proxy.start();
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        proxy.stop();
+        broker.close();
+        synchronized (brokerSide) {
+            for (Socket s : brokerSide) {
+                s.close();
+            }
+        }
+    }
+
+    @Test
+    void clientLeavingDuringPauseClosesItsConnection() throws Exception {
+        proxy.setBlockUpstream(true, TcpProxy.BlockMode.PAUSE);
+        for (int i = 0; i < 5; i++) {
+            try (Socket client = new Socket()) {
+                client.connect(new InetSocketAddress("127.0.0.1", proxy.getListenPort()));
+                client.getOutputStream().write(new byte[]{0, 0, 0, 4, 1, 2, 3, 4});
+                awaitConnections(1);
+            }
+            // the client timed out and left; the broker's response would reach nobody
+            awaitConnections(0);
+        }
+    }
+
+    @Test
+    void pauseStartedAfterTheClientLeftClosesItsConnection() throws Exception {
+        Socket client = new Socket();
+        client.connect(new InetSocketAddress("127.0.0.1", proxy.getListenPort()));
+        client.shutdownOutput();
+        awaitConnections(1);
+        Thread.sleep(100); // the proxy has seen the end of the client's stream; the broker keeps its side open
+
+        proxy.setBlockUpstream(true, TcpProxy.BlockMode.PAUSE);
+
+        awaitConnections(0);
+        client.close();
+    }
+
+    @Test
+    void cancelRacingAScheduledBlockLeavesTheProxyUnblocked() throws Exception {
+        synchronized (proxy) {
+            proxy.setBlockSchedule(new BlockSchedule(0, 0, 60_000, TcpProxy.BlockMode.PAUSE));
+            Thread.sleep(100); // the block is due and waits for the lock
+            proxy.setBlockSchedule(null);
+        }
+        Thread.sleep(100);
+
+        Assertions.assertFalse(proxy.isBlockUpstream());
+    }
+
+    @Test
+    void cancellingAScheduleEndsOnlyItsOwnBlock() throws Exception {
+        proxy.setBlockSchedule(new BlockSchedule(0, 0, 60_000, TcpProxy.BlockMode.PAUSE));
+        awaitBlocked(true);
+        proxy.setBlockSchedule(null);
+        Assertions.assertFalse(proxy.isBlockUpstream());
+
+        proxy.setBlockUpstream(true, TcpProxy.BlockMode.PAUSE);
+        proxy.setBlockSchedule(new BlockSchedule(0, 0, 60_000, TcpProxy.BlockMode.PAUSE));
+        Thread.sleep(100);
+        proxy.setBlockSchedule(null);
+        Assertions.assertTrue(proxy.isBlockUpstream(), "a block set by hand stays");
+    }
+
+    @Test
+    void blockSetByHandDuringAScheduledBlockOutlivesIt() throws Exception {
+        proxy.setBlockSchedule(new BlockSchedule(0, 0, 200, TcpProxy.BlockMode.PAUSE));
+        awaitBlocked(true);
+        proxy.setBlockUpstream(true, TcpProxy.BlockMode.PAUSE);
+
+        Thread.sleep(400); // past the scheduled end
+
+        Assertions.assertTrue(proxy.isBlockUpstream());
+    }
+
+    private void awaitBlocked(boolean expected) throws InterruptedException {
+        long deadline = System.nanoTime() + 2_000_000_000L;
+        while (proxy.isBlockUpstream() != expected) {
+            if (System.nanoTime() > deadline) {
+                Assertions.fail("expected blockUpstream=" + expected);
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private void awaitConnections(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + 2_000_000_000L;
+        while (proxy.getActiveConnectionCount() != expected) {
+            if (System.nanoTime() > deadline) {
+                Assertions.fail("expected " + expected + " open connections, found " + proxy.getActiveConnectionCount());
+            }
+            Thread.sleep(5);
+        }
+    }
+}
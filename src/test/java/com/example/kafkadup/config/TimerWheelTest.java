@@ -0,0 +1,87 @@
+package com.example.kafkadup.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class TimerWheelTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final TimerWheel wheel = new TimerWheel(MS, 8, 0);
+    private final List<String> ran = new ArrayList<>();
+
+    @Test
+    void runsTimersInDeadlineOrderAcrossRevolutions() {
+        wheel.schedule(20 * MS, () -> ran.add("20"), 0);
+        wheel.schedule(3 * MS, () -> ran.add("3"), 0);
+        wheel.schedule(11 * MS, () -> ran.add("11"), 0); // same slot as 3, one revolution later
+
+        wheel.expire(3 * MS);
+        Assertions.assertEquals(List.of("3"), ran);
+        Assertions.assertEquals(8 * MS, wheel.nanosToNext(3 * MS));
+
+        wheel.expire(19 * MS);
+        Assertions.assertEquals(List.of("3", "11"), ran);
+
+        wheel.expire(20 * MS);
+        Assertions.assertEquals(List.of("3", "11", "20"), ran);
+        Assertions.assertTrue(wheel.isEmpty());
+        Assertions.assertEquals(-1, wheel.nanosToNext(20 * MS));
+    }
+
+    @Test
+    void deadlinesAreRoundedUpToTheTick() {
+        wheel.schedule(MS + MS / 2, () -> ran.add("a"), 0);
+
+        Assertions.assertEquals(2 * MS, wheel.nanosToNext(0));
+        wheel.expire(2 * MS - 1);
+        Assertions.assertEquals(List.of(), ran);
+        wheel.expire(2 * MS);
+        Assertions.assertEquals(List.of("a"), ran);
+    }
+
+    @Test
+    void cancelledTimerDoesNotRun() {
+        TimerWheel.Timeout t = wheel.schedule(MS, () -> ran.add("a"), 0);
+
+        Assertions.assertTrue(t.cancel());
+        Assertions.assertFalse(t.cancel());
+        Assertions.assertTrue(wheel.isEmpty());
+        wheel.expire(10 * MS);
+        Assertions.assertEquals(List.of(), ran);
+    }
+
+    @Test
+    void timerScheduledByATaskRunsOnALaterTick() {
+        wheel.schedule(5 * MS, () -> {
+            ran.add("a");
+            wheel.schedule(0, () -> ran.add("b"), 5 * MS);
+        }, 0);
+
+        wheel.expire(5 * MS);
+        Assertions.assertEquals(List.of("a"), ran);
+        wheel.expire(6 * MS);
+        Assertions.assertEquals(List.of("a", "b"), ran);
+    }
+
+    @Test
+    void failingTaskDoesNotStopTheOthers() {
+        wheel.schedule(MS, () -> {
+            throw new IllegalStateException("boom");
+        }, 0);
+        wheel.schedule(MS, () -> ran.add("b"), 0);
+
+        wheel.expire(MS);
+
+        Assertions.assertEquals(List.of("b"), ran);
+        Assertions.assertTrue(wheel.isEmpty());
+    }
+
+    @Test
+    void rejectsSlotCountThatIsNotAPowerOfTwo() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new TimerWheel(MS, 6, 0));
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.kafkadup.serde;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class AsciiTest {
+
+    @Test
+    void digitsMatchesLongToString() {
+        for (long v : edgeValues()) {
+            Assertions.assertEquals(Long.toString(v).length(), Ascii.digits(v), "digits(" + v + ")");
+        }
+    }
+
+    @Test
+    void putDigitsWritesTheDecimalFormEndingAtEnd() {
+        for (long v : edgeValues()) {
+            byte[] out = new byte[24];
+            Arrays.fill(out, (byte) '#');
+            int end = 3 + Ascii.digits(v);
+
+            Assertions.assertEquals(end, Ascii.putDigits(out, end, v));
+            String written = new String(out, StandardCharsets.US_ASCII);
+            Assertions.assertEquals("###" + v + "#".repeat(24 - end), written, "putDigits(" + v + ")");
+        }
+    }
+
+    @Test
+    void putDigitsAtZero() {
+        byte[] out = new byte[1];
+
+        Assertions.assertEquals(1, Ascii.putDigits(out, 1, 0));
+        Assertions.assertEquals("0", new String(out, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void putRefusesNonAscii() {
+        byte[] out = new byte[8];
+
+        Assertions.assertEquals(5, Ascii.put(out, 2, "abc"));
+        Assertions.assertEquals(-1, Ascii.put(out, 0, "aé"));
+        Assertions.assertEquals(-1, Ascii.put(out, 0, "\u0080"));
+        Assertions.assertEquals(1, Ascii.put(out, 0, "\u007f"));
+    }
+
+    /** 0, every power of ten and its neighbours, and {@link Long#MAX_VALUE}. */
+    private static List<Long> edgeValues() {
+        List<Long> values = new ArrayList<>(List.of(0L, Long.MAX_VALUE, Long.MAX_VALUE - 1));
+        for (long p = 1; p <= 1_000_000_000_000_000_000L; p *= 10) {
+            values.addAll(List.of(p - 1, p, p + 1));
+            if (p > Long.MAX_VALUE / 10) {
+                break;
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.kafkadup.serde;
+
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class OrderEventSerializerTest {
+    private final OrderEventSerializer serializer = new OrderEventSerializer();
+    private final StringDeserializer deserializer = new StringDeserializer();
+
+    @Test
+    void encodesTimestampsAtEveryDigitCount() {
+        for (long ts = 1; ; ts *= 10) {
+            assertRoundTrip(new OrderEvent("o-1", ts - 1));
+            assertRoundTrip(new OrderEvent("o-1", ts));
+            if (ts > Long.MAX_VALUE / 10) {
+                break;
+            }
+        }
+        assertRoundTrip(new OrderEvent("o-1", 1_700_000_000_123L));
+        assertRoundTrip(new OrderEvent("o-1", Long.MAX_VALUE));
+    }
+
+    @Test
+    void negativeTimestampsTakeTheStringPath() {
+        assertRoundTrip(new OrderEvent("o-1", -1));
+        assertRoundTrip(new OrderEvent("o-1", -1_700_000_000_000L));
+        assertRoundTrip(new OrderEvent("o-1", Long.MIN_VALUE));
+    }
+
+    @Test
+    void padsToTheRequestedSize() {
+        int len = "order-id=o-1|ts=1000".length();
+        for (int padTo : new int[] {0, 1, len - 1, len, len + 1, len + 5, len + 6, 100, 4096}) {
+            OrderEvent event = new OrderEvent("o-1", 1000, padTo);
+            String encoded = assertRoundTrip(event);
+            if (padTo > len) {
+                Assertions.assertTrue(encoded.length() >= padTo, encoded);
+                Assertions.assertTrue(encoded.startsWith("order-id=o-1|ts=1000|pad="), encoded);
+            } else {
+                Assertions.assertEquals("order-id=o-1|ts=1000", encoded);
+            }
+        }
+        Assertions.assertEquals(100, serializer.serialize("orders", new OrderEvent("o-1", 1000, 100)).length);
+    }
+
+    @Test
+    void nonAsciiOrderIdIsEncodedAsUtf8() {
+        assertRoundTrip(new OrderEvent("bestellung-ä", 1000));
+        assertRoundTrip(new OrderEvent("заказ", 1000, 64));
+    }
+
+    @Test
+    void pooledArraysAreReusedAcrossRecordSizes() {
+        OrderEvent small = new OrderEvent("o-1", 1000);
+        OrderEvent large = new OrderEvent("o-1", 1000, 512);
+
+        byte[] first = serializer.serialize("orders", small);
+        assertRoundTrip(large);
+        assertRoundTrip(new OrderEvent("o-2", 2000));
+        byte[] again = serializer.serialize("orders", small);
+
+        // same length, same array, rewritten with the current record and no leftovers
+        Assertions.assertSame(first, again);
+        Assertions.assertEquals(small.toPayload(), deserializer.deserialize("orders", again));
+        Assertions.assertEquals(large.toPayload(), deserializer.deserialize("orders", serializer.serialize("orders", large)));
+    }
+
+    @Test
+    void recordsAboveThePoolLimitGetTheirOwnArray() {
+        OrderEvent huge = new OrderEvent("o-1", 1000, ByteArrayPool.MAX_POOLED_LENGTH + 1);
+
+        byte[] a = serializer.serialize("orders", huge);
+        Assertions.assertNotSame(a, serializer.serialize("orders", huge));
+        Assertions.assertEquals(huge.toPayload(), deserializer.deserialize("orders", a));
+    }
+
+    @Test
+    void nullStaysNull() {
+        Assertions.assertNull(serializer.serialize("orders", null));
+    }
+
+    private String assertRoundTrip(OrderEvent event) {
+        byte[] bytes = serializer.serialize("orders", event);
+        String decoded = deserializer.deserialize("orders", bytes);
+        Assertions.assertEquals(event.toPayload(), decoded);
+        if (event.orderId().chars().allMatch(c -> c < 0x80)) {
+            Assertions.assertEquals(OrderEventSerializer.encodedLength(event), bytes.length, decoded);
+        }
+        return decoded;
+    }
+}
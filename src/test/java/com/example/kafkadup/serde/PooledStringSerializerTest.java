@@ -0,0 +1,52 @@
+package com.example.kafkadup.serde;
+
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class PooledStringSerializerTest {
+    private final PooledStringSerializer serializer = new PooledStringSerializer();
+    private final StringDeserializer deserializer = new StringDeserializer();
+
+    @Test
+    void roundTripsAsciiStrings() {
+        for (String s : new String[] {"", "k", "order-42", "a".repeat(1000), "\u0000\u007f"}) {
+            Assertions.assertEquals(s, deserializer.deserialize("orders", serializer.serialize("orders", s)));
+        }
+    }
+
+    @Test
+    void nonAsciiStringsAreEncodedAsUtf8() {
+        for (String s : new String[] {"schlüssel", "ключ-1", "k-😀"}) {
+            byte[] bytes = serializer.serialize("orders", s);
+            Assertions.assertEquals(s, deserializer.deserialize("orders", bytes));
+        }
+    }
+
+    @Test
+    void pooledArraysAreReusedAcrossRecordSizes() {
+        byte[] first = serializer.serialize("orders", "key-1");
+        Assertions.assertEquals("a-much-longer-key", deserializer.deserialize("orders",
+                serializer.serialize("orders", "a-much-longer-key")));
+        Assertions.assertEquals("k", deserializer.deserialize("orders", serializer.serialize("orders", "k")));
+        byte[] again = serializer.serialize("orders", "key-2");
+
+        Assertions.assertSame(first, again);
+        Assertions.assertEquals("key-2", deserializer.deserialize("orders", again));
+    }
+
+    @Test
+    void nonAsciiStringAfterAsciiOfTheSameLengthLeavesThePooledArrayAlone() {
+        byte[] pooled = serializer.serialize("orders", "abcd");
+        byte[] utf8 = serializer.serialize("orders", "abcé");
+
+        Assertions.assertNotSame(pooled, utf8);
+        Assertions.assertEquals("abcé", deserializer.deserialize("orders", utf8));
+        Assertions.assertSame(pooled, serializer.serialize("orders", "wxyz"));
+    }
+
+    @Test
+    void nullStaysNull() {
+        Assertions.assertNull(serializer.serialize("orders", null));
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.kafkadup.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ConsumerServiceTest {
+    private final DuplicateDetector detector = new DuplicateDetector(new SimpleMeterRegistry(), 10_000, 100);
+    private final EndToEndLatencyTracker latency = new EndToEndLatencyTracker(1000, 1, 0, false);
+    private final ConsumerService consumer = new ConsumerService(detector, latency, true);
+
+    @AfterEach
+    void shutdown() {
+        consumer.shutdown();
+    }
+
+    @Test
+    void virtualThreadBatchesKeepOffsetOrderWithinAPartition() throws Exception {
+        List<ConsumerRecord<String, String>> batch = new ArrayList<>();
+        for (int p = 0; p < 3; p++) {
+            batch.add(new ConsumerRecord<>("t", p, 0, "dup-" + p, "v"));
+            for (int o = 1; o < 500; o++) {
+                batch.add(new ConsumerRecord<>("t", p, o, "k-" + p + "-" + o, "v"));
+            }
+            batch.add(new ConsumerRecord<>("t", p, 500, "dup-" + p, "v"));
+        }
+
+        consumer.listenBatch(batch);
+
+        Assertions.assertEquals(batch.size(), detector.recordsSeen());
+        List<DuplicateKeyReport> reports = detector.reports("dup-");
+        Assertions.assertEquals(3, reports.size());
+        for (DuplicateKeyReport r : reports) {
+            // the first copy is the one at the lower offset
+            Assertions.assertEquals(0, r.occurrences().get(0).offset(), r.key());
+            Assertions.assertEquals(500, r.occurrences().get(1).offset(), r.key());
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.kafkadup.service;
+
+import java.util.List;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DuplicateDetectorTest {
+    private final DuplicateDetector detector = new DuplicateDetector(new SimpleMeterRegistry(), 1_000, 10);
+
+    @Test
+    void redeliveredDuplicateIsNotReportedAgain() {
+        Assertions.assertFalse(detector.observe("k", 0, 10));
+        Assertions.assertTrue(detector.observe("k", 0, 20));
+
+        // rebalance: both records are delivered again
+        Assertions.assertFalse(detector.observe("k", 0, 10));
+        Assertions.assertFalse(detector.observe("k", 0, 20));
+
+        Assertions.assertTrue(detector.observe("k", 0, 30), "a third write is a new duplicate");
+        DuplicateSummary summary = detector.summary(10);
+        Assertions.assertEquals(2, summary.duplicateRecords());
+        Assertions.assertEquals(List.of(new DuplicateKeyReport.Occurrence(0, 10),
+                new DuplicateKeyReport.Occurrence(0, 20), new DuplicateKeyReport.Occurrence(0, 30)),
+                detector.reports("k").get(0).occurrences());
+    }
+
+    @Test
+    void sameOffsetInAnotherPartitionIsADuplicate() {
+        detector.observe("k", 0, 10);
+
+        Assertions.assertTrue(detector.observe("k", 1, 10));
+        Assertions.assertFalse(detector.observe("k", 1, 10));
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.kafkadup.service;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.example.kafkadup.serde.ProduceTimestamp;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogReader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class EndToEndLatencyTrackerTest {
+    // the roller is not started; the test rolls by hand
+    private final EndToEndLatencyTracker tracker = new EndToEndLatencyTracker(60_000, 10, 0, false);
+
+    @AfterEach
+    void shutdown() {
+        tracker.shutdown();
+    }
+
+    @Test
+    void readsDoNotCloseTheInterval() {
+        tracker.consumed(0, 1, ProduceTimestamp.now());
+        Assertions.assertEquals(1, tracker.snapshot(false).latencies().get(0).count(), "in-progress values count");
+        tracker.consumed(0, 2, ProduceTimestamp.now());
+        Assertions.assertEquals(2, tracker.snapshot(true).latencies().get(0).count());
+        Assertions.assertEquals(List.of(), intervals(tracker.intervalLog()));
+
+        tracker.consumed(0, 3, ProduceTimestamp.now());
+        tracker.roll();
+
+        // one interval holding every value, whatever was read or reset meanwhile
+        List<Histogram> logged = intervals(tracker.intervalLog());
+        Assertions.assertEquals(2, logged.size());
+        Assertions.assertEquals("e2e", logged.get(0).getTag());
+        Assertions.assertEquals(3, logged.get(0).getTotalCount());
+        Assertions.assertEquals(1, tracker.snapshot(false).latencies().get(0).count(), "counted since the reset");
+    }
+
+    @Test
+    void rollStartsAnEmptyInterval() {
+        tracker.consumed(0, 1, ProduceTimestamp.now());
+        tracker.roll();
+        tracker.snapshot(false);
+        tracker.roll();
+
+        List<Histogram> logged = intervals(tracker.intervalLog());
+        Assertions.assertEquals(4, logged.size());
+        Assertions.assertEquals(1, logged.get(0).getTotalCount());
+        Assertions.assertEquals(0, logged.get(2).getTotalCount());
+        Assertions.assertTrue(logged.get(2).getStartTimeStamp() >= logged.get(0).getEndTimeStamp());
+        Assertions.assertEquals(1, tracker.snapshot(false).latencies().get(0).count());
+    }
+
+    private static List<Histogram> intervals(String log) {
+        HistogramLogReader reader = new HistogramLogReader(
+                new ByteArrayInputStream(log.getBytes(StandardCharsets.US_ASCII)));
+        List<Histogram> intervals = new ArrayList<>();
+        for (Histogram h; (h = (Histogram) reader.nextIntervalHistogram()) != null; ) {
+            intervals.add(h);
+        }
+        return intervals;
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.kafkadup.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import com.example.kafkadup.config.LinkFaults;
+import com.example.kafkadup.config.ProxyFaults;
+import com.example.kafkadup.config.ProxyRegistry;
+import com.example.kafkadup.config.TcpProxy;
+import com.example.kafkadup.serde.OrderEvent;
+import com.example.kafkadup.serde.OrderEventSerializer;
+import com.example.kafkadup.serde.PooledStringSerializer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class LoadGeneratorTest {
+    private static final LinkFaults RUN_FAULTS = new LinkFaults(5, 0, 0, 0, 0);
+
+    private final MockProducer<String, OrderEvent> mock =
+            new MockProducer<>(true, new PooledStringSerializer(), new OrderEventSerializer()) {
+                @Override
+                public void close(Duration timeout) {
+                    // KafkaTemplate closes the producer after every send; keep this one open
+                }
+            };
+    private ProxyRegistry proxies;
+    private ProducerService producer;
+    private LoadGenerator load;
+
+    @BeforeEach
+    void start() throws Exception {
+        proxies = new ProxyRegistry("127.0.0.1", 0, 1, false);
+        proxies.start("localhost:9");
+        KafkaTemplate<String, OrderEvent> template = new KafkaTemplate<>(() -> mock);
+        producer = new ProducerService(template, null, new SimpleMeterRegistry(), false,
+                new EndToEndLatencyTracker(1000, 1, 0, false), 120_000, 0, new SendJournal(false, null, 0, 0));
+        ReflectionTestUtils.setField(producer, "topic", "orders");
+        load = new LoadGenerator(producer, template, null, proxies);
+    }
+
+    @AfterEach
+    void stop() {
+        load.shutdown();
+        producer.shutdownExecutors();
+        proxies.stop();
+    }
+
+    @Test
+    void interruptedCallerStopsTheRunBeforeAnotherCanStart() throws Exception {
+        Thread caller = new Thread(() -> {
+            try {
+                load.run(request(60_000));
+            } catch (InterruptedException | ExecutionException expected) {
+            }
+        });
+        caller.start();
+        awaitFaults("localhost:9", RUN_FAULTS);
+
+        caller.interrupt();
+        caller.join(5_000);
+        Assertions.assertFalse(caller.isAlive());
+
+        // the interrupted run puts the faults back and frees the generator, which takes a new run
+        awaitFaults("localhost:9", LinkFaults.NONE);
+        LoadRunResult next = awaitNextRun(request(100));
+        Assertions.assertEquals(1, next.steps().size());
+    }
+
+    @Test
+    void brokerAddedDuringTheRunIsResetToo() throws Exception {
+        CompletableFuture<LoadRunResult> run = CompletableFuture.supplyAsync(() -> {
+            try {
+                return load.run(request(500));
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        awaitFaults("localhost:9", RUN_FAULTS);
+        Assertions.assertThrows(IllegalStateException.class, () -> load.run(request(100)));
+        // a proxy started for a new broker while the run is going, which picked up the run's faults
+        Assertions.assertThrows(IllegalStateException.class, () -> proxies.advertise(1, "localhost", 10));
+        awaitBroker("localhost:10");
+        proxies.setFaults("localhost:10", TcpProxy.Direction.TO_CLIENT, null, RUN_FAULTS);
+
+        run.get();
+
+        ProxyFaults added = proxies.getFaults().get("localhost:10");
+        Assertions.assertEquals(LinkFaults.NONE, added.toClient());
+        Assertions.assertEquals(LinkFaults.NONE, proxies.getFaults().get("localhost:9").toClient());
+    }
+
+    private static LoadRunRequest request(long stepMs) {
+        return new LoadRunRequest(100, 0, 100, stepMs, 10, 0, null, RUN_FAULTS, List.of());
+    }
+
+    private LoadRunResult awaitNextRun(LoadRunRequest request) throws Exception {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (true) {
+            try {
+                return load.run(request);
+            } catch (IllegalStateException stillRunning) {
+                if (System.nanoTime() > deadline) {
+                    throw stillRunning;
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private void awaitFaults(String broker, LinkFaults expected) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!expected.equals(proxies.getFaults().get(broker).toClient())) {
+            if (System.nanoTime() > deadline) {
+                Assertions.fail("expected " + expected + " on " + broker + ", found " + proxies.getFaults().get(broker));
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private void awaitBroker(String broker) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!proxies.getFaults().containsKey(broker)) {
+            if (System.nanoTime() > deadline) {
+                Assertions.fail("no proxy for " + broker);
+            }
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.kafkadup.service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.example.kafkadup.serde.OrderEvent;
+import com.example.kafkadup.serde.OrderEventSerializer;
+import com.example.kafkadup.serde.PooledStringSerializer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class ProducerServiceTest {
+    // sends stay in flight until completed by hand (or by flush())
+    private final MockProducer<String, OrderEvent> mock =
+            new MockProducer<>(false, new PooledStringSerializer(), new OrderEventSerializer()) {
+                @Override
+                public void close(Duration timeout) {
+                    // KafkaTemplate closes the producer after every transaction; keep this one open
+                }
+            };
+    private final AtomicInteger flushes = new AtomicInteger();
+    private ProducerService producer;
+
+    @AfterEach
+    void shutdown() {
+        producer.shutdownExecutors();
+    }
+
+    @Test
+    void drainDoesNotFlushATransactionalProducer() throws Exception {
+        producer = newProducerService(true);
+        mock.initTransactions();
+        producer.sendOneWithKey("tx-1");
+        // committing flushed the send, as it does with a real producer
+        Assertions.assertTrue(mock.transactionCommitted());
+
+        Assertions.assertTrue(drain());
+        Assertions.assertEquals(0, flushes.get(), "flush() outside a transaction is refused");
+        Assertions.assertThrows(RejectedExecutionException.class, () -> producer.sendOneWithKey("tx-2"));
+    }
+
+    @Test
+    void drainFlushesANonTransactionalProducer() throws Exception {
+        producer = newProducerService(false);
+        producer.sendOneWithKey("k-1");
+
+        Assertions.assertTrue(drain(), "flush() completed the pending send");
+        Assertions.assertEquals(1, flushes.get());
+        Assertions.assertEquals(1, mock.history().size());
+    }
+
+    private boolean drain() {
+        try {
+            return producer.drain(Duration.ofSeconds(5));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private ProducerService newProducerService(boolean transactional) throws IOException {
+        ProducerFactory<String, OrderEvent> factory = new ProducerFactory<>() {
+            @Override
+            public Producer<String, OrderEvent> createProducer() {
+                return mock;
+            }
+
+            @Override
+            public Producer<String, OrderEvent> createProducer(String txIdPrefix) {
+                return mock;
+            }
+
+            @Override
+            public boolean transactionCapable() {
+                return transactional;
+            }
+        };
+        KafkaTemplate<String, OrderEvent> template = new KafkaTemplate<>(factory) {
+            @Override
+            public void flush() {
+                flushes.incrementAndGet();
+                super.flush();
+            }
+        };
+        ProducerService service = new ProducerService(template, null, new SimpleMeterRegistry(), false,
+                new EndToEndLatencyTracker(1000, 1, 0, false), 120_000, 0, new SendJournal(false, null, 0, 0));
+        ReflectionTestUtils.setField(service, "topic", "orders");
+        return service;
+    }
+}
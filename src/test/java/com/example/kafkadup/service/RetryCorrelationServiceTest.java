@@ -0,0 +1,61 @@
+package com.example.kafkadup.service;
+
+import java.util.List;
+
+import com.example.kafkadup.config.UnansweredProduce;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class RetryCorrelationServiceTest {
+    private final DuplicateKeyReport report = new DuplicateKeyReport("k", List.of(
+            new DuplicateKeyReport.Occurrence(0, 11), new DuplicateKeyReport.Occurrence(0, 10)));
+    private final SendTracker.Send send = new SendTracker.Send("k", 1_000);
+
+    @Test
+    void pairsRetryWritesWithUnansweredRequestsToTheLeader() {
+        send.acked(0, 11, 5_000);
+        UnansweredProduce request = unanswered(1, 2_000);
+
+        RetryCorrelation c = RetryCorrelationService.correlate(report, send, 1, List.of(
+                unanswered(1, 500),      // before the first send
+                request,
+                unanswered(2, 2_500),    // another broker
+                unanswered(1, 6_000)));  // after the ack
+
+        Assertions.assertEquals(List.of(request), c.unansweredRequests());
+        Assertions.assertTrue(c.writesMatched());
+        Assertions.assertEquals(1, c.retryWrites());
+        Assertions.assertEquals(new RetryCorrelation.Write(0, 10, false, request), c.writes().get(0));
+        Assertions.assertEquals(new RetryCorrelation.Write(0, 11, true, null), c.writes().get(1));
+    }
+
+    @Test
+    void moreCandidatesThanRetryWritesArePairedWithNone() {
+        send.acked(0, 11, 5_000);
+
+        RetryCorrelation c = RetryCorrelationService.correlate(report, send, 1,
+                List.of(unanswered(1, 2_000), unanswered(1, 3_000)));
+
+        Assertions.assertEquals(2, c.unansweredRequests().size());
+        Assertions.assertFalse(c.writesMatched());
+        Assertions.assertNull(c.writes().get(0).request());
+    }
+
+    @Test
+    void unknownLeaderTakesNoCandidates() {
+        send.acked(0, 11, 5_000);
+
+        // a request to a broker whose node id was not known yet has -1 too
+        RetryCorrelation c = RetryCorrelationService.correlate(report, send, -1, List.of(unanswered(-1, 2_000)));
+
+        Assertions.assertEquals(-1, c.leaderNodeId());
+        Assertions.assertEquals(List.of(), c.unansweredRequests());
+        Assertions.assertFalse(c.writesMatched());
+        Assertions.assertEquals(1, c.retryWrites());
+    }
+
+    private static UnansweredProduce unanswered(int nodeId, long sentNanos) {
+        return new UnansweredProduce(nodeId, "localhost:9092", 1, 7, sentNanos, sentNanos + 100,
+                UnansweredProduce.Reason.CLOSED);
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.kafkadup.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class SeenKeyIndexTest {
+
+    @Test
+    void returnsFirstPositionForARepeatedKey() {
+        SeenKeyIndex index = new SeenKeyIndex(16);
+        long first = SeenKeyIndex.position(3, 42);
+
+        Assertions.assertEquals(SeenKeyIndex.NOT_SEEN, index.putIfAbsent(7, 1, first));
+        Assertions.assertEquals(first, index.putIfAbsent(7, 1, SeenKeyIndex.position(3, 99)));
+        Assertions.assertEquals(1, index.size());
+        Assertions.assertEquals(3, SeenKeyIndex.partition(first));
+        Assertions.assertEquals(42, SeenKeyIndex.offset(first));
+    }
+
+    @Test
+    void sameHashWithAnotherCheckIsAnotherKey() {
+        SeenKeyIndex index = new SeenKeyIndex(16);
+
+        Assertions.assertEquals(SeenKeyIndex.NOT_SEEN, index.putIfAbsent(7, 1, 10));
+        Assertions.assertEquals(SeenKeyIndex.NOT_SEEN, index.putIfAbsent(7, 2, 20));
+        Assertions.assertEquals(10, index.putIfAbsent(7, 1, 30));
+        Assertions.assertEquals(20, index.putIfAbsent(7, 2, 40));
+        Assertions.assertEquals(2, index.size());
+    }
+
+    @Test
+    void hashesOnTheSameSlotAreProbed() {
+        SeenKeyIndex index = new SeenKeyIndex(4); // 8 slots: these all start at slot 1
+        long[] hashes = {1, 9, 17, 25};
+        for (int i = 0; i < hashes.length; i++) {
+            Assertions.assertEquals(SeenKeyIndex.NOT_SEEN, index.putIfAbsent(hashes[i], 5, i));
+        }
+        for (int i = 0; i < hashes.length; i++) {
+            Assertions.assertEquals(i, index.putIfAbsent(hashes[i], 5, 100 + i));
+        }
+        Assertions.assertEquals(SeenKeyIndex.NOT_SEEN, index.putIfAbsent(33, 5, 4));
+    }
+
+    @Test
+    void hashZeroIsStored() {
+        SeenKeyIndex index = new SeenKeyIndex(16);
+
+        Assertions.assertEquals(SeenKeyIndex.NOT_SEEN, index.putIfAbsent(0, 1, 10));
+        Assertions.assertEquals(10, index.putIfAbsent(0, 1, 20));
+    }
+
+    @Test
+    void keysAreRememberedForOneMoreGenerationThenEvicted() {
+        SeenKeyIndex index = new SeenKeyIndex(2);
+        index.putIfAbsent(1, 0, 1);
+        index.putIfAbsent(2, 0, 2);
+        index.putIfAbsent(3, 0, 3); // current was full: 1 and 2 move to the previous generation
+
+        Assertions.assertEquals(3, index.size());
+        Assertions.assertEquals(0, index.evictedKeys());
+        Assertions.assertEquals(1, index.putIfAbsent(1, 0, 11), "still in the previous generation");
+
+        index.putIfAbsent(4, 0, 4);
+        index.putIfAbsent(5, 0, 5); // 1 and 2 dropped
+
+        Assertions.assertEquals(2, index.evictedKeys());
+        Assertions.assertEquals(3, index.size());
+        Assertions.assertEquals(3, index.putIfAbsent(3, 0, 13));
+        Assertions.assertEquals(SeenKeyIndex.NOT_SEEN, index.putIfAbsent(1, 0, 21));
+    }
+
+    @Test
+    void rejectsCapacityOutOfRange() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new SeenKeyIndex(0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new SeenKeyIndex(SeenKeyIndex.MAX_CAPACITY + 1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new SeenKeyIndex(Integer.MAX_VALUE));
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.kafkadup.service;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.example.kafkadup.serde.ProduceTimestamp;
+import org.apache.kafka.common.protocol.Errors;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SendJournalTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void concurrentWritersAcrossSegmentBoundariesLoseNoEntry() throws Exception {
+        int threads = 8;
+        int keysPerThread = 1_000;
+        // 3 entries per key, 7 per segment: slots are claimed across every roll from several threads
+        SendJournal journal = new SendJournal(true, dir.toString(), 7, 0);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            writers.add(Thread.ofPlatform().start(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < keysPerThread; i++) {
+                    long key = (long) thread * keysPerThread + i;
+                    long sendTs = ProduceTimestamp.now() - 1_000_000;
+                    journal.sent(key, (int) key, sendTs);
+                    if (i % 10 == 0) {
+                        journal.failed(key, (int) key, sendTs, Errors.NOT_LEADER_OR_FOLLOWER.code());
+                    } else {
+                        journal.acked(key, (int) key, sendTs, thread, i);
+                    }
+                    journal.sent(key + 1_000_000, (int) key, sendTs); // never finished
+                }
+            }));
+        }
+        go.countDown();
+        for (Thread w : writers) {
+            w.join(TimeUnit.SECONDS.toMillis(30));
+        }
+        journal.close();
+
+        long keys = (long) threads * keysPerThread;
+        long failures = keys / 10;
+        SendJournalSummary summary = SendJournalReader.read(dir);
+        Assertions.assertEquals(0, journal.droppedEntries());
+        Assertions.assertEquals((3 * keys + 6) / 7, summary.segments());
+        Assertions.assertEquals(3 * keys, summary.entries());
+        Assertions.assertEquals(2 * keys, summary.sends());
+        Assertions.assertEquals(keys - failures, summary.acks());
+        Assertions.assertEquals(failures, summary.failures());
+        Assertions.assertEquals(keys, summary.unfinished());
+        Assertions.assertEquals(0, summary.repeatedSends(), "every key was written once, to its own slot");
+        Assertions.assertEquals(0, summary.repeatedAcks());
+        Assertions.assertEquals(Map.of(Errors.NOT_LEADER_OR_FOLLOWER.name(), failures), summary.failuresByError());
+        Assertions.assertTrue(summary.p50Micros() >= 1_000, "send-to-ack latency " + summary.p50Micros());
+    }
+
+    @Test
+    void readerSkipsPartlyWrittenLastEntries() throws IOException {
+        SendJournal journal = new SendJournal(true, dir.toString(), 100, 0);
+        for (int i = 0; i < 10; i++) {
+            journal.sent(i, i, ProduceTimestamp.now());
+        }
+        journal.close();
+        Path segment = SendJournal.segmentFiles(dir).get(0);
+
+        // a crash left slot 10 claimed and filled but without its type, while slot 11 was finished
+        try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, ch.size());
+            int at = SendJournal.HEADER_BYTES + 10 * SendJournal.ENTRY_BYTES;
+            buf.putLong(at + SendJournal.KEY_HASH, 10);
+            buf.putLong(at + SendJournal.SEND_TS, ProduceTimestamp.now());
+            at += SendJournal.ENTRY_BYTES;
+            buf.putLong(at + SendJournal.KEY_HASH, 11);
+            buf.putInt(at + SendJournal.TYPE, SendJournal.SENT);
+            buf.force();
+        }
+        Assertions.assertEquals(11, SendJournalReader.read(dir).entries());
+
+        // and a segment cut short in the middle of its last entry
+        try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            ch.truncate(SendJournal.HEADER_BYTES + 11L * SendJournal.ENTRY_BYTES + SendJournal.TYPE);
+        }
+        SendJournalSummary summary = SendJournalReader.read(dir);
+        Assertions.assertEquals(10, summary.entries());
+        Assertions.assertEquals(10, summary.sends());
+        Assertions.assertEquals(0, summary.repeatedSends());
+    }
+
+    @Test
+    void repeatedSendsAndAcksAtAnotherOffsetAreCounted() throws IOException {
+        SendJournal journal = new SendJournal(true, dir.toString(), 2, 0);
+        long ts = ProduceTimestamp.now();
+        journal.sent(1, 1, ts);
+        journal.acked(1, 1, ts, 0, 10);
+        journal.sent(1, 1, ts);
+        journal.acked(1, 1, ts, 0, 10); // the same write acked again is not a repeat
+        journal.acked(1, 1, ts, 0, 11);
+        journal.sent(2, 2, ts);
+        journal.close();
+
+        SendJournalSummary summary = SendJournalReader.read(dir);
+        Assertions.assertEquals(3, summary.segments());
+        Assertions.assertEquals(6, summary.entries());
+        Assertions.assertEquals(1, summary.repeatedSends());
+        Assertions.assertEquals(1, summary.repeatedAcks());
+        Assertions.assertEquals(0, summary.unfinished());
+    }
+
+    @Test
+    void retentionDeletesTheOldestSegments() throws IOException {
+        SendJournal journal = new SendJournal(true, dir.toString(), 2, 2);
+        for (int i = 0; i < 9; i++) {
+            journal.sent(i, i, ProduceTimestamp.now());
+        }
+        journal.close();
+
+        SendJournalSummary summary = SendJournalReader.read(dir);
+        Assertions.assertEquals(2, summary.segments());
+        Assertions.assertEquals(3, summary.entries());
+    }
+}